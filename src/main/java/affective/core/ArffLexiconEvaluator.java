@@ -21,10 +21,14 @@
 
 package affective.core;
 
-import java.io.BufferedReader;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -40,6 +44,7 @@ import weka.core.OptionHandler;
 import weka.core.OptionMetadata;
 import weka.core.SingleIndex;
 import weka.core.WekaPackageManager;
+import weka.core.converters.ArffLoader;
 import weka.core.stemmers.NullStemmer;
 import weka.core.stemmers.Stemmer;
 
@@ -63,11 +68,26 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 	/** A list with all the features provided by the lexicon evaluator. */
 	protected List<String> featureNames=new ArrayList<String>(); 
 
-	/** A mapping between words and the affective numeric scores. */	
-	protected Map<String, Map<String, Double>> numDict = new HashMap<String, Map<String, Double>>(); 	
+	/** The words of the lexicon, the row of a word gives its entries. It is shared through the ResourceRegistry and is not serialized. */	
+	protected transient LexiconTable wordTable = new LexiconTable.Builder().build(); 	
+
+	/** The first entry of each row of the word table, the entries of a row are the ones in [entryStarts[row], entryStarts[row+1]). */
+	protected transient int[] entryStarts = new int[1];
+
+	/** The feature of each entry as an index in featureNames. */
+	protected transient int[] entrySlots = new int[0];
+
+	/** The value added to the feature of each entry: the numeric score or 1 for a nominal association. */
+	protected transient double[] entryDeltas = new double[0];
+
+	/** A mapping between words and the affective nominal categories. It is shared through the ResourceRegistry and is not serialized. */	
+	protected transient Map<String, Map<String, String>> nomDict = new HashMap<String, Map<String,String>>(); 	
 
-	/** A mapping between words and the affective nominal categories. */	
-	protected Map<String, Map<String, String>> nomDict = new HashMap<String, Map<String,String>>(); 	
+	/** The automaton matching the multi-word entries of the lexicon, the value of each phrase is its row in the word table. */
+	protected transient PhraseMatcher phraseMatcher;
+
+	/** True if the dictionaries have been processed. */
+	protected boolean dictProcessed=false;
 
 
 
@@ -92,14 +112,52 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 	/** The stemming algorithm. */
 	protected Stemmer m_stemmer = new NullStemmer();
 
+	/** True for matching the multi-word entries of the lexicon as phrases of consecutive tokens. */
+	protected boolean matchPhrases=false;
+
 
 	/**
-	 * Processes  all the dictionary files.
+	 * Processes  all the dictionary files. A lexicon already processed in this JVM with the same
+	 * file, name, word index and stemmer is obtained from the ResourceRegistry.
 	 * @throws IOException  an IOException will be raised if an invalid file is supplied
 	 */
 	public void processDict() throws IOException {
-		BufferedReader reader = new BufferedReader(new FileReader(this.m_lexiconFile));
-		Instances lexInstances=new Instances(reader);
+		final ArffLexiconEvaluator evaluator=this;
+		String key=ResourceRegistry.key(this.getClass().getName(), ResourceRegistry.fileKey(this.m_lexiconFile),
+				this.lexiconName, this.lexiconWordIndex.getSingleIndex(), weka.core.Utils.toCommandLine(this.m_stemmer), this.matchPhrases);
+		ArffLexiconEvaluator shared=ResourceRegistry.get(key, new ResourceRegistry.Loader<ArffLexiconEvaluator>() {
+			@Override
+			public ArffLexiconEvaluator load() throws IOException {
+				evaluator.readDict();
+				return evaluator;
+			}
+		});
+
+		this.featureNames=shared.featureNames;
+		this.wordTable=shared.wordTable;
+		this.entryStarts=shared.entryStarts;
+		this.entrySlots=shared.entrySlots;
+		this.entryDeltas=shared.entryDeltas;
+		this.nomDict=shared.nomDict;
+		this.phraseMatcher=shared.phraseMatcher;
+		this.dictProcessed=true;
+	}
+
+
+	/**
+	 * Reads the lexicon from the arff file. The feature slots and values of each word are calculated here,
+	 * so that evaluating a tweet does not build any attribute name.
+	 * @throws IOException  an IOException will be raised if an invalid file is supplied
+	 */
+	protected void readDict() throws IOException {
+		// the lexicon is parsed incrementally, only its header is kept as a dataset
+		ArffLoader loader=new ArffLoader();
+		loader.setSource(this.m_lexiconFile);
+		Instances lexInstances=loader.getStructure();
+
+		this.featureNames=new ArrayList<String>();
+		this.nomDict=new HashMap<String, Map<String,String>>();
+		this.phraseMatcher=null;
 
 		// set upper value for word index
 		lexiconWordIndex.setUpper(lexInstances.numAttributes() - 1);
@@ -107,6 +165,10 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 		List<Attribute> numericAttributes=new ArrayList<Attribute>();
 		List<Attribute> nominalAttributes=new ArrayList<Attribute>();
 
+		// the index in featureNames of the first feature of each attribute
+		IntList numericSlots=new IntArrayList();
+		IntList nominalSlots=new IntArrayList();
+
 
 
 		// checks all numeric and nominal attributes and discards the word attribute
@@ -115,12 +177,14 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 			if(i!=this.lexiconWordIndex.getIndex()){
 				if(lexInstances.attribute(i).isNumeric() ){
 					numericAttributes.add(lexInstances.attribute(i));	
+					numericSlots.add(this.featureNames.size());
 					// adds the attribute name to the message-level features to be calculated
 					this.featureNames.add(this.lexiconName+"-"+lexInstances.attribute(i).name());
 				}
 
 				else if(lexInstances.attribute(i).isNominal() ){
 					nominalAttributes.add(lexInstances.attribute(i));	
+					nominalSlots.add(this.featureNames.size());
 					// adds the attribute name together with the nominal value to the message-level features to be calculated
 					int numValues=lexInstances.attribute(i).numValues();
 					for(int j=0;j<numValues;j++)
@@ -133,21 +197,68 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 		}
 
 
+		LexiconTable.Builder builder=new LexiconTable.Builder();
+
+		// the entries of each word in insertion order
+		List<int[]> wordSlots=new ArrayList<int[]>();
+		List<double[]> wordDeltas=new ArrayList<double[]>();
+
+		List<String[]> phraseTokenList=new ArrayList<String[]>();
+		List<String> phraseList=new ArrayList<String>();
+
 		// Maps all words with their affective scores discarding missing values
-		for(Instance inst:lexInstances){
+		Instance inst;
+		while((inst=loader.getNextInstance(lexInstances))!=null){
 			if(inst.attribute(this.lexiconWordIndex.getIndex()).isString()){
 				String word=inst.stringValue(this.lexiconWordIndex.getIndex());
-				// stems the word
-				word=this.m_stemmer.stem(word);
+				String[] phraseTokens=word.trim().split("\\s+");
+				if(this.matchPhrases && phraseTokens.length>1){
+					// stems each token of the phrase
+					StringBuilder phrase=new StringBuilder();
+					for(int i=0;i<phraseTokens.length;i++){
+						phraseTokens[i]=this.m_stemmer.stem(phraseTokens[i]);
+						if(i>0)
+							phrase.append(' ');
+						phrase.append(phraseTokens[i]);
+					}
+					word=phrase.toString();
+					phraseTokenList.add(phraseTokens);
+					phraseList.add(word);
+				}
+				else
+					// stems the word
+					word=this.m_stemmer.stem(word);
+
+				// a repeated word keeps the entries of its last occurrence
+				int wordRow=builder.addWord(word);
+				IntList slots=new IntArrayList();
+				DoubleArrayList deltas=new DoubleArrayList();
 
 				// map numeric scores
-				if(!numericAttributes.isEmpty()){
-					Map<String,Double> wordVals=new HashMap<String,Double>();
-					for(Attribute na:numericAttributes){
-						if(!weka.core.Utils.isMissingValue(inst.value(na)))
-							wordVals.put(na.name(),inst.value(na));
+				for(int i=0;i<numericAttributes.size();i++){
+					double value=inst.value(numericAttributes.get(i));
+					if(!weka.core.Utils.isMissingValue(value)){
+						slots.add(numericSlots.getInt(i));
+						deltas.add(value);
 					}
-					this.numDict.put(word, wordVals);					
+				}
+
+				// count nominal associations
+				for(int i=0;i<nominalAttributes.size();i++){
+					double value=inst.value(nominalAttributes.get(i));
+					if(!weka.core.Utils.isMissingValue(value)){
+						slots.add(nominalSlots.getInt(i)+(int) value);
+						deltas.add(1.0);
+					}
+				}
+
+				if(wordRow==wordSlots.size()){
+					wordSlots.add(slots.toIntArray());
+					wordDeltas.add(deltas.toDoubleArray());
+				}
+				else{
+					wordSlots.set(wordRow, slots.toIntArray());
+					wordDeltas.set(wordRow, deltas.toDoubleArray());
 				}
 
 				// map nominal associations
@@ -168,8 +279,35 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 
 		}
 
+		this.wordTable=builder.build();
 
+		// the entries are stored in the order of the rows of the table
+		int[] insertionRows=new int[this.wordTable.size()];
+		int numEntries=0;
+		for(int row=0;row<insertionRows.length;row++){
+			// the builder returns the insertion order of a word added before
+			insertionRows[row]=builder.addWord(this.wordTable.getWord(row));
+			numEntries+=wordSlots.get(insertionRows[row]).length;
+		}
 
+		this.entryStarts=new int[insertionRows.length+1];
+		this.entrySlots=new int[numEntries];
+		this.entryDeltas=new double[numEntries];
+		for(int row=0;row<insertionRows.length;row++){
+			int[] slots=wordSlots.get(insertionRows[row]);
+			double[] deltas=wordDeltas.get(insertionRows[row]);
+			int start=this.entryStarts[row];
+			System.arraycopy(slots, 0, this.entrySlots, start, slots.length);
+			System.arraycopy(deltas, 0, this.entryDeltas, start, deltas.length);
+			this.entryStarts[row+1]=start+slots.length;
+		}
+
+		if(!phraseTokenList.isEmpty()){
+			this.phraseMatcher=new PhraseMatcher();
+			for(int i=0;i<phraseTokenList.size();i++)
+				this.phraseMatcher.addPhrase(phraseTokenList.get(i), this.wordTable.lookup(phraseList.get(i)));
+			this.phraseMatcher.build();
+		}
 
 	}
 
@@ -180,33 +318,77 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 	 * @return a mapping between attribute names and their scores
 	 */	
 	public Map<String, Double> evaluateTweet(List<String> tokens) {
-		Map<String, Double> scores = new HashMap<String, Double>();
-		for(String feat:this.featureNames){
-			scores.put(feat, 0.0);
-		}
+		double[] values = new double[this.featureNames.size()];
+		this.evaluateTweet(tokens, values, 0);
 
-		for (String word : tokens) {
-			// Add numeric scores
-			if (this.numDict.containsKey(word)) {
-				Map<String,Double> mapper=this.numDict.get(word);
-				for(String emo:mapper.keySet())
-					scores.put(this.lexiconName+"-"+emo, scores.get(this.lexiconName+"-"+emo)+mapper.get(emo));
-			}
+		Map<String, Double> scores = new HashMap<String, Double>();
+		for (int i = 0; i < values.length; i++)
+			scores.put(this.featureNames.get(i), values[i]);
 
+		return scores;
+	}
 
-			// count nominal associations
-			if (this.nomDict.containsKey(word)) {
-				Map<String,String> mapper=this.nomDict.get(word);
-				for(String emo:mapper.keySet())
-					scores.put(this.lexiconName+"-"+emo+"-"+mapper.get(emo), scores.get(this.lexiconName+"-"+emo+"-"+mapper.get(emo))+1);
 
-			}
+	/**
+	 * Calculates lexicon-based feature values from a list of tokens and adds them to an array. 
+	 * The value of the i-th feature in featureNames is added to the position offset+i.
+	 * @param tokens a tokenized tweet
+	 * @param values the array where the values are added
+	 * @param offset the position of the first feature in the array
+	 */	
+	public void evaluateTweet(List<String> tokens, double[] values, int offset) {
+		for (String word : tokens) {
+			int row = this.wordTable.lookup(word);
+			if (row != -1)
+				this.addScores(values, offset, row);
+		}
 
+		// the phrases are matched in a single pass
+		if (this.phraseMatcher != null) {
+			IntList matches = this.phraseMatcher.match(tokens);
+			for (int i = 0; i < matches.size(); i++)
+				this.addScores(values, offset, matches.getInt(i));
 		}
+	}
 
 
+	/**
+	 * Adds the numeric scores and nominal associations of a word or phrase to the feature values.
+	 * @param values the feature values
+	 * @param offset the position of the first feature in the array
+	 * @param row the row of the word or phrase in the word table
+	 */	
+	protected void addScores(double[] values, int offset, int row) {
+		for (int e = this.entryStarts[row]; e < this.entryStarts[row + 1]; e++)
+			values[offset + this.entrySlots[e]] += this.entryDeltas[e];
+	}
 
-		return scores;
+
+	/**
+	 * Resolves the dictionaries again after deserialization, so that all the copies of the evaluator
+	 * share the lexicon registered in the JVM.
+	 * 
+	 * @return this evaluator
+	 * @throws ObjectStreamException if the lexicon cannot be processed
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		if(this.dictProcessed){
+			try {
+				this.processDict();
+			} catch (IOException e) {
+				InvalidObjectException ioe=new InvalidObjectException("Cannot process the lexicon: "+e.getMessage());
+				ioe.initCause(e);
+				throw ioe;
+			}
+		}
+		else{
+			this.wordTable=new LexiconTable.Builder().build();
+			this.entryStarts=new int[1];
+			this.entrySlots=new int[0];
+			this.entryDeltas=new double[0];
+			this.nomDict=new HashMap<String, Map<String,String>>();
+		}
+		return this;
 	}
 
 
@@ -220,6 +402,33 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 	}
 	
 	
+	/**
+	 * Gets the approximate number of bytes retained in the heap by the data of the lexicon.
+	 * 
+	 * @return the number of bytes
+	 */	
+	public long getMemoryFootprint() {
+		long bytes=this.wordTable.getMemoryFootprint()+LexiconTable.arrayFootprint(this.entryStarts.length, 4)
+				+LexiconTable.arrayFootprint(this.entrySlots.length, 4)+LexiconTable.arrayFootprint(this.entryDeltas.length, 8);
+
+		// the nominal associations are stored in hash maps
+		if(this.nomDict!=null){
+			bytes+=LexiconTable.objectFootprint(24)+LexiconTable.arrayFootprint(this.nomDict.size()*4/3+1, LexiconTable.REFERENCE_SIZE);
+			for(Map.Entry<String, Map<String, String>> entry:this.nomDict.entrySet()){
+				bytes+=LexiconTable.objectFootprint(4+3*LexiconTable.REFERENCE_SIZE)+LexiconTable.stringFootprint(entry.getKey());
+				bytes+=LexiconTable.objectFootprint(24)+LexiconTable.arrayFootprint(entry.getValue().size()*4/3+1, LexiconTable.REFERENCE_SIZE);
+				// the attribute names and nominal values are shared by all the words
+				bytes+=entry.getValue().size()*LexiconTable.objectFootprint(4+3*LexiconTable.REFERENCE_SIZE);
+			}
+		}
+
+		if(this.phraseMatcher!=null)
+			bytes+=this.phraseMatcher.getMemoryFootprint();
+
+		return bytes;
+	}
+
+
 	/**
 	 * Gets the dictionary with nominal attributes
 	 * @return the dictionary with nominal attributes
@@ -312,6 +521,20 @@ public class ArffLexiconEvaluator implements Serializable, OptionHandler {
 	public void setStemmer(Stemmer m_stemmer) {
 		this.m_stemmer = m_stemmer;
 	}
+
+
+	@OptionMetadata(displayName = "matchPhrases",
+			description = "True for matching the multi-word entries of the lexicon (tokens separated by spaces) as phrases of consecutive tokens in the tweet."
+					+ " All the phrases are matched in a single pass over the tokens. Default: false.",
+			commandLineParamIsFlag = true,
+			commandLineParamName = "phrases",
+			commandLineParamSynopsis = "-phrases", displayOrder = 5)	
+	public boolean isMatchPhrases() {
+		return matchPhrases;
+	}
+	public void setMatchPhrases(boolean matchPhrases) {
+		this.matchPhrases = matchPhrases;
+	}
 	
 
 }
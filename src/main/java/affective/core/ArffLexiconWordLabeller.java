@@ -21,9 +21,7 @@
 
 package affective.core;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -40,6 +38,7 @@ import weka.core.OptionHandler;
 import weka.core.OptionMetadata;
 import weka.core.SingleIndex;
 import weka.core.WekaPackageManager;
+import weka.core.converters.ArffLoader;
 import weka.core.stemmers.NullStemmer;
 import weka.core.stemmers.Stemmer;
 
@@ -95,8 +94,10 @@ public class ArffLexiconWordLabeller implements Serializable, OptionHandler {
 	 * @throws IOException  an IOException will be raised if an invalid file is supplied
 	 */
 	public void processDict() throws IOException {
-		BufferedReader reader = new BufferedReader(new FileReader(this.m_lexiconFile));
-		Instances lexInstances=new Instances(reader);
+		// the lexicon is parsed incrementally, only its header is kept as a dataset
+		ArffLoader loader=new ArffLoader();
+		loader.setSource(this.m_lexiconFile);
+		Instances lexInstances=loader.getStructure();
 
 
 		// set upper value for word index
@@ -116,7 +117,8 @@ public class ArffLexiconWordLabeller implements Serializable, OptionHandler {
 
 
 		// Maps all words with their affective scores discarding missing values
-		for(Instance inst:lexInstances){
+		Instance inst;
+		while((inst=loader.getNextInstance(lexInstances))!=null){
 			if(inst.attribute(this.lexiconWordIndex.getIndex()).isString()){
 				String word=inst.stringValue(this.lexiconWordIndex.getIndex());
 				// stems the word
@@ -25,11 +25,25 @@ package affective.core;
 
 import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import weka.core.OptionMetadata;
@@ -52,6 +66,19 @@ public class CSVEmbeddingHandler extends EmbeddingHandler {
 	/** For serialization **/ 
 	private static final long serialVersionUID = -2458037798910799631L;
 
+	/** The number of lines parsed together by a worker. */
+	protected static final int BLOCK_SIZE = 1024;
+
+	/** The characters with a special meaning in a regular expression. */
+	protected static final String REGEX_CHARS = ".$|()[]{}^?*+\\";
+
+	/** The largest mantissa whose product with a power of ten is correctly rounded. */
+	protected static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/** The powers of ten that are exact doubles. */
+	protected static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
 	/** Default path to where resources are stored. */
 	public static String RESOURCES_FOLDER_NAME = WekaPackageManager.PACKAGES_DIR.toString() + File.separator + "AffectiveTweets" + File.separator + "resources";
 
@@ -67,6 +94,33 @@ public class CSVEmbeddingHandler extends EmbeddingHandler {
 	/** the index of the string attribute to be processed */
 	protected SingleIndex wordNameIndex = new SingleIndex("last");
 
+	/** The quantization of the vectors stored in memory. */
+	protected Quantization quantization = Quantization.NONE;
+
+	/** The root mean squared difference between the values read from the file and the quantized values. */
+	protected double reconstructionError = 0;
+
+	/** The number of threads parsing the lines of the file. */
+	protected int numThreads = 1;
+
+	/** True if only the vectors of a vocabulary are loaded and the other ones are fetched on demand. */
+	protected boolean vocabularyOnly = false;
+
+	/** The maximum number of vectors fetched on demand kept in memory. */
+	protected int cacheSize = 0;
+
+	/** The vectors fetched on demand, from the least to the most recently used one. */
+	protected transient Object2ObjectLinkedOpenHashMap<String, AbstractDoubleList> cache;
+
+	/** The directory where the index of the embeddings file is written. */
+	protected File indexDirectory=new File(System.getProperty("java.io.tmpdir"));
+
+	/** The index of the embeddings file from which the vectors are fetched on demand, null until a word out of the vocabulary is read. */
+	protected transient MappedEmbeddingHandler index;
+
+	/** The vectors of all the words being loaded in the background. */
+	protected transient Future<CSVEmbeddingHandler> preload;
+
 
 
 
@@ -89,48 +143,626 @@ public class CSVEmbeddingHandler extends EmbeddingHandler {
 	 */
 	public void createDict() throws Exception {
 
+		this.separator = this.columnSeparator();
+
+		// the vectors are shared with the handlers using the same file and options 
+		CSVEmbeddingHandler shared=ResourceRegistry.get(this.dictKey(), this.dictLoader());
+
+		this.wordMap=shared.wordMap;
+		this.dimensions=shared.dimensions;
+		this.reconstructionError=shared.reconstructionError;
+
+		this.vocabularyOnly=false;
+		this.cache=null;
+		this.index=null;
+
+	}
+
+
+	/**
+	 * initializes the dictionary with the vectors of the words of a vocabulary. The vectors of the
+	 * vocabulary are not shared with other handlers. The other vectors are fetched on demand from an 
+	 * index of the embeddings file, which stores the vectors as floats. The index is built in the index 
+	 * directory when the first word out of the vocabulary is read, so the vectors of the vocabulary are 
+	 * also rounded to floats to get the same vector for a word whether it is in the vocabulary or not.
+	 * 
+	 * @param vocabulary the words whose vectors are loaded
+	 * @param cacheSize the maximum number of vectors fetched on demand kept in memory
+	 * @throws Exception in case of wrong file
+	 */
+	@Override
+	public void createDict(Set<String> vocabulary, int cacheSize) throws Exception {
+
+		this.separator = this.columnSeparator();
+
+		// the vectors of all the words are not needed anymore
+		if(this.preload!=null){
+			this.preload.cancel(true);
+			this.preload=null;
+		}
+
+		this.vocabularyOnly=true;
+		this.cacheSize=cacheSize;
+		this.cache=new Object2ObjectLinkedOpenHashMap<String, AbstractDoubleList>();
+		this.index=null;
+
+		if(vocabulary.isEmpty()){
+			this.wordMap=new Object2ObjectOpenHashMap<String, AbstractDoubleList>();
+			this.dimensions=this.readDimensions();
+			this.reconstructionError=0;
+		}
+		else
+			this.readDict(vocabulary);
+
+	}
+
+
+	/**
+	 * Resolves the dictionary again after deserialization. The vectors of a handler loading only a 
+	 * vocabulary are all fetched on demand from the index.
+	 * 
+	 * @return this handler
+	 * @throws ObjectStreamException if the dictionary cannot be created
+	 */
+	@Override
+	protected Object readResolve() throws ObjectStreamException {
+		if(!this.vocabularyOnly || this.dimensions==0)
+			return super.readResolve();
+
+		try {
+			this.createDict(new ObjectOpenHashSet<String>(), this.cacheSize);
+		} catch (Exception e) {
+			InvalidObjectException ioe=new InvalidObjectException("Cannot load the embeddings: "+e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+		return this;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.EmbeddingHandler#preloadDict()
+	 */
+	@Override
+	public void preloadDict() {
+		if(this.embeddingsFile.exists())
+			this.preload=ResourceRegistry.submit(this.dictKey(), this.dictLoader());
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.EmbeddingHandler#getVector(java.lang.String)
+	 */
+	@Override
+	public AbstractDoubleList getVector(String word) {
+		AbstractDoubleList vector=this.wordMap.get(word);
+		if(vector!=null || this.cache==null)
+			return vector;
+
+		synchronized(this.cache){
+			vector=this.cache.getAndMoveToLast(word);
+			if(vector==null){
+				vector=this.fetchVector(word);
+				if(vector!=null){
+					this.cache.put(word, vector);
+					if(this.cache.size()>this.cacheSize)
+						this.cache.removeFirst();
+				}
+			}
+		}
+		return vector;
+	}
+
+
+	/**
+	 * Fetches the vector of a word from the index, which is built first if needed.
+	 * 
+	 * @param word the word
+	 * @return the vector with the quantization of the handler or null if the word has no vector
+	 */
+	protected AbstractDoubleList fetchVector(String word) {
+		AbstractDoubleList mapped;
+		try {
+			mapped=this.getIndex().getVector(word);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the index of "+this.embeddingsFile, e);
+		}
+		if(mapped==null)
+			return null;
+
+		AbstractDoubleList vector=new DoubleArrayList(mapped);
+		if(this.quantization!=Quantization.NONE)
+			vector=QuantizedVector.quantize(vector, this.quantization);
+		return vector;
+	}
+
+
+	/**
+	 * Gets the index of the embeddings file, which is built or mapped on the first call. It is
+	 * called with the lock of the cache held.
+	 * 
+	 * @return the index
+	 * @throws IOException if the index cannot be built
+	 */
+	protected MappedEmbeddingHandler getIndex() throws IOException {
+		if(this.index==null)
+			this.index=ResourceRegistry.get(this.indexKey(), this.indexLoader());
+		return this.index;
+	}
+
+
+	/**
+	 * Reads the number of dimensions of the vectors from the first line of the embeddings file.
+	 * 
+	 * @return the number of dimensions
+	 * @throws IOException in case of wrong file
+	 */
+	protected int readDimensions() throws IOException {
+		BufferedReader bf = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(this.embeddingsFile))));
+		try {
+			String line=bf.readLine();
+			return line==null ? 0 : line.split(this.separator).length-1;
+		} finally {
+			bf.close();
+		}
+	}
+
+
+	/**
+	 * Gets the file of the index of the embeddings file. The name of the file identifies the 
+	 * embeddings file and its version, so an index is built again if the embeddings file is modified.
+	 * 
+	 * @return the file
+	 */
+	protected File indexFile() {
+		String name=this.embeddingsFile.getName().replaceAll("(\\.csv)?\\.gz$", "");
+		return new File(this.indexDirectory, name+"-"+Integer.toHexString(this.indexKey().hashCode())+".emb");
+	}
+
+
+	/**
+	 * Gets the key identifying the index in the ResourceRegistry.
+	 * 
+	 * @return the key
+	 */
+	protected String indexKey() {
+		return ResourceRegistry.key(MappedEmbeddingHandler.class.getName(), ResourceRegistry.fileKey(this.embeddingsFile),
+				this.columnSeparator(), this.wordNameIndex.getSingleIndex());
+	}
+
+
+	/**
+	 * Creates a loader mapping the index of the embeddings file, which is compiled first if it 
+	 * does not exist. The index is written into a temporary file that is renamed once complete, 
+	 * and an index compiled by the loader is deleted when the virtual machine exits.
+	 * 
+	 * @return the loader
+	 */
+	protected ResourceRegistry.Loader<MappedEmbeddingHandler> indexLoader() {
+		final CSVEmbeddingHandler source=new CSVEmbeddingHandler();
+		source.setEmbeddingsFile(this.embeddingsFile);
+		source.setSeparator(this.columnSeparator());
+		source.setWordNameIndex(this.getWordNameIndex());
+		final File file=this.indexFile();
+
+		return new ResourceRegistry.Loader<MappedEmbeddingHandler>() {
+			@Override
+			public MappedEmbeddingHandler load() throws IOException {
+				if(!file.exists()){
+					File tmp=File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+					try {
+						MappedEmbeddingHandler.write(source, tmp);
+						// the index may have been built by another process in the meantime
+						if(tmp.renameTo(file))
+							file.deleteOnExit();
+						else if(!file.exists())
+							throw new IOException("Cannot create the index "+file);
+					} finally {
+						tmp.delete();
+					}
+				}
+
+				MappedEmbeddingHandler handler=new MappedEmbeddingHandler();
+				handler.setEmbeddingsFile(file);
+				handler.mapFile();
+				return handler;
+			}
+		};
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.EmbeddingHandler#getMemoryFootprint()
+	 */
+	@Override
+	public long getMemoryFootprint() {
+		long bytes=super.getMemoryFootprint();
+		if(this.cache!=null){
+			synchronized(this.cache){
+				bytes+=getMemoryFootprint(this.cache);
+			}
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * Gets the separator of the columns replacing 'TAB' by the TAB symbol.
+	 * 
+	 * @return the separator
+	 */
+	protected String columnSeparator() {
+		return this.separator.equals("TAB")?"\t":this.separator;
+	}
+
+
+	/**
+	 * Gets the key identifying the vectors in the ResourceRegistry.
+	 * 
+	 * @return the key
+	 */
+	protected String dictKey() {
+		return ResourceRegistry.key(this.getClass().getName(), ResourceRegistry.fileKey(this.embeddingsFile),
+				this.columnSeparator(), this.wordNameIndex.getSingleIndex(), this.quantization);
+	}
+
+
+	/**
+	 * Creates a loader reading the vectors into a new handler with the options of this one, so that 
+	 * the vectors can be read in the background while this handler is being configured.
+	 * 
+	 * @return the loader
+	 */
+	protected ResourceRegistry.Loader<CSVEmbeddingHandler> dictLoader() {
+		final CSVEmbeddingHandler handler=new CSVEmbeddingHandler();
+		handler.setEmbeddingsFile(this.embeddingsFile);
+		handler.setSeparator(this.columnSeparator());
+		handler.setWordNameIndex(this.getWordNameIndex());
+		handler.setQuantization(this.quantization);
+		handler.setNumThreads(this.numThreads);
+
+		return new ResourceRegistry.Loader<CSVEmbeddingHandler>() {
+			@Override
+			public CSVEmbeddingHandler load() throws IOException {
+				handler.readDict();
+				return handler;
+			}
+		};
+	}
+
+
+	/**
+	 * Reads the vectors from the embeddings file.
+	 * 
+	 * @throws IOException in case of wrong file
+	 */
+	protected void readDict() throws IOException {
+		this.readDict(null);
+	}
+
+
+	/**
+	 * Reads the vectors of the words of a vocabulary from the embeddings file. The values of the 
+	 * other words are not parsed.
+	 * 
+	 * @param vocabulary the words whose vectors are read or null for reading all the vectors
+	 * @throws IOException in case of wrong file or if the thread is interrupted
+	 */
+	protected void readDict(Set<String> vocabulary) throws IOException {
+
 		FileInputStream fin = new FileInputStream(this.embeddingsFile);
 		GZIPInputStream gzis = new GZIPInputStream(fin);
 		InputStreamReader xover = new InputStreamReader(gzis);
 		BufferedReader bf = new BufferedReader(xover);
 
-		this.separator = this.separator.equals("TAB")?"\t":this.separator;
-		
-		
-		String line;
-		boolean firstLine=true;
-		while ((line = bf.readLine()) != null) {
-			String parts[]=line.split(this.separator);
+		this.wordMap=new Object2ObjectOpenHashMap<String, AbstractDoubleList>();
 
-			AbstractDoubleList wordVector=new DoubleArrayList();
-			if(firstLine){
-				this.dimensions=parts.length-1;
+		double squaredError=0;
+		long numValues=0;
 
+		ExecutorService pool=this.numThreads>1 ? Executors.newFixedThreadPool(this.numThreads) : null;
+		try {
+			String line=bf.readLine();
+			if(line!=null){
+				// the number of dimensions is given by the first line
+				this.dimensions=line.split(this.separator).length-1;
 				this.wordNameIndex.setUpper(this.dimensions);
-				firstLine=false;				
 			}
-			
+
+			// the blocks parsed by the workers are added to the dictionary in the order of the file 
+			ArrayDeque<Future<ParsedBlock>> pending=new ArrayDeque<Future<ParsedBlock>>();
+			while(line!=null){
+				// a cancelled background load stops reading
+				if(Thread.interrupted())
+					throw new InterruptedIOException("Interrupted while reading "+this.embeddingsFile);
+
+				final String[] lines=new String[BLOCK_SIZE];
+				int numLines=0;
+				for(;line!=null && numLines<BLOCK_SIZE;line=bf.readLine())
+					lines[numLines++]=line;
+
+				ParsedBlock block;
+				if(pool==null)
+					block=this.parseBlock(lines, numLines, vocabulary);
+				else{
+					final int blockLines=numLines;
+					final Set<String> blockVocabulary=vocabulary;
+					pending.add(pool.submit(new Callable<ParsedBlock>() {
+						@Override
+						public ParsedBlock call() {
+							return parseBlock(lines, blockLines, blockVocabulary);
+						}
+					}));
+					// the number of blocks in memory is bounded
+					if(pending.size()<2*this.numThreads)
+						continue;
+					block=getBlock(pending.poll());
+				}
+
+				this.addBlock(block);
+				squaredError+=block.squaredError;
+				numValues+=block.numValues;
+			}
+
+			while(!pending.isEmpty()){
+				ParsedBlock block=getBlock(pending.poll());
+				this.addBlock(block);
+				squaredError+=block.squaredError;
+				numValues+=block.numValues;
+			}
+		} finally {
+			if(pool!=null)
+				pool.shutdownNow();
+			bf.close();
+			xover.close();
+			gzis.close();
+			fin.close();
+		}
+
+		this.reconstructionError=numValues==0 ? 0 : Math.sqrt(squaredError/numValues);
+
+
+	}
+
+
+	/**
+	 * The words and vectors parsed from a block of lines.
+	 */
+	protected static class ParsedBlock {
+
+		/** The words with a vector. */
+		protected String[] words;
+
+		/** The vectors of the words. */
+		protected AbstractDoubleList[] vectors;
+
+		/** The number of words with a vector. */
+		protected int size;
+
+		/** The sum of the squared quantization errors of the values. */
+		protected double squaredError;
+
+		/** The number of quantized values. */
+		protected long numValues;
+	}
+
+
+	/**
+	 * Parses the vectors of a block of lines. Lines with a wrong number of dimensions and words out 
+	 * of the vocabulary are skipped. 
+	 * 
+	 * @param lines the lines
+	 * @param numLines the number of lines
+	 * @param vocabulary the words whose vectors are parsed or null for parsing all the vectors
+	 * @return the words and their vectors
+	 */
+	protected ParsedBlock parseBlock(String[] lines, int numLines, Set<String> vocabulary) {
+		ParsedBlock block=new ParsedBlock();
+		block.words=new String[numLines];
+		block.vectors=new AbstractDoubleList[numLines];
+
+		int wordIndex=this.wordNameIndex.getIndex();
+		char separatorChar=this.separator.length()==1 && REGEX_CHARS.indexOf(this.separator.charAt(0))==-1 ? this.separator.charAt(0) : 0;
+		int[] starts=new int[this.dimensions+2];
+		int[] ends=new int[this.dimensions+2];
+
+		for(int l=0;l<numLines;l++){
+			String line=lines[l];
+			String[] parts=null;
+			int numColumns;
+			if(separatorChar!=0)
+				numColumns=splitColumns(line, separatorChar, starts, ends);
+			else{
+				// the separator is a regular expression
+				parts=line.split(this.separator);
+				numColumns=parts.length;
+			}
+
 			// only consider lines with right number of dimensions
-			if(parts.length-1==this.dimensions){
-				for(int i=0;i<parts.length-1;i++){
-					if(i!=this.wordNameIndex.getIndex())				
-						wordVector.add(Double.parseDouble(parts[i]));
+			if(numColumns-1!=this.dimensions)
+				continue;
+
+			String word=parts==null ? line.substring(starts[wordIndex], ends[wordIndex]) : parts[wordIndex];
+			if(vocabulary!=null && !vocabulary.contains(word))
+				continue;
+
+			double[] values=new double[this.dimensions];
+			int d=0;
+			for(int i=0;i<numColumns;i++){
+				if(i!=wordIndex)
+					values[d++]=parts==null ? parseDouble(line, starts[i], ends[i]) : parseDouble(parts[i], 0, parts[i].length());
+			}
+			// the vectors fetched from the index are floats
+			if(this.vocabularyOnly){
+				for(int i=0;i<values.length;i++)
+					values[i]=(float) values[i];
+			}
+			AbstractDoubleList wordVector=DoubleArrayList.wrap(values);
+
+			// the vector is replaced by its quantized version, which is decoded when it is read
+			if(this.quantization!=Quantization.NONE){
+				AbstractDoubleList quantized=QuantizedVector.quantize(wordVector, this.quantization);
+				for(int i=0;i<values.length;i++){
+					double error=values[i]-quantized.getDouble(i);
+					block.squaredError+=error*error;
 				}
+				block.numValues+=values.length;
+				wordVector=quantized;
+			}
+
+			block.words[block.size]=word;
+			block.vectors[block.size]=wordVector;
+			block.size++;
+		}
+
+		return block;
+	}
+
 
-				
-				this.wordMap.put(parts[this.wordNameIndex.getIndex()], wordVector);
+	/**
+	 * Adds the vectors of a block to the dictionary. Repeated words keep their last vector.
+	 * 
+	 * @param block the block
+	 */
+	protected void addBlock(ParsedBlock block) {
+		for(int i=0;i<block.size;i++)
+			this.wordMap.put(block.words[i], block.vectors[i]);
+	}
 
+
+	/**
+	 * Waits for a block parsed by a worker.
+	 * 
+	 * @param block the block being parsed
+	 * @return the parsed block
+	 * @throws IOException if the thread is interrupted
+	 */
+	protected static ParsedBlock getBlock(Future<ParsedBlock> block) throws IOException {
+		try {
+			return block.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while parsing a block of lines");
+		}
+	}
+
+
+	/**
+	 * Finds the columns of a line like String.split does with a separator that is a single character,
+	 * so the trailing empty columns are removed. 
+	 * 
+	 * @param line the line
+	 * @param separator the separator
+	 * @param starts the start of each column, only the first starts.length columns are stored
+	 * @param ends the end of each column, exclusive
+	 * @return the number of columns
+	 */
+	protected static int splitColumns(String line, char separator, int[] starts, int[] ends) {
+		int length=line.length();
+		while(length>0 && line.charAt(length-1)==separator)
+			length--;
+		// a line with only separators has no columns
+		if(length==0 && !line.isEmpty())
+			return 0;
+
+		int numColumns=0;
+		int start=0;
+		for(int i=0;i<=length;i++){
+			if(i==length || line.charAt(i)==separator){
+				if(numColumns<starts.length){
+					starts[numColumns]=start;
+					ends[numColumns]=i;
+				}
+				numColumns++;
+				start=i+1;
 			}
+		}
+		return numColumns;
+	}
 
 
+	/**
+	 * Parses a double value from a part of a string. Decimal numbers with up to 15 significant digits
+	 * and a small exponent, which are the usual values of word vectors, are calculated exactly with a 
+	 * single floating point operation. Other numbers are parsed with Double.parseDouble, so the result
+	 * is always the same as the one of Double.parseDouble.
+	 * 
+	 * @param s the string
+	 * @param start the start of the number
+	 * @param end the end of the number, exclusive
+	 * @return the value
+	 */
+	protected static double parseDouble(String s, int start, int end) {
+		int i=start;
+		boolean negative=false;
+		if(i<end && (s.charAt(i)=='-' || s.charAt(i)=='+')){
+			negative=s.charAt(i)=='-';
+			i++;
+		}
 
+		long mantissa=0;
+		int exponent=0;
+		int numDigits=0;
+		boolean point=false;
+		for(;i<end;i++){
+			char c=s.charAt(i);
+			if(c>='0' && c<='9'){
+				mantissa=mantissa*10+(c-'0');
+				if(mantissa>MAX_EXACT_MANTISSA)
+					return Double.parseDouble(s.substring(start, end));
+				if(point)
+					exponent--;
+				numDigits++;
+			}
+			else if(c=='.' && !point)
+				point=true;
+			else
+				break;
+		}
+		if(numDigits==0)
+			return Double.parseDouble(s.substring(start, end));
+
+		if(i<end){
+			// the exponent
+			char c=s.charAt(i);
+			if(c!='e' && c!='E')
+				return Double.parseDouble(s.substring(start, end));
+			i++;
+			boolean negativeExponent=false;
+			if(i<end && (s.charAt(i)=='-' || s.charAt(i)=='+')){
+				negativeExponent=s.charAt(i)=='-';
+				i++;
+			}
+			int value=0;
+			int numExponentDigits=0;
+			for(;i<end && numExponentDigits<4;i++,numExponentDigits++){
+				c=s.charAt(i);
+				if(c<'0' || c>'9')
+					break;
+				value=value*10+(c-'0');
+			}
+			if(i<end || numExponentDigits==0)
+				return Double.parseDouble(s.substring(start, end));
+			exponent+=negativeExponent ? -value : value;
 		}
-		bf.close();
-		xover.close();
-		gzis.close();
-		fin.close();
-	
 
+		// the mantissa and the power of ten are exact doubles, so the result is correctly rounded
+		double value;
+		if(mantissa==0)
+			value=0;
+		else if(exponent>=0 && exponent<POWERS_OF_TEN.length)
+			value=mantissa*POWERS_OF_TEN[exponent];
+		else if(exponent<0 && -exponent<POWERS_OF_TEN.length)
+			value=mantissa/POWERS_OF_TEN[-exponent];
+		else
+			return Double.parseDouble(s.substring(start, end));
+
+		return negative ? -value : value;
 	}
 
 
@@ -161,6 +793,58 @@ public class CSVEmbeddingHandler extends EmbeddingHandler {
 
 
 
+	@OptionMetadata(displayName = "quantization",
+			description = "The scalar quantization of the vectors stored in memory, which are decoded on the fly when they are read: "
+					+ "NONE (double values), FLOAT16 (half-precision floats) or INT8 (one byte per value and a scale per vector). Default: NONE.",
+			commandLineParamName = "quantization", commandLineParamSynopsis = "-quantization <string>",
+			displayOrder = 3)	
+	public Quantization getQuantization() {
+		return quantization;
+	}
+	public void setQuantization(Quantization quantization) {
+		this.quantization = quantization;
+	}
+
+
+	@OptionMetadata(displayName = "numThreads",
+			description = "The number of threads parsing the lines of the file. With more than one thread, the file is "
+					+ "decompressed and split into blocks of lines by one thread while the blocks are parsed by the other ones. Default: 1.",
+			commandLineParamName = "threads", commandLineParamSynopsis = "-threads <int>",
+			displayOrder = 4)	
+	public int getNumThreads() {
+		return numThreads;
+	}
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Gets the root mean squared difference between the values read from the file and the quantized values
+	 * stored in memory.
+	 * 
+	 * @return the reconstruction error, zero if the vectors are not quantized
+	 */
+	public double getReconstructionError() {
+		return reconstructionError;
+	}
+
+
+
+	@OptionMetadata(displayName = "indexDirectory",
+			description = "The directory where the index of the embeddings file is written when the vectors of words out of the first batch"
+					+ " are fetched on demand. The index is deleted when the virtual machine exits. Default: the temporary directory.",
+			commandLineParamName = "index-dir", commandLineParamSynopsis = "-index-dir <dir>",
+			displayOrder = 5)	
+	public File getIndexDirectory() {
+		return indexDirectory;
+	}
+	public void setIndexDirectory(File indexDirectory) {
+		this.indexDirectory = indexDirectory;
+	}
+
+
+
 	@OptionMetadata(displayName = "wordNameIndex",
 			description = "The index (starting from 1) of the word string in the file. First and last are valid values. ",
 			commandLineParamName = "I", commandLineParamSynopsis = "-I <col>",
@@ -0,0 +1,261 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    DocFrequencyCounter.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.Collection;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Counts the number of documents in which each word occurs, for discarding the rare words before building
+ *  their representations. EXACT counts the words in a hash map, which has one entry per distinct word. SKETCH
+ *  counts them in a count-min sketch of fixed size with conservative updates, whose counts are never smaller
+ *  than the real ones, so the words that reach a minimum number of documents are always kept and only a few
+ *  rare words colliding with frequent ones are kept too.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public abstract class DocFrequencyCounter {
+
+	/** The ways of discarding the rare words. */
+	public static enum Pruning {
+		NONE,
+		EXACT,
+		SKETCH,
+	}
+
+
+	/**
+	 * Creates a counter.
+	 *
+	 * @param pruning the kind of counter, EXACT or SKETCH
+	 * @param numWords an estimate of the number of distinct words, which sizes the sketch
+	 * @return the counter
+	 */
+	public static DocFrequencyCounter create(Pruning pruning, int numWords) {
+		switch (pruning) {
+		case EXACT:
+			return new Exact();
+		case SKETCH:
+			return new Sketch(Sketch.DEFAULT_DEPTH, Sketch.width(numWords));
+		default:
+			throw new IllegalArgumentException("Unsupported pruning: " + pruning);
+		}
+	}
+
+
+	/**
+	 * Counts a document.
+	 *
+	 * @param words the distinct words of the document
+	 */
+	public abstract void addDoc(Collection<String> words);
+
+
+	/**
+	 * Gets the number of documents of a word, which for a sketch can be larger than the real one.
+	 *
+	 * @param word the word
+	 * @return the number of documents
+	 */
+	public abstract int getCount(String word);
+
+
+	/**
+	 * Adds the counts of another counter created in the same way.
+	 *
+	 * @param other the other counter
+	 */
+	public abstract void add(DocFrequencyCounter other);
+
+
+	/**
+	 * Creates an empty counter of the same kind and size, for counting a part of the documents on another thread.
+	 *
+	 * @return the counter
+	 */
+	public abstract DocFrequencyCounter emptyCopy();
+
+
+	/**
+	 * Gets the approximate number of bytes retained by the counter.
+	 *
+	 * @return the number of bytes
+	 */
+	public abstract long getMemoryFootprint();
+
+
+
+	/**
+	 * A counter with one entry per distinct word.
+	 */
+	public static class Exact extends DocFrequencyCounter {
+
+		/** The number of documents of each word. */
+		protected Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<String>();
+
+		@Override
+		public void addDoc(Collection<String> words) {
+			for (String word : words)
+				this.counts.addTo(word, 1);
+		}
+
+		@Override
+		public int getCount(String word) {
+			return this.counts.getInt(word);
+		}
+
+		@Override
+		public void add(DocFrequencyCounter other) {
+			for (Object2IntMap.Entry<String> entry : ((Exact) other).counts.object2IntEntrySet())
+				this.counts.addTo(entry.getKey(), entry.getIntValue());
+		}
+
+		@Override
+		public DocFrequencyCounter emptyCopy() {
+			return new Exact();
+		}
+
+		@Override
+		public long getMemoryFootprint() {
+			long bytes = LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE)
+					+ LexiconTable.arrayFootprint(this.counts.size() * 2, LexiconTable.REFERENCE_SIZE)
+					+ LexiconTable.arrayFootprint(this.counts.size() * 2, 4);
+			for (String word : this.counts.keySet())
+				bytes += LexiconTable.stringFootprint(word);
+			return bytes;
+		}
+
+	}
+
+
+
+	/**
+	 * A count-min sketch. Each word is counted in one cell of each row and its count is the minimum of its
+	 * cells. A document only increases the cells of a word that are equal to that minimum.
+	 */
+	public static class Sketch extends DocFrequencyCounter {
+
+		/** The default number of rows. */
+		public static final int DEFAULT_DEPTH = 4;
+
+		/** The largest number of cells of a row. */
+		public static final int MAX_WIDTH = 1 << 22;
+
+		/** The cells, row after row. */
+		protected int[] cells;
+
+		/** The number of rows. */
+		protected int depth;
+
+		/** The number of cells of a row, a power of two. */
+		protected int width;
+
+
+		/**
+		 * Creates an empty sketch.
+		 *
+		 * @param depth the number of rows
+		 * @param width the number of cells of a row, a power of two
+		 */
+		public Sketch(int depth, int width) {
+			this.depth = depth;
+			this.width = width;
+			this.cells = new int[depth * width];
+		}
+
+
+		/**
+		 * Gets a width with at least one cell per distinct word, up to MAX_WIDTH.
+		 *
+		 * @param numWords an estimate of the number of distinct words
+		 * @return the width, a power of two
+		 */
+		public static int width(int numWords) {
+			int width = 1 << 10;
+			while (width < numWords && width < MAX_WIDTH)
+				width <<= 1;
+			return width;
+		}
+
+
+		/**
+		 * Gets the cell of a word in a row.
+		 *
+		 * @param hash the hash of the word
+		 * @param row the row
+		 * @return the index of the cell in cells
+		 */
+		protected int cell(long hash, int row) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32) | 1;
+			return row * this.width + ((h1 + row * h2) & (this.width - 1));
+		}
+
+		@Override
+		public void addDoc(Collection<String> words) {
+			for (String word : words) {
+				long hash = MinimalPerfectHash.hash(word, 0);
+				int min = Integer.MAX_VALUE;
+				for (int r = 0; r < this.depth; r++)
+					min = Math.min(min, this.cells[this.cell(hash, r)]);
+				for (int r = 0; r < this.depth; r++) {
+					int c = this.cell(hash, r);
+					if (this.cells[c] == min)
+						this.cells[c] = min + 1;
+				}
+			}
+		}
+
+		@Override
+		public int getCount(String word) {
+			long hash = MinimalPerfectHash.hash(word, 0);
+			int min = Integer.MAX_VALUE;
+			for (int r = 0; r < this.depth; r++)
+				min = Math.min(min, this.cells[this.cell(hash, r)]);
+			return min;
+		}
+
+		@Override
+		public void add(DocFrequencyCounter other) {
+			int[] otherCells = ((Sketch) other).cells;
+			for (int c = 0; c < this.cells.length; c++)
+				this.cells[c] += otherCells[c];
+		}
+
+		@Override
+		public DocFrequencyCounter emptyCopy() {
+			return new Sketch(this.depth, this.width);
+		}
+
+		@Override
+		public long getMemoryFootprint() {
+			return LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE + 8) + LexiconTable.arrayFootprint(this.cells.length, 4);
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    EmbeddingCompiler.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.File;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Converts word embeddings in csv.gz format into the binary file memory-mapped by MappedEmbeddingHandler.
+ *  Usage: java affective.core.EmbeddingCompiler &lt;csv.gz file&gt; &lt;embeddings file&gt; [CSVEmbeddingHandler options]
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class EmbeddingCompiler {
+
+	/**
+	 * Main method for converting the embeddings.
+	 *
+	 * @param args the csv.gz file, the embeddings file and the options of the csv handler, e.g., -sep or -I
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java affective.core.EmbeddingCompiler <csv.gz file> <embeddings file> [CSVEmbeddingHandler options]");
+			return;
+		}
+
+		try {
+			CSVEmbeddingHandler source = new CSVEmbeddingHandler();
+			source.setOptions(java.util.Arrays.copyOfRange(args, 2, args.length));
+			source.setEmbeddingsFile(new File(args[0]));
+
+			long start = System.currentTimeMillis();
+			MappedEmbeddingHandler.write(source, new File(args[1]));
+			System.err.println("Embeddings compiled into " + args[1] + " in " + (System.currentTimeMillis() - start) + " ms");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+}
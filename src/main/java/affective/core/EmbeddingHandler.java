@@ -24,11 +24,17 @@
 package affective.core;
 
 import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
 
 import weka.core.Option;
 import weka.core.OptionHandler;
@@ -53,12 +59,23 @@ public abstract class EmbeddingHandler implements Serializable, OptionHandler {
 	private static final long serialVersionUID = -2789278587499972963L;
 	
 
-	/** Mapping between words and their vectors. */
-	protected Object2ObjectMap<String, AbstractDoubleList> wordMap=new Object2ObjectOpenHashMap<String, AbstractDoubleList>();
+	/** The scalar quantizations of the vectors. */
+	public static enum Quantization {
+		NONE,
+		FLOAT16,
+		INT8,
+	}
+
+
+	/** Mapping between words and their vectors. The mapping is shared through the ResourceRegistry and is not serialized. */
+	protected transient Object2ObjectMap<String, AbstractDoubleList> wordMap=new Object2ObjectOpenHashMap<String, AbstractDoubleList>();
 
 	/** Number of dimensions of the embeddings. */ 
 	protected int dimensions;
 
+	/** The nearest neighbour index of the vectors, built when it is first needed. */
+	protected transient NearestNeighbourIndex neighbourIndex;
+
 
 
 	/* (non-Javadoc)
@@ -102,9 +119,150 @@ public abstract class EmbeddingHandler implements Serializable, OptionHandler {
 	 */
 	abstract public void createDict() throws Exception;
 
+
+	/**
+	 * initializes the dictionary with the vectors of the words of a vocabulary, e.g., the words of the
+	 * first batch of tweets. The vectors of other words are fetched when they are first needed and 
+	 * the last ones used are kept in a cache. Handlers that cannot restrict their dictionary to a 
+	 * vocabulary load all the vectors.
+	 * 
+	 * @param vocabulary the words whose vectors are loaded
+	 * @param cacheSize the maximum number of vectors fetched on demand kept in memory
+	 * @throws Exception in case of wrong file
+	 */
+	public void createDict(Set<String> vocabulary, int cacheSize) throws Exception {
+		this.createDict();
+	}
+
+
+	/**
+	 * Starts loading the dictionary in the background, so that a later call to createDict 
+	 * does not have to wait for the whole file to be read. Handlers that cannot load their
+	 * dictionary in the background do nothing.
+	 */
+	public void preloadDict() {
+
+	}
+
 	
 	/**
-	 * Gets the dictionary mapping the words to their vectors
+	 * Resolves the dictionary again after deserialization, so that all the copies of the handler
+	 * share the vectors registered in the JVM.
+	 * 
+	 * @return this handler
+	 * @throws ObjectStreamException if the dictionary cannot be created
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		if(this.dimensions>0){
+			try {
+				this.createDict();
+			} catch (Exception e) {
+				InvalidObjectException ioe=new InvalidObjectException("Cannot load the embeddings: "+e.getMessage());
+				ioe.initCause(e);
+				throw ioe;
+			}
+		}
+		else
+			this.wordMap=new Object2ObjectOpenHashMap<String, AbstractDoubleList>();
+		return this;
+	}
+
+
+	/**
+	 * Gets the vector of a word.
+	 * 
+	 * @param word the word
+	 * @return the vector or null if the word has no vector
+	 */
+	public AbstractDoubleList getVector(String word) {
+		return this.wordMap.get(word);
+	}
+
+
+	/**
+	 * Adds the vector of a word to an array of values. Each value of the vector is divided by the 
+	 * divisor and added to the position offset plus its dimension.
+	 * 
+	 * @param word the word
+	 * @param values the array of values
+	 * @param offset the position of the first dimension in the array
+	 * @param divisor the divisor of the values of the vector, e.g., the number of words for averaging them
+	 * @return true if the word has a vector
+	 */
+	public boolean addVector(String word, double[] values, int offset, double divisor) {
+		AbstractDoubleList vector=this.getVector(word);
+		if(vector==null)
+			return false;
+
+		if(vector instanceof DoubleArrayList){
+			double[] elements=((DoubleArrayList) vector).elements();
+			int size=vector.size();
+			for(int j=0;j<size;j++)
+				values[offset+j]+=elements[j]/divisor;
+		}
+		else if(vector instanceof QuantizedVector)
+			((QuantizedVector) vector).addTo(values, offset, divisor);
+		else{
+			int size=vector.size();
+			for(int j=0;j<size;j++)
+				values[offset+j]+=vector.getDouble(j)/divisor;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Gets the words with a vector. Handlers loading only the vectors of a vocabulary return the 
+	 * words loaded.
+	 * 
+	 * @return the words
+	 */
+	public List<String> getWords() {
+		return new ArrayList<String>(this.wordMap.keySet());
+	}
+
+
+	/**
+	 * Finds the words with the most similar vectors to the vector of a word using an approximate 
+	 * nearest neighbour index. The index is built with all the available processors when it is first
+	 * needed unless it has been set.
+	 * 
+	 * @param word the word
+	 * @param k the number of words
+	 * @return the words from the most to the least similar one, empty if the word has no vector
+	 * @throws Exception if the index cannot be built
+	 */
+	public List<String> nearestWords(String word, int k) throws Exception {
+		return this.getNeighbourIndex().nearestWords(word, k);
+	}
+
+
+	/**
+	 * Gets the nearest neighbour index of the vectors, building it if it has not been built or set.
+	 * 
+	 * @return the index
+	 * @throws Exception if the index cannot be built
+	 */
+	public synchronized NearestNeighbourIndex getNeighbourIndex() throws Exception {
+		if(this.neighbourIndex==null)
+			this.neighbourIndex=new NearestNeighbourIndex(this, Runtime.getRuntime().availableProcessors());
+		return this.neighbourIndex;
+	}
+
+
+	/**
+	 * Sets the nearest neighbour index of the vectors, e.g., an index loaded from a file.
+	 * 
+	 * @param neighbourIndex the index
+	 */
+	public synchronized void setNeighbourIndex(NearestNeighbourIndex neighbourIndex) {
+		this.neighbourIndex = neighbourIndex;
+	}
+
+
+	/**
+	 * Gets the dictionary mapping the words to their vectors. Handlers storing their vectors 
+	 * outside the heap return an empty dictionary and their vectors are obtained with getVector.
 	 * 
 	 * @return the dictionary.
 	 */
@@ -113,6 +271,38 @@ public abstract class EmbeddingHandler implements Serializable, OptionHandler {
 	}
 
 
+	/**
+	 * Gets the approximate number of bytes retained in the heap by the vectors.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		return getMemoryFootprint(this.wordMap);
+	}
+
+
+	/**
+	 * Gets the approximate number of bytes retained in the heap by a mapping between words and vectors.
+	 * 
+	 * @param map the mapping
+	 * @return the number of bytes
+	 */
+	protected static long getMemoryFootprint(Object2ObjectMap<String, AbstractDoubleList> map) {
+		long bytes=LexiconTable.objectFootprint(32)+2*LexiconTable.arrayFootprint(map.size()*4/3+1, LexiconTable.REFERENCE_SIZE);
+		for(Object2ObjectMap.Entry<String, AbstractDoubleList> entry:map.object2ObjectEntrySet()){
+			bytes+=LexiconTable.stringFootprint(entry.getKey());
+			AbstractDoubleList vector=entry.getValue();
+			if(vector instanceof QuantizedVector)
+				bytes+=((QuantizedVector) vector).getMemoryFootprint();
+			else if(vector instanceof DoubleArrayList)
+				bytes+=LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE+4)+LexiconTable.arrayFootprint(((DoubleArrayList) vector).elements().length, 8);
+			else
+				bytes+=LexiconTable.arrayFootprint(vector.size(), 8);
+		}
+		return bytes;
+	}
+
+
 	/**
 	 * Gets the dimensions variable
 	 * 
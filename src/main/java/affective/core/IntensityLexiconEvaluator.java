@@ -49,8 +49,11 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 	/** For serialization. */
 	private static final long serialVersionUID = -2094228012480778199L;
 
-	/** The dictionary. */
-	protected Map<String, String> dict;
+	/** The name of the column with the scores. */
+	public static final String SCORE_COLUMN = "score";
+
+	/** The map view of the table, created on the first call to getDict. */
+	protected transient Map<String, String> dict;
 
 	/**
 	 * Initializes the Object
@@ -60,7 +63,6 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 	 */
 	public IntensityLexiconEvaluator(String file,String name) {
 		super(file,name);
-		this.dict = new HashMap<String, String>();	
 
 		this.featureNames=new ArrayList<String>();
 		this.featureNames.add(name+"-posScore");
@@ -80,10 +82,17 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 		InputStreamReader xover = new InputStreamReader(gzis);
 		BufferedReader bf = new BufferedReader(xover);
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(SCORE_COLUMN);
+
 		String line;
 		while ((line = bf.readLine()) != null) {
 			String pair[] = line.split("\t");
-			this.dict.put(pair[0], pair[1]);
+			try {
+				double value = Double.parseDouble(pair[1]);
+				builder.setScore(builder.addWord(pair[0]), 0, value);
+			} catch (NumberFormatException e) {
+				// entries without a numeric score are discarded
+			}
 
 		}
 		bf.close();
@@ -91,6 +100,8 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 		gzis.close();
 		fin.close();
 
+		this.setTable(builder.build());
+
 	}
 
 	/**
@@ -100,13 +111,29 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 	 * @return the value for the word 
 	 */
 	public String retrieveValue(String word) {
-		if (!this.dict.containsKey(word)) {
+		int row = this.table.lookup(word);
+		if (row == -1) {
 			return "not_found";
 		} else {
-			return this.dict.get(word);
+			return formatScore(this.table.getScore(row, 0));
 		}
 
 	}
+
+
+	/**
+	 * Formats a score the way it is usually written in a lexicon file: integral scores have no 
+	 * decimal part ("2" rather than "2.0") and other scores are written with the shortest decimal 
+	 * representation of the double.
+	 * 
+	 * @param score the score
+	 * @return the formatted score
+	 */
+	protected static String formatScore(double score) {
+		if (score == Math.rint(score) && Math.abs(score) < 1e15)
+			return String.valueOf((long) score);
+		return String.valueOf(score);
+	}
 	
 
 	/* (non-Javadoc)
@@ -118,9 +145,9 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 		double posScore = 0;
 		double negScore = 0;
 		for (String w : tokens) {
-			String pol = this.retrieveValue(w);
-			if (!pol.equals("not_found")) {
-				double value = Double.parseDouble(pol);
+			int row = this.table.lookup(w);
+			if (row != -1) {
+				double value = this.table.getScore(row, 0);
 				if (value > 0) {
 					posScore += value;
 				} else {
@@ -135,11 +162,20 @@ public class IntensityLexiconEvaluator extends LexiconEvaluator  {
 	}
 
 	/**
-	 * Gets the dictionary mapping the words to their vectors
+	 * Gets the dictionary mapping the words to their scores. The dictionary is a read-only view of 
+	 * the lexicon table, the scores are formatted as in retrieveValue.
 	 * 
 	 * @return the dictionary.
 	 */
 	public Map<String, String> getDict() {
+		if (this.dict == null) {
+			this.dict = new TableDict<String>() {
+				@Override
+				protected String value(int row) {
+					return formatScore(table.getScore(row, 0));
+				}
+			};
+		}
 		return this.dict;
 	}
 
@@ -0,0 +1,551 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LexiconBundle.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  A versioned binary file containing several compiled lexicons. The file is memory-mapped and
+ *  the lexicons are read directly from the mapping, so opening a bundle does not parse any text.
+ *  Each lexicon is stored as a hash index over its words followed by double score columns. The header
+ *  records the length, modification time and CRC32 checksum of the file each lexicon was compiled from,
+ *  so that lexicons whose file has been edited since are parsed again.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class LexiconBundle {
+
+	/** The first four bytes of a bundle ("ATLB"). */
+	public static final int MAGIC = 0x41544C42;
+
+	/** The version of the format. */
+	public static final int VERSION = 3;
+
+	/** The charset used for the words. */
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The bundle file. */
+	protected File file;
+
+	/** The mapping of the file. */
+	protected MappedByteBuffer buffer;
+
+	/** The lexicons of the bundle by name. */
+	protected Map<String, MappedTable> tables = new HashMap<String, MappedTable>();
+
+
+	/**
+	 * Opens a bundle.
+	 *
+	 * @param file the bundle file
+	 * @return the bundle
+	 * @throws IOException if the file is not a valid bundle
+	 */
+	public static LexiconBundle open(File file) throws IOException {
+		LexiconBundle bundle = new LexiconBundle();
+		bundle.file = file.getAbsoluteFile();
+
+		RandomAccessFile raf = new RandomAccessFile(bundle.file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			bundle.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (bundle.buffer.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a lexicon bundle");
+		if (bundle.buffer.getInt(4) != VERSION)
+			throw new IOException(file + " was compiled with an unsupported version of the format");
+
+		int numTables = bundle.buffer.getInt(8);
+		int pos = 12;
+		for (int i = 0; i < numTables; i++) {
+			int nameLength = bundle.buffer.getInt(pos);
+			String name = bundle.readString(pos + 4, nameLength);
+			pos += 4 + nameLength;
+			long sourceLength = bundle.buffer.getLong(pos);
+			long sourceModified = bundle.buffer.getLong(pos + 8);
+			long sourceChecksum = bundle.buffer.getLong(pos + 16);
+			int offset = (int) bundle.buffer.getLong(pos + 24);
+			pos += 32;
+			bundle.tables.put(name, bundle.new MappedTable(name, sourceLength, sourceModified, sourceChecksum, offset));
+		}
+
+		return bundle;
+	}
+
+
+	/**
+	 * Gets a lexicon from the bundle.
+	 *
+	 * @param name the name of the lexicon
+	 * @return the lexicon or null if the bundle does not contain it
+	 */
+	public LexiconTable getTable(String name) {
+		return this.tables.get(name);
+	}
+
+
+	/**
+	 * Gets a lexicon from the bundle if it was compiled from the given source file. Lexicons whose
+	 * source file has changed since the bundle was compiled are not returned. A source file with the 
+	 * recorded length and modification time is taken as unchanged, otherwise its checksum is compared, 
+	 * so an edit that keeps the length of the file is detected and a file that was only touched is not.
+	 *
+	 * @param name the name of the lexicon
+	 * @param source the file the lexicon was compiled from
+	 * @return the lexicon or null if the bundle does not contain an up-to-date version of it
+	 */
+	public LexiconTable getTable(String name, File source) {
+		MappedTable table = this.tables.get(name);
+		if (table == null)
+			return null;
+		if (!source.exists())
+			return table;
+		if (source.length() != table.sourceLength)
+			return null;
+		if (source.lastModified() != table.sourceModified) {
+			try {
+				if (checksum(source) != table.sourceChecksum)
+					return null;
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return table;
+	}
+
+
+	/**
+	 * Calculates the CRC32 checksum of the content of a file.
+	 *
+	 * @param file the file
+	 * @return the checksum
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				crc.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+
+	/**
+	 * Gets the bundle file.
+	 *
+	 * @return the file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+
+	/**
+	 * Reads a String from the mapping.
+	 *
+	 * @param pos the position of the first byte
+	 * @param length the number of bytes
+	 * @return the String
+	 */
+	protected String readString(int pos, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = this.buffer.get(pos + i);
+		return new String(bytes, UTF8);
+	}
+
+
+
+	/**
+	 * Compiles the lexicons of a list of evaluators into a bundle. The dictionaries of the evaluators
+	 * must have been processed before.
+	 *
+	 * @param file the bundle file
+	 * @param lexicons the evaluators
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(File file, List<? extends LexiconEvaluator> lexicons) throws IOException {
+
+		int numTables = 0;
+		int headerSize = 12;
+		byte[][] names = new byte[lexicons.size()][];
+		byte[][] blocks = new byte[lexicons.size()][];
+
+		for (int i = 0; i < lexicons.size(); i++) {
+			LexiconEvaluator lex = lexicons.get(i);
+			if (lex.getTable() == null)
+				continue;
+			names[i] = lex.name.getBytes(UTF8);
+			blocks[i] = compileTable(lex.getTable());
+			headerSize += 4 + names[i].length + 32;
+			numTables++;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numTables);
+
+			long offset = headerSize;
+			for (int i = 0; i < lexicons.size(); i++) {
+				if (blocks[i] == null)
+					continue;
+				out.writeInt(names[i].length);
+				out.write(names[i]);
+				File source = new File(lexicons.get(i).path);
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+				out.writeLong(source.exists() ? checksum(source) : 0);
+				out.writeLong(offset);
+				offset += blocks[i].length;
+			}
+
+			for (byte[] block : blocks) {
+				if (block != null)
+					out.write(block);
+			}
+		} finally {
+			out.close();
+		}
+
+	}
+
+
+	/**
+	 * Serializes a table.
+	 *
+	 * @param table the table
+	 * @return the bytes of the table
+	 * @throws IOException never, the table is written into memory
+	 */
+	protected static byte[] compileTable(LexiconTable table) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		int numWords = table.size();
+		int numColumns = table.numColumns();
+
+		out.writeInt(numWords);
+		out.writeInt(numColumns);
+		for (int col = 0; col < numColumns; col++) {
+			byte[] name = table.getColumnName(col).getBytes(UTF8);
+			out.writeInt(name.length);
+			out.write(name);
+		}
+
+		// open addressing index with linear probing, slots store the row plus one
+		int capacity = HashCommon.nextPowerOfTwo(Math.max(2, 2 * numWords));
+		int[] slots = new int[capacity];
+		int[] hashes = new int[numWords];
+		for (int row = 0; row < numWords; row++) {
+			hashes[row] = table.getWord(row).hashCode();
+			int slot = HashCommon.mix(hashes[row]) & (capacity - 1);
+			while (slots[slot] != 0)
+				slot = (slot + 1) & (capacity - 1);
+			slots[slot] = row + 1;
+		}
+
+		out.writeInt(capacity);
+		for (int slot : slots)
+			out.writeInt(slot);
+		for (int hash : hashes)
+			out.writeInt(hash);
+
+		// the words are stored as a pool of UTF-8 bytes
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		for (int row = 0; row < numWords; row++) {
+			out.writeInt(pool.size());
+			pool.write(table.getWord(row).getBytes(UTF8));
+		}
+		out.writeInt(pool.size());
+		pool.writeTo(out);
+
+		// the score columns start at a multiple of eight
+		while (out.size() % 8 != 0)
+			out.writeByte(0);
+
+		for (int col = 0; col < numColumns; col++) {
+			for (int row = 0; row < numWords; row++)
+				out.writeDouble(table.getScore(row, col));
+		}
+
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+
+
+	/**
+	 * A lexicon read from the mapping of the bundle.
+	 */
+	protected class MappedTable extends LexiconTable {
+
+		/** For serialization. */
+		private static final long serialVersionUID = -5630618484946264722L;
+
+		/** The name of the lexicon. */
+		protected String name;
+
+		/** The length of the file the lexicon was compiled from. */
+		protected long sourceLength;
+
+		/** The modification time of the file the lexicon was compiled from. */
+		protected long sourceModified;
+
+		/** The CRC32 checksum of the file the lexicon was compiled from. */
+		protected long sourceChecksum;
+
+		/** The number of words. */
+		protected int numWords;
+
+		/** The names of the columns. */
+		protected String[] columnNames;
+
+		/** The number of slots of the index. */
+		protected int capacity;
+
+		/** Position of the slots of the index. */
+		protected int slotsPos;
+
+		/** Position of the hash codes of the words. */
+		protected int hashesPos;
+
+		/** Position of the offsets of the words in the pool. */
+		protected int offsetsPos;
+
+		/** Position of the pool of words. */
+		protected int poolPos;
+
+		/** Position of the score columns. */
+		protected int scoresPos;
+
+
+		/**
+		 * Reads the header of a table.
+		 *
+		 * @param name the name of the lexicon
+		 * @param sourceLength the length of the file the lexicon was compiled from
+		 * @param sourceModified the modification time of the file the lexicon was compiled from
+		 * @param sourceChecksum the CRC32 checksum of the file the lexicon was compiled from
+		 * @param offset the position of the table in the bundle
+		 */
+		protected MappedTable(String name, long sourceLength, long sourceModified, long sourceChecksum, int offset) {
+			this.name = name;
+			this.sourceLength = sourceLength;
+			this.sourceModified = sourceModified;
+			this.sourceChecksum = sourceChecksum;
+
+			int pos = offset;
+			this.numWords = buffer.getInt(pos);
+			this.columnNames = new String[buffer.getInt(pos + 4)];
+			pos += 8;
+			for (int col = 0; col < this.columnNames.length; col++) {
+				int length = buffer.getInt(pos);
+				this.columnNames[col] = readString(pos + 4, length);
+				pos += 4 + length;
+			}
+
+			this.capacity = buffer.getInt(pos);
+			this.slotsPos = pos + 4;
+			this.hashesPos = this.slotsPos + 4 * this.capacity;
+			this.offsetsPos = this.hashesPos + 4 * this.numWords;
+			this.poolPos = this.offsetsPos + 4 * (this.numWords + 1);
+
+			int poolLength = buffer.getInt(this.offsetsPos + 4 * this.numWords);
+			this.scoresPos = this.poolPos + poolLength;
+			this.scoresPos += (8 - (this.scoresPos - offset) % 8) % 8;
+		}
+
+		@Override
+		public int size() {
+			return this.numWords;
+		}
+
+		@Override
+		public int numColumns() {
+			return this.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int col) {
+			return this.columnNames[col];
+		}
+
+		@Override
+		public int lookup(String word) {
+			int hash = word.hashCode();
+			byte[] bytes = null;
+			int slot = HashCommon.mix(hash) & (this.capacity - 1);
+			int entry;
+			while ((entry = buffer.getInt(this.slotsPos + 4 * slot)) != 0) {
+				int row = entry - 1;
+				if (buffer.getInt(this.hashesPos + 4 * row) == hash) {
+					// the word is only encoded when a hash code matches
+					if (bytes == null)
+						bytes = word.getBytes(UTF8);
+					if (this.matches(row, bytes))
+						return row;
+				}
+				slot = (slot + 1) & (this.capacity - 1);
+			}
+			return -1;
+		}
+
+		/**
+		 * Checks whether the word stored in a row has the given bytes.
+		 *
+		 * @param row the row
+		 * @param bytes the UTF-8 bytes of a word
+		 * @return true if the word of the row has the same bytes
+		 */
+		protected boolean matches(int row, byte[] bytes) {
+			int start = buffer.getInt(this.offsetsPos + 4 * row);
+			int end = buffer.getInt(this.offsetsPos + 4 * (row + 1));
+			if (end - start != bytes.length)
+				return false;
+			for (int i = 0; i < bytes.length; i++) {
+				if (buffer.get(this.poolPos + start + i) != bytes[i])
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public String getWord(int row) {
+			int start = buffer.getInt(this.offsetsPos + 4 * row);
+			int end = buffer.getInt(this.offsetsPos + 4 * (row + 1));
+			return readString(this.poolPos + start, end - start);
+		}
+
+		@Override
+		public double getScore(int row, int col) {
+			return buffer.getDouble(this.scoresPos + 8 * (col * this.numWords + row));
+		}
+
+		/**
+		 * Only the fields of the table are retained in the heap, its words and scores are read 
+		 * from the mapped file.
+		 *
+		 * @return the number of bytes
+		 */
+		@Override
+		public long getMemoryFootprint() {
+			long bytes = objectFootprint(3 * REFERENCE_SIZE + 3 * 8 + 7 * 4) + stringFootprint(this.name);
+			bytes += arrayFootprint(this.columnNames.length, REFERENCE_SIZE);
+			for (String columnName : this.columnNames)
+				bytes += stringFootprint(columnName);
+			return bytes;
+		}
+
+		/**
+		 * The mapping cannot be serialized, so the table is written as a reference to the bundle
+		 * and mapped again when it is read.
+		 *
+		 * @return the serialized form of the table
+		 * @throws ObjectStreamException never
+		 */
+		protected Object writeReplace() throws ObjectStreamException {
+			return new SerializedTable(file, this.name);
+		}
+
+	}
+
+
+	/**
+	 * The serialized form of a mapped table.
+	 */
+	protected static class SerializedTable implements Serializable {
+
+		/** For serialization. */
+		private static final long serialVersionUID = 2298104339726385407L;
+
+		/** The bundle file. */
+		protected File file;
+
+		/** The name of the lexicon. */
+		protected String name;
+
+		/**
+		 * Creates a new reference to a table.
+		 *
+		 * @param file the bundle file
+		 * @param name the name of the lexicon
+		 */
+		protected SerializedTable(File file, String name) {
+			this.file = file;
+			this.name = name;
+		}
+
+		/**
+		 * Maps the table again.
+		 *
+		 * @return the table
+		 * @throws ObjectStreamException if the bundle cannot be opened
+		 */
+		protected Object readResolve() throws ObjectStreamException {
+			try {
+				return LexiconBundle.open(this.file).getTable(this.name);
+			} catch (IOException e) {
+				InvalidObjectException ex = new InvalidObjectException("Cannot map lexicon bundle " + this.file);
+				ex.initCause(e);
+				throw ex;
+			}
+		}
+
+	}
+
+
+}
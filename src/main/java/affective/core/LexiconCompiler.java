@@ -0,0 +1,57 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LexiconCompiler.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import weka.filters.unsupervised.attribute.TweetToLexiconFeatureVector;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Compiles the lexicons shipped with the package into a single binary bundle that is
+ *  memory-mapped by TweetToLexiconFeatureVector. Usage: java affective.core.LexiconCompiler [bundle file]
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class LexiconCompiler {
+
+	/**
+	 * Main method for compiling the lexicons.
+	 *
+	 * @param args the bundle file, the default location of the bundle is used if no file is given
+	 */
+	public static void main(String[] args) {
+		File bundleFile = new File(args.length > 0 ? args[0] : TweetToLexiconFeatureVector.LEXICON_BUNDLE_FILE_NAME);
+
+		try {
+			long start = System.currentTimeMillis();
+			TweetToLexiconFeatureVector.compileLexiconBundle(bundleFile);
+			System.err.println("Lexicons compiled into " + bundleFile + " in " + (System.currentTimeMillis() - start) + " ms");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
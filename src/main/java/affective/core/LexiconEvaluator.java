@@ -20,10 +20,16 @@
 
 package affective.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  *  <!-- globalinfo-start --> 
@@ -47,6 +53,9 @@ public abstract class LexiconEvaluator implements Serializable {
 	
 	/** A list with all the features provided by the lexicon evaluator */
 	protected List<String> featureNames; 
+
+	/** The words of the lexicon and their scores */
+	protected LexiconTable table;
 	
 	
 	/**
@@ -67,6 +76,21 @@ public abstract class LexiconEvaluator implements Serializable {
 	public abstract void processDict()  throws IOException;
 	
 
+	/**
+	 * initializes the dictionary from a compiled bundle. The lexicon file is parsed
+	 * if the bundle does not contain an up-to-date version of the lexicon. 
+	 * @param bundle the bundle with the compiled lexicons
+	 * @throws IOException in case of wrong file
+	 */	
+	public void processDict(LexiconBundle bundle) throws IOException {
+		LexiconTable compiled = bundle.getTable(this.name, new File(this.path));
+		if (compiled != null)
+			this.setTable(compiled);
+		else
+			this.processDict();
+	}
+
+
 	/**
 	 * Calculates lexicon-based feature values from a list of tokens
 	 * @param tokens a tokenized tweet
@@ -83,6 +107,122 @@ public abstract class LexiconEvaluator implements Serializable {
 		return featureNames;
 	}
 
+	/**
+	 * Gets the path of the lexicon file
+	 *
+	 * @return the path.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Gets the name of the lexicon
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the table with the words of the lexicon and their scores
+	 * 
+	 * @return the table or null if the lexicon cannot be stored as a table.
+	 */	
+	public LexiconTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Gets the approximate number of bytes retained in the heap by the data of the lexicon.
+	 * 
+	 * @return the number of bytes, zero if the lexicon has not been processed
+	 */	
+	public long getMemoryFootprint() {
+		return table == null ? 0 : table.getMemoryFootprint();
+	}
+
+	/**
+	 * Sets the table with the words of the lexicon and their scores
+	 * 
+	 * @param table the table
+	 */	
+	protected void setTable(LexiconTable table) {
+		this.table = table;
+	}
+
+
+	/**
+	 * A read-only map view of the lexicon table. The entries are not copied: each access looks up 
+	 * the current table of the evaluator and creates the value of the row.
+	 *
+	 * @param <V> the type of the values
+	 */
+	protected abstract class TableDict<V> extends AbstractMap<String, V> {
+
+		/**
+		 * Creates the value of a row of the table.
+		 *
+		 * @param row the row
+		 * @return the value
+		 */
+		protected abstract V value(int row);
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && table.lookup((String) key) != -1;
+		}
+
+		@Override
+		public V get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			int row = table.lookup((String) key);
+			return row == -1 ? null : this.value(row);
+		}
+
+		@Override
+		public Set<Map.Entry<String, V>> entrySet() {
+			return new AbstractSet<Map.Entry<String, V>>() {
+				@Override
+				public int size() {
+					return table.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, V>> iterator() {
+					return new Iterator<Map.Entry<String, V>>() {
+						int row = 0;
+
+						@Override
+						public boolean hasNext() {
+							return this.row < table.size();
+						}
+
+						@Override
+						public Map.Entry<String, V> next() {
+							if (!this.hasNext())
+								throw new NoSuchElementException();
+							int row = this.row++;
+							return new AbstractMap.SimpleImmutableEntry<String, V>(table.getWord(row), value(row));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+
 	
 	
 }
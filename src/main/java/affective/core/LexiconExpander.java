@@ -0,0 +1,204 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LexiconExpander.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffSaver;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Expands a seed lexicon in arff format with the nearest neighbours of its words in an embedding space.
+ *  Each neighbour that is not in the lexicon receives the similarity-weighted average of the numeric scores
+ *  of the seed words it is a neighbour of, and the nominal value with the largest total similarity.
+ *  The embeddings are read from a csv.gz file or from a file compiled with EmbeddingCompiler. The nearest
+ *  neighbour index is loaded from the index file if it exists, otherwise it is built and saved into it.
+ *  Usage: java affective.core.LexiconExpander &lt;embeddings file&gt; &lt;arff lexicon&gt; &lt;output arff&gt; [k] [index file]
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class LexiconExpander {
+
+	/** The default number of neighbours of each seed word. */
+	public static final int DEFAULT_K = 10;
+
+
+	/**
+	 * Expands a lexicon with the nearest neighbours of its words.
+	 *
+	 * @param lexicon the lexicon, which has been processed
+	 * @param index the nearest neighbour index of the embeddings
+	 * @param k the number of neighbours of each word of the lexicon
+	 * @param numThreads the number of threads searching the neighbours
+	 * @return the words of the lexicon followed by the new words, each group sorted alphabetically
+	 * @throws Exception if the search fails
+	 */
+	public static Instances expand(ArffLexiconWordLabeller lexicon, NearestNeighbourIndex index, int k, int numThreads) throws Exception {
+		List<Attribute> lexAttributes = lexicon.getAttributes();
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("word", (List<String>) null));
+		for (Attribute att : lexAttributes)
+			attributes.add(att.copy(att.name()));
+		Instances result = new Instances(lexicon.getLexiconFile().getName().replaceAll("\\.arff$", "") + "-expanded", attributes, 0);
+
+		List<String> seeds = new ArrayList<String>(lexicon.attValMap.keySet());
+		Collections.sort(seeds);
+		for (String seed : seeds) {
+			double[] values = new double[attributes.size()];
+			Map<Attribute, Double> scores = lexicon.evaluateWord(seed);
+			for (int a = 0; a < lexAttributes.size(); a++)
+				values[a + 1] = scores.get(lexAttributes.get(a));
+			add(result, seed, values);
+		}
+
+		// the weighted sums of the scores of the new words, numeric attributes use one sum and one total
+		// weight while nominal ones use one sum per value
+		Map<String, double[][]> sums = new TreeMap<String, double[][]>();
+		List<List<NearestNeighbourIndex.Neighbour>> neighbours = index.nearestNeighbours(seeds, k, numThreads);
+		for (int s = 0; s < seeds.size(); s++) {
+			Map<Attribute, Double> scores = lexicon.evaluateWord(seeds.get(s));
+			for (NearestNeighbourIndex.Neighbour neighbour : neighbours.get(s)) {
+				double weight = neighbour.getSimilarity();
+				if (weight <= 0 || lexicon.attValMap.containsKey(neighbour.getWord()))
+					continue;
+
+				double[][] wordSums = sums.get(neighbour.getWord());
+				if (wordSums == null) {
+					wordSums = new double[lexAttributes.size()][];
+					for (int a = 0; a < lexAttributes.size(); a++)
+						wordSums[a] = new double[lexAttributes.get(a).isNominal() ? lexAttributes.get(a).numValues() : 2];
+					sums.put(neighbour.getWord(), wordSums);
+				}
+
+				for (int a = 0; a < lexAttributes.size(); a++) {
+					double value = scores.get(lexAttributes.get(a));
+					if (Utils.isMissingValue(value))
+						continue;
+					if (lexAttributes.get(a).isNominal())
+						wordSums[a][(int) value] += weight;
+					else {
+						wordSums[a][0] += weight * value;
+						wordSums[a][1] += weight;
+					}
+				}
+			}
+		}
+
+		for (Map.Entry<String, double[][]> entry : sums.entrySet()) {
+			double[] values = new double[attributes.size()];
+			double[][] wordSums = entry.getValue();
+			for (int a = 0; a < lexAttributes.size(); a++) {
+				if (lexAttributes.get(a).isNominal())
+					values[a + 1] = Utils.sum(wordSums[a]) > 0 ? Utils.maxIndex(wordSums[a]) : Utils.missingValue();
+				else
+					values[a + 1] = wordSums[a][1] > 0 ? wordSums[a][0] / wordSums[a][1] : Utils.missingValue();
+			}
+			add(result, entry.getKey(), values);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Adds a word and its scores to a dataset.
+	 *
+	 * @param data the dataset
+	 * @param word the word
+	 * @param values the values of the instance, the first one is replaced by the word
+	 */
+	protected static void add(Instances data, String word, double[] values) {
+		values[0] = data.attribute(0).addStringValue(word);
+		data.add(new DenseInstance(1, values));
+	}
+
+
+	/**
+	 * Main method for expanding a lexicon.
+	 *
+	 * @param args the embeddings file, the lexicon, the output file, the number of neighbours and the index file
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java affective.core.LexiconExpander <embeddings file> <arff lexicon> <output arff> [k] [index file]");
+			return;
+		}
+
+		try {
+			File embeddingsFile = new File(args[0]);
+			int k = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_K;
+			int numThreads = Runtime.getRuntime().availableProcessors();
+
+			EmbeddingHandler handler;
+			if (embeddingsFile.getName().endsWith(".gz")) {
+				CSVEmbeddingHandler csv = new CSVEmbeddingHandler();
+				csv.setEmbeddingsFile(embeddingsFile);
+				csv.setNumThreads(numThreads);
+				handler = csv;
+			} else {
+				MappedEmbeddingHandler mapped = new MappedEmbeddingHandler();
+				mapped.setEmbeddingsFile(embeddingsFile);
+				handler = mapped;
+			}
+
+			long start = System.currentTimeMillis();
+			NearestNeighbourIndex index;
+			File indexFile = args.length > 4 ? new File(args[4]) : null;
+			if (indexFile != null && indexFile.exists())
+				index = NearestNeighbourIndex.load(indexFile);
+			else {
+				handler.createDict();
+				index = new NearestNeighbourIndex(handler, numThreads);
+				if (indexFile != null)
+					index.save(indexFile);
+			}
+			System.err.println("Index of " + index.getNumWords() + " words ready in " + (System.currentTimeMillis() - start) + " ms");
+
+			ArffLexiconWordLabeller lexicon = new ArffLexiconWordLabeller();
+			lexicon.setLexiconFile(new File(args[1]));
+			lexicon.processDict();
+
+			start = System.currentTimeMillis();
+			Instances expanded = expand(lexicon, index, k, numThreads);
+			System.err.println("Lexicon expanded to " + expanded.numInstances() + " words in " + (System.currentTimeMillis() - start) + " ms");
+
+			ArffSaver saver = new ArffSaver();
+			saver.setInstances(expanded);
+			saver.setFile(new File(args[2]));
+			saver.writeBatch();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,349 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LexiconTable.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  This abstract class represents the content of a lexicon as a word index together with
+ *  dense columns of double scores. Each row of the table corresponds to a word and each column to a score.
+ *  Tables built in memory look up their words with a minimal perfect hash function.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public abstract class LexiconTable implements Serializable {
+
+	/** For serialization. */
+	private static final long serialVersionUID = -3127766049171531862L;
+
+
+	/**
+	 * Gets the number of words in the table.
+	 *
+	 * @return the number of words
+	 */
+	public abstract int size();
+
+	/**
+	 * Gets the number of score columns.
+	 *
+	 * @return the number of columns
+	 */
+	public abstract int numColumns();
+
+	/**
+	 * Gets the name of a column.
+	 *
+	 * @param col the index of the column
+	 * @return the name of the column
+	 */
+	public abstract String getColumnName(int col);
+
+	/**
+	 * Gets the row of a word.
+	 *
+	 * @param word the word to look up
+	 * @return the row of the word or -1 if the word is not in the table
+	 */
+	public abstract int lookup(String word);
+
+	/**
+	 * Gets the word stored in a row.
+	 *
+	 * @param row the row
+	 * @return the word
+	 */
+	public abstract String getWord(int row);
+
+	/**
+	 * Gets the score of a word for a given column.
+	 *
+	 * @param row the row of the word
+	 * @param col the column
+	 * @return the score
+	 */
+	public abstract double getScore(int row, int col);
+
+
+	/**
+	 * Gets the approximate number of bytes retained in the heap by the table.
+	 *
+	 * @return the number of bytes
+	 */
+	public abstract long getMemoryFootprint();
+
+
+	/**
+	 * Gets the index of a column from its name.
+	 *
+	 * @param name the name of the column
+	 * @return the index of the column or -1 if there is no column with that name
+	 */
+	public int getColumnIndex(String name) {
+		for (int i = 0; i < this.numColumns(); i++) {
+			if (this.getColumnName(i).equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+
+
+	/** The size of an object header in a 64-bit JVM with compressed references. */
+	public static final int HEADER_SIZE = 12;
+
+	/** The size of a reference in a 64-bit JVM with compressed references. */
+	public static final int REFERENCE_SIZE = 4;
+
+
+	/**
+	 * Estimates the size of an object from the size of its fields.
+	 *
+	 * @param fieldBytes the bytes used by the fields
+	 * @return the size of the object aligned to 8 bytes
+	 */
+	public static long objectFootprint(long fieldBytes) {
+		return (HEADER_SIZE + fieldBytes + 7) & ~7L;
+	}
+
+	/**
+	 * Estimates the size of an array.
+	 *
+	 * @param length the length of the array
+	 * @param elementBytes the bytes used by each element
+	 * @return the size of the array aligned to 8 bytes
+	 */
+	public static long arrayFootprint(int length, int elementBytes) {
+		return objectFootprint(4 + (long) length * elementBytes);
+	}
+
+	/**
+	 * Estimates the size of a String together with its array of chars.
+	 *
+	 * @param s the String
+	 * @return the size of the String
+	 */
+	public static long stringFootprint(String s) {
+		return objectFootprint(REFERENCE_SIZE + 4) + arrayFootprint(s.length(), 2);
+	}
+
+
+
+	/**
+	 * Builds a table in memory. Scores are kept in double precision, so that they are the values
+	 * parsed from the lexicon.
+	 */
+	public static class Builder {
+
+		/** The names of the columns. */
+		protected String[] columnNames;
+
+		/** Mapping between words and rows. */
+		protected Object2IntMap<String> index = new Object2IntOpenHashMap<String>();
+
+		/** The words in insertion order. */
+		protected List<String> words = new ObjectArrayList<String>();
+
+		/** The score columns. */
+		protected DoubleArrayList[] columns;
+
+
+		/**
+		 * Creates a new builder.
+		 *
+		 * @param columnNames the names of the columns of the table
+		 */
+		public Builder(String... columnNames) {
+			this.columnNames = columnNames;
+			this.index.defaultReturnValue(-1);
+			this.columns = new DoubleArrayList[columnNames.length];
+			for (int i = 0; i < columnNames.length; i++)
+				this.columns[i] = new DoubleArrayList();
+		}
+
+		/**
+		 * Adds a word to the table if it was not added before. New words have zero scores.
+		 *
+		 * @param word the word
+		 * @return the row of the word
+		 */
+		public int addWord(String word) {
+			int row = this.index.getInt(word);
+			if (row == -1) {
+				row = this.words.size();
+				this.index.put(word, row);
+				this.words.add(word);
+				for (DoubleArrayList column : this.columns)
+					column.add(0.0);
+			}
+			return row;
+		}
+
+		/**
+		 * Sets the score of a word.
+		 *
+		 * @param row the row of the word
+		 * @param col the column
+		 * @param value the score
+		 */
+		public void setScore(int row, int col, double value) {
+			this.columns[col].set(row, value);
+		}
+
+		/**
+		 * Adds a value to the score of a word.
+		 *
+		 * @param row the row of the word
+		 * @param col the column
+		 * @param value the value to add
+		 */
+		public void addScore(int row, int col, double value) {
+			this.columns[col].set(row, this.columns[col].getDouble(row) + value);
+		}
+
+		/**
+		 * Creates the table.
+		 *
+		 * @return the table
+		 */
+		public LexiconTable build() {
+			String[] words = this.words.toArray(new String[0]);
+			MinimalPerfectHash index = new MinimalPerfectHash(words);
+
+			// the rows are stored in the order given by the hash function
+			int[] rows = new int[words.length];
+			String[] sortedWords = new String[words.length];
+			for (int j = 0; j < words.length; j++) {
+				rows[j] = index.getPosition(words[j]);
+				sortedWords[rows[j]] = words[j];
+			}
+
+			double[][] scores = new double[this.columns.length][];
+			for (int i = 0; i < this.columns.length; i++) {
+				scores[i] = new double[words.length];
+				for (int j = 0; j < words.length; j++)
+					scores[i][rows[j]] = this.columns[i].getDouble(j);
+			}
+			return new MemoryTable(this.columnNames, sortedWords, index, scores);
+		}
+
+	}
+
+
+
+	/**
+	 * A table stored in the heap.
+	 */
+	protected static class MemoryTable extends LexiconTable {
+
+		/** For serialization. */
+		private static final long serialVersionUID = 6488157542937766131L;
+
+		/** The names of the columns. */
+		protected String[] columnNames;
+
+		/** The words of the table. */
+		protected String[] words;
+
+		/** Mapping between words and rows. */
+		protected MinimalPerfectHash index;
+
+		/** The scores stored by column. */
+		protected double[][] scores;
+
+
+		/**
+		 * Creates a new table.
+		 *
+		 * @param columnNames the names of the columns
+		 * @param words the words
+		 * @param index the mapping between words and rows
+		 * @param scores the scores stored by column
+		 */
+		protected MemoryTable(String[] columnNames, String[] words, MinimalPerfectHash index, double[][] scores) {
+			this.columnNames = columnNames;
+			this.words = words;
+			this.index = index;
+			this.scores = scores;
+		}
+
+		@Override
+		public int size() {
+			return this.words.length;
+		}
+
+		@Override
+		public int numColumns() {
+			return this.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int col) {
+			return this.columnNames[col];
+		}
+
+		@Override
+		public int lookup(String word) {
+			if (this.words.length == 0)
+				return -1;
+			int row = this.index.getPosition(word);
+			return this.words[row].equals(word) ? row : -1;
+		}
+
+		@Override
+		public String getWord(int row) {
+			return this.words[row];
+		}
+
+		@Override
+		public double getScore(int row, int col) {
+			return this.scores[col][row];
+		}
+
+		@Override
+		public long getMemoryFootprint() {
+			long bytes = objectFootprint(4 * 4) + this.index.getMemoryFootprint();
+			bytes += arrayFootprint(this.columnNames.length, REFERENCE_SIZE);
+			for (String columnName : this.columnNames)
+				bytes += stringFootprint(columnName);
+			bytes += arrayFootprint(this.words.length, REFERENCE_SIZE);
+			for (String word : this.words)
+				bytes += stringFootprint(word);
+			bytes += arrayFootprint(this.scores.length, REFERENCE_SIZE);
+			for (double[] column : this.scores)
+				bytes += arrayFootprint(column.length, 8);
+			return bytes;
+		}
+
+	}
+
+
+}
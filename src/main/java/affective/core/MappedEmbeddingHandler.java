@@ -0,0 +1,451 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MappedEmbeddingHandler.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import weka.core.OptionMetadata;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  This class is used for handling word embeddings stored in a binary file that is memory-mapped
+ *  off-heap. The file contains the vocabulary sorted by its UTF-8 bytes followed by a contiguous
+ *  matrix with one float32 row per word, so the vectors are read from the mapping without being copied
+ *  into the heap. Files are created from the csv.gz format with: java affective.core.EmbeddingCompiler.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class MappedEmbeddingHandler extends EmbeddingHandler {
+
+	/** For serialization. */
+	private static final long serialVersionUID = 3365893960231868342L;
+
+	/** The first four bytes of an embeddings file ("ATEM"). */
+	public static final int MAGIC = 0x4154454D;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The size of the header in bytes. */
+	protected static final int HEADER_SIZE = 24;
+
+	/** The maximum number of bytes of the matrix mapped by a single buffer. */
+	protected static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	/** The charset used for the words. */
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Default path to where resources are stored. */
+	public static String RESOURCES_FOLDER_NAME = CSVEmbeddingHandler.RESOURCES_FOLDER_NAME;
+
+
+	/** The embeddings file. */
+	protected File embeddingsFile = new File(RESOURCES_FOLDER_NAME + File.separator + "w2v.twitter.edinburgh.100d.emb");
+
+	/** The number of words. */
+	protected transient int numWords;
+
+	/** The mapping of the vocabulary: the offsets of the words followed by their bytes. */
+	protected transient MappedByteBuffer vocabulary;
+
+	/** The mappings of the matrix, each one covering rowsPerChunk rows. */
+	protected transient MappedByteBuffer[] chunks;
+
+	/** The number of rows covered by each mapping of the matrix. */
+	protected transient int rowsPerChunk;
+
+
+
+	/**
+	 * Returns a string describing this filter.
+	 *
+	 * @return a description of the filter suitable for displaying in the
+	 *         explorer/experimenter gui
+	 */
+	public String globalInfo() {
+		return "This object handles word embeddings compiled into a memory-mapped binary file. "
+				+ "The vectors are stored off-heap as float32 values. \n";
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.EmbeddingHandler#createDict()
+	 */
+	@Override
+	public void createDict() throws Exception {
+		// the mappings are shared with the handlers using the same file
+		String key = ResourceRegistry.key(this.getClass().getName(), ResourceRegistry.fileKey(this.embeddingsFile));
+		final File file = this.embeddingsFile;
+		MappedEmbeddingHandler shared = ResourceRegistry.get(key, new ResourceRegistry.Loader<MappedEmbeddingHandler>() {
+			@Override
+			public MappedEmbeddingHandler load() throws IOException {
+				MappedEmbeddingHandler handler = new MappedEmbeddingHandler();
+				handler.setEmbeddingsFile(file);
+				handler.mapFile();
+				return handler;
+			}
+		});
+
+		this.numWords = shared.numWords;
+		this.dimensions = shared.dimensions;
+		this.vocabulary = shared.vocabulary;
+		this.chunks = shared.chunks;
+		this.rowsPerChunk = shared.rowsPerChunk;
+	}
+
+
+	/**
+	 * Maps the embeddings file.
+	 *
+	 * @throws IOException if the file is not a valid embeddings file
+	 */
+	protected void mapFile() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.embeddingsFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException(this.embeddingsFile + " is not an embeddings file");
+			if (header.getInt(4) != VERSION)
+				throw new IOException(this.embeddingsFile + " was compiled with an unsupported version of the format");
+
+			this.numWords = header.getInt(8);
+			this.dimensions = header.getInt(12);
+			long matrixPos = header.getLong(16);
+
+			this.vocabulary = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, matrixPos - HEADER_SIZE);
+
+			// the matrix can be larger than a single mapping
+			long rowSize = 4L * this.dimensions;
+			this.rowsPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / Math.max(1, rowSize));
+			int numChunks = this.numWords == 0 ? 0 : (this.numWords - 1) / this.rowsPerChunk + 1;
+			this.chunks = new MappedByteBuffer[numChunks];
+			for (int c = 0; c < numChunks; c++) {
+				int rows = Math.min(this.rowsPerChunk, this.numWords - c * this.rowsPerChunk);
+				this.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, matrixPos + c * this.rowsPerChunk * rowSize, rows * rowSize);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Finds the row of a word with a binary search over the vocabulary.
+	 *
+	 * @param word the word
+	 * @return the row of the word or -1 if the word is not in the vocabulary
+	 */
+	public int getWordIndex(String word) {
+		byte[] bytes = word.getBytes(UTF8);
+		int low = 0;
+		int high = this.numWords - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = this.compare(mid, bytes);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Compares the bytes of the word stored in a row with the bytes of another word.
+	 *
+	 * @param row the row
+	 * @param bytes the UTF-8 bytes of the other word
+	 * @return a negative number, zero, or a positive number if the word of the row is smaller, equal or greater
+	 */
+	protected int compare(int row, byte[] bytes) {
+		int poolPos = 4 * (this.numWords + 1);
+		int start = this.vocabulary.getInt(4 * row);
+		int length = this.vocabulary.getInt(4 * (row + 1)) - start;
+		int n = Math.min(length, bytes.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = (this.vocabulary.get(poolPos + start + i) & 0xFF) - (bytes[i] & 0xFF);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length - bytes.length;
+	}
+
+
+	/**
+	 * Gets the word stored in a row.
+	 *
+	 * @param row the row
+	 * @return the word
+	 */
+	public String getWord(int row) {
+		int poolPos = 4 * (this.numWords + 1);
+		int start = this.vocabulary.getInt(4 * row);
+		byte[] bytes = new byte[this.vocabulary.getInt(4 * (row + 1)) - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = this.vocabulary.get(poolPos + start + i);
+		return new String(bytes, UTF8);
+	}
+
+
+	/**
+	 * Gets a value of the vector of a word.
+	 *
+	 * @param row the row of the word
+	 * @param dim the dimension
+	 * @return the value
+	 */
+	public float getValue(int row, int dim) {
+		return this.chunks[row / this.rowsPerChunk].getFloat(4 * ((row % this.rowsPerChunk) * this.dimensions + dim));
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.EmbeddingHandler#addVector(java.lang.String, double[], int, double)
+	 */
+	@Override
+	public boolean addVector(String word, double[] values, int offset, double divisor) {
+		int row = this.getWordIndex(word);
+		if (row == -1)
+			return false;
+
+		// the row is read directly from its chunk
+		MappedByteBuffer chunk = this.chunks[row / this.rowsPerChunk];
+		int pos = 4 * (row % this.rowsPerChunk) * this.dimensions;
+		for (int j = 0; j < this.dimensions; j++)
+			values[offset + j] += chunk.getFloat(pos + 4 * j) / divisor;
+		return true;
+	}
+
+
+	/**
+	 * Gets the number of words.
+	 *
+	 * @return the number of words
+	 */
+	public int getNumWords() {
+		return this.numWords;
+	}
+
+
+	/**
+	 * Gets the words of the vocabulary in the order of their rows.
+	 *
+	 * @return the words
+	 */
+	@Override
+	public List<String> getWords() {
+		List<String> words = new ArrayList<String>(this.numWords);
+		for (int row = 0; row < this.numWords; row++)
+			words.add(this.getWord(row));
+		return words;
+	}
+
+
+	/**
+	 * Gets a view of the vector of a word that reads the values from the mapping.
+	 *
+	 * @param word the word
+	 * @return the vector or null if the word is not in the vocabulary
+	 */
+	@Override
+	public AbstractDoubleList getVector(String word) {
+		final int row = this.getWordIndex(word);
+		if (row == -1)
+			return null;
+
+		return new AbstractDoubleList() {
+			@Override
+			public double getDouble(int dim) {
+				return getValue(row, dim);
+			}
+
+			@Override
+			public int size() {
+				return dimensions;
+			}
+		};
+	}
+
+
+
+	/**
+	 * Compiles the vectors of a csv.gz file into an embeddings file. The csv file is read twice,
+	 * first for the vocabulary and then for the vectors, which are written at the position of their
+	 * rows, so the vectors are never held in memory. Repeated words keep their last vector.
+	 *
+	 * @param source the handler of the csv.gz file with its options
+	 * @param file the embeddings file
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void write(CSVEmbeddingHandler source, File file) throws IOException {
+		String separator = source.columnSeparator();
+
+		// first pass: the words with the right number of dimensions
+		Object2IntOpenHashMap<String> rows = new Object2IntOpenHashMap<String>();
+		int dimensions = -1;
+		BufferedReader bf = openCSV(source.getEmbeddingsFile());
+		try {
+			String line;
+			while ((line = bf.readLine()) != null) {
+				String parts[] = line.split(separator);
+				if (dimensions == -1) {
+					dimensions = parts.length - 1;
+					source.wordNameIndex.setUpper(dimensions);
+				}
+				if (parts.length - 1 == dimensions)
+					rows.put(parts[source.wordNameIndex.getIndex()], 0);
+			}
+		} finally {
+			bf.close();
+		}
+		dimensions = Math.max(dimensions, 0);
+
+		// the vocabulary is sorted by the unsigned UTF-8 bytes of the words
+		byte[][] sorted = new byte[rows.size()][];
+		int numWords = 0;
+		for (String word : rows.keySet())
+			sorted[numWords++] = word.getBytes(UTF8);
+		Arrays.sort(sorted, new Comparator<byte[]>() {
+			@Override
+			public int compare(byte[] a, byte[] b) {
+				int n = Math.min(a.length, b.length);
+				for (int i = 0; i < n; i++) {
+					int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+					if (cmp != 0)
+						return cmp;
+				}
+				return a.length - b.length;
+			}
+		});
+
+		long vocabularySize = 4L * (numWords + 1);
+		for (int row = 0; row < numWords; row++) {
+			rows.put(new String(sorted[row], UTF8), row);
+			vocabularySize += sorted[row].length;
+		}
+		// the matrix starts at a multiple of four
+		long matrixPos = HEADER_SIZE + vocabularySize + (4 - vocabularySize % 4) % 4;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numWords);
+			out.writeInt(dimensions);
+			out.writeLong(matrixPos);
+
+			int offset = 0;
+			for (byte[] word : sorted) {
+				out.writeInt(offset);
+				offset += word.length;
+			}
+			out.writeInt(offset);
+			for (byte[] word : sorted)
+				out.write(word);
+			while (out.size() < matrixPos)
+				out.writeByte(0);
+		} finally {
+			out.close();
+		}
+
+		// second pass: the vectors are written into their rows
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		bf = openCSV(source.getEmbeddingsFile());
+		try {
+			FileChannel channel = raf.getChannel();
+			raf.setLength(matrixPos + 4L * dimensions * numWords);
+			ByteBuffer vector = ByteBuffer.allocate(4 * dimensions);
+			String line;
+			while ((line = bf.readLine()) != null) {
+				String parts[] = line.split(separator);
+				if (parts.length - 1 != dimensions)
+					continue;
+				vector.clear();
+				for (int i = 0; i < parts.length; i++) {
+					if (i != source.wordNameIndex.getIndex())
+						vector.putFloat((float) Double.parseDouble(parts[i]));
+				}
+				vector.flip();
+				long pos = matrixPos + 4L * dimensions * rows.getInt(parts[source.wordNameIndex.getIndex()]);
+				while (vector.hasRemaining())
+					pos += channel.write(vector, pos);
+			}
+		} finally {
+			bf.close();
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Opens a csv.gz file.
+	 *
+	 * @param file the file
+	 * @return a reader of the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	protected static BufferedReader openCSV(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file))));
+	}
+
+
+
+	@OptionMetadata(displayName = "embeddingsFile",
+			description = "The binary file containing the word vectors. It is created from a csv.gz file with: "
+					+ "java affective.core.EmbeddingCompiler <csv.gz file> <embeddings file>",
+			commandLineParamName = "K", commandLineParamSynopsis = "-K <string>",
+			displayOrder = 1)
+	public File getEmbeddingsFile() {
+		return embeddingsFile;
+	}
+	public void setEmbeddingsFile(File embeddingsFile) {
+		this.embeddingsFile = embeddingsFile;
+	}
+
+
+}
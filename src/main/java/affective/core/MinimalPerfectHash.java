@@ -0,0 +1,225 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MinimalPerfectHash.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  A minimal perfect hash function for a fixed set of n words, built with the hash-and-displace method.
+ *  The words are distributed into buckets and, starting from the largest bucket, each bucket gets a
+ *  displacement seed that sends all its words to free positions. Each word of the set is mapped to a
+ *  distinct position in [0, n) using one int per two words. Other words are mapped to arbitrary positions,
+ *  so the word stored at the position has to be compared with the query.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class MinimalPerfectHash implements Serializable {
+
+	/** For serialization. */
+	private static final long serialVersionUID = -7004393520934281217L;
+
+	/** The average number of words per bucket. */
+	protected static final int WORDS_PER_BUCKET = 2;
+
+	/** The number of words. */
+	protected int size;
+
+	/** The seed of the hash of the words, changed if two words have the same hash. */
+	protected long seed;
+
+	/** The displacement seed of each bucket. */
+	protected int[] displacements;
+
+
+	/**
+	 * Builds the function for a set of distinct words.
+	 *
+	 * @param words the words
+	 */
+	public MinimalPerfectHash(String[] words) {
+		this.size = words.length;
+		int numBuckets = Math.max(1, words.length / WORDS_PER_BUCKET);
+
+		for (this.seed = 0;; this.seed++) {
+			if (this.build(words, numBuckets))
+				return;
+		}
+	}
+
+
+	/**
+	 * Tries to find the displacements of all the buckets.
+	 *
+	 * @param words the words
+	 * @param numBuckets the number of buckets
+	 * @return false if two words have the same hash and a different seed is needed
+	 */
+	protected boolean build(String[] words, int numBuckets) {
+		long[] hashes = new long[words.length];
+		int[] bucketSizes = new int[numBuckets];
+		for (int i = 0; i < words.length; i++) {
+			hashes[i] = hash(words[i], this.seed);
+			bucketSizes[bucket(hashes[i], numBuckets)]++;
+		}
+
+		// groups the hashes by bucket
+		int[] bucketStarts = new int[numBuckets + 1];
+		for (int b = 0; b < numBuckets; b++)
+			bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+		long[] grouped = new long[words.length];
+		int[] fill = Arrays.copyOf(bucketStarts, numBuckets);
+		for (long h : hashes)
+			grouped[fill[bucket(h, numBuckets)]++] = h;
+
+		// the buckets are processed from the largest to the smallest one
+		int maxSize = 0;
+		for (int s : bucketSizes)
+			maxSize = Math.max(maxSize, s);
+		int[] sizeStarts = new int[maxSize + 2];
+		for (int s : bucketSizes)
+			sizeStarts[maxSize - s + 1]++;
+		for (int s = 1; s < sizeStarts.length; s++)
+			sizeStarts[s] += sizeStarts[s - 1];
+		int[] order = new int[numBuckets];
+		for (int b = 0; b < numBuckets; b++)
+			order[sizeStarts[maxSize - bucketSizes[b]]++] = b;
+
+		this.displacements = new int[numBuckets];
+		boolean[] taken = new boolean[words.length];
+		int[] positions = new int[maxSize];
+
+		for (int b : order) {
+			int start = bucketStarts[b];
+			int bucketSize = bucketSizes[b];
+			if (bucketSize == 0)
+				break;
+
+			for (int i = start; i < start + bucketSize; i++)
+				for (int j = start; j < i; j++)
+					if (grouped[i] == grouped[j])
+						return false;
+
+			for (int d = 0;; d++) {
+				boolean placed = true;
+				for (int i = 0; i < bucketSize && placed; i++) {
+					int pos = position(grouped[start + i], d, words.length);
+					if (taken[pos])
+						placed = false;
+					for (int j = 0; j < i && placed; j++)
+						if (positions[j] == pos)
+							placed = false;
+					positions[i] = pos;
+				}
+
+				if (placed) {
+					for (int i = 0; i < bucketSize; i++)
+						taken[positions[i]] = true;
+					this.displacements[b] = d;
+					break;
+				}
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Calculates the 64-bit hash of a word.
+	 *
+	 * @param word the word
+	 * @param seed the seed
+	 * @return the hash
+	 */
+	protected static long hash(String word, long seed) {
+		long h = 0xCBF29CE484222325L ^ seed;
+		for (int i = 0; i < word.length(); i++) {
+			h ^= word.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return HashCommon.mix(h);
+	}
+
+
+	/**
+	 * Gets the bucket of a hash.
+	 *
+	 * @param hash the hash
+	 * @param numBuckets the number of buckets
+	 * @return the bucket
+	 */
+	protected static int bucket(long hash, int numBuckets) {
+		return (int) ((hash >>> 33) % numBuckets);
+	}
+
+
+	/**
+	 * Gets the position of a hash for a displacement.
+	 *
+	 * @param hash the hash
+	 * @param displacement the displacement seed
+	 * @param size the number of words
+	 * @return the position
+	 */
+	protected static int position(long hash, int displacement, int size) {
+		return (int) ((HashCommon.mix(hash + displacement * 0x9E3779B97F4A7C15L) >>> 1) % size);
+	}
+
+
+	/**
+	 * Gets the position of a word.
+	 *
+	 * @param word the word
+	 * @return a distinct position in [0, size) for the words of the set, an arbitrary position otherwise
+	 */
+	public int getPosition(String word) {
+		long h = hash(word, this.seed);
+		return position(h, this.displacements[bucket(h, this.displacements.length)], this.size);
+	}
+
+
+	/**
+	 * Gets the number of words of the set.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Gets the approximate number of bytes retained by the function.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		return LexiconTable.objectFootprint(4 + 8 + 4) + LexiconTable.arrayFootprint(this.displacements.length, 4);
+	}
+
+}
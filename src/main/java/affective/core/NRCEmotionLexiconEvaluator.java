@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -47,8 +48,12 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 	/** For serialization. */
 	private static final long serialVersionUID = 5020983098724465636L;
 
-	/** A mapping between words and the affective scores. */
-	protected Map<String, Map<String, Integer>> dict; // each word is mapped to
+	/** The emotions of the lexicon, which are also the columns of the lexicon table. */
+	public static final String[] EMOTIONS = {"anger", "anticipation", "disgust", "fear", "joy",
+		"sadness", "surprise", "trust", "negative", "positive"};
+
+	/** The map view of the table, created on the first call to getDict. */
+	protected transient Map<String, Map<String, Integer>> dict;
 
 
 	/**
@@ -59,30 +64,28 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 	 */
 	public NRCEmotionLexiconEvaluator(String path,String name) {
 		super(path,name);
-		this.dict = new HashMap<String, Map<String, Integer>>();
 
 		this.featureNames=new ArrayList<String>();
-		this.featureNames.add(name+"-anger");
-		this.featureNames.add(name+"-anticipation");
-		this.featureNames.add(name+"-disgust");
-		this.featureNames.add(name+"-fear");
-		this.featureNames.add(name+"-joy");
-		this.featureNames.add(name+"-sadness");
-		this.featureNames.add(name+"-surprise");
-		this.featureNames.add(name+"-trust");
-		this.featureNames.add(name+"-negative");
-		this.featureNames.add(name+"-positive");
-
-
+		for(String emotion:EMOTIONS)
+			this.featureNames.add(name+"-"+emotion);
 
 	}
 
 	/**
-	 * Gets the dictionary mapping the words to their emotion associations
+	 * Gets the dictionary mapping the words to their emotion associations. The dictionary is a 
+	 * read-only view of the lexicon table, the emotions of a word are created on each access.
 	 * 
 	 * @return the dictionary.
 	 */	
 	public Map<String, Map<String, Integer>> getDict() {
+		if (this.dict == null) {
+			this.dict = new TableDict<Map<String, Integer>>() {
+				@Override
+				protected Map<String, Integer> value(int row) {
+					return emotionMap(row);
+				}
+			};
+		}
 		return this.dict;
 	}
 
@@ -93,13 +96,27 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 	 * @return the emotions
 	 */	
 	public Map<String, Integer> getWord(String word) {
-		if (this.dict.containsKey(word))
-			return dict.get(word);
+		int row = this.table.lookup(word);
+		if (row != -1)
+			return this.emotionMap(row);
 		else
 			return null;
 	}
 
 
+	/**
+	 * Creates a map with the emotion associations of a word.
+	 * @param row the row of the word in the lexicon table
+	 * @return the emotions
+	 */	
+	protected Map<String, Integer> emotionMap(int row) {
+		Map<String, Integer> emotionMap = new HashMap<String, Integer>();
+		for (int col = 0; col < EMOTIONS.length; col++)
+			emotionMap.put(EMOTIONS[col], (int) this.table.getScore(row, col));
+		return emotionMap;
+	}
+
+
 	/* (non-Javadoc)
 	 * @see affective.core.LexiconEvaluator#processDict()
 	 */
@@ -111,6 +128,8 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 		InputStreamReader xover = new InputStreamReader(gzis);
 		BufferedReader bf = new BufferedReader(xover);
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(EMOTIONS);
+
 		String line;
 		while ((line = bf.readLine()) != null) {
 			String content[] = line.split("\t");
@@ -118,20 +137,16 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 			String emotion = content[1];
 			int value = Integer.parseInt(content[2]);
 
-			// I check whether the word has been inserted into the dict
-			if (this.dict.containsKey(word)) {
-				Map<String, Integer> emotionMap = this.dict.get(content[0]);
-				emotionMap.put(emotion, value);
-			} else {
-				Map<String, Integer> emotionMap = new HashMap<String, Integer>();
-				emotionMap.put(emotion, value);
-				this.dict.put(word, emotionMap);
-			}
+			int col = Arrays.asList(EMOTIONS).indexOf(emotion);
+			if (col != -1)
+				builder.setScore(builder.addWord(word), col, value);
 
 		}
 
 		bf.close();
 
+		this.setTable(builder.build());
+
 	}
 
 	
@@ -143,45 +158,19 @@ public class NRCEmotionLexiconEvaluator extends LexiconEvaluator  {
 
 		Map<String, Double> emoCount = new HashMap<String, Double>();
 
-		double anger = 0.0;
-		double anticipation = 0.0;
-		double disgust = 0.0;
-		double fear = 0.0;
-		double joy = 0.0;
-		double sadness = 0.0;
-		double surprise = 0.0;
-		double trust = 0.0;
-		double negative = 0.0;
-		double positive = 0.0;
+		double[] counts = new double[EMOTIONS.length];
 
 		for (String word : words) {
-			// I retrieve the EmotionMap if the word match the lexicon
-			if (this.getDict().containsKey(word)) {
-				Map<String, Integer> emotions = this.getDict().get(word);
-				anger += emotions.get("anger");
-				anticipation += emotions.get("anticipation");
-				disgust += emotions.get("disgust");
-				fear += emotions.get("fear");
-				joy += emotions.get("joy");
-				sadness += emotions.get("sadness");
-				surprise += emotions.get("surprise");
-				trust += emotions.get("trust");
-				negative += emotions.get("negative");
-				positive += emotions.get("positive");
-
+			// I retrieve the emotions if the word match the lexicon
+			int row = this.table.lookup(word);
+			if (row != -1) {
+				for (int col = 0; col < EMOTIONS.length; col++)
+					counts[col] += this.table.getScore(row, col);
 			}
 		}
 
-		emoCount.put(name+"-anger", anger);
-		emoCount.put(name+"-anticipation", anticipation);
-		emoCount.put(name+"-disgust", disgust);
-		emoCount.put(name+"-fear", fear);
-		emoCount.put(name+"-joy", joy);
-		emoCount.put(name+"-sadness", sadness);
-		emoCount.put(name+"-surprise", surprise);
-		emoCount.put(name+"-trust", trust);
-		emoCount.put(name+"-negative", negative);
-		emoCount.put(name+"-positive", positive);
+		for (int col = 0; col < EMOTIONS.length; col++)
+			emoCount.put(name+"-"+EMOTIONS[col], counts[col]);
 
 
 		return emoCount;
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -47,8 +48,11 @@ public class NRCExpandedEmotionLexiconEvaluator extends LexiconEvaluator {
 	/** For serialization. */
 	private static final long serialVersionUID = -6019728417777495994L;
 
-	/** A mapping between words and the affective scores. */	
-	protected Map<String, Map<String, Double>> dict; 
+	/** The columns of the lexicon table with the scores of each emotion. */	
+	protected int[] emotionColumns; 
+
+	/** The map view of the table, created on the first call to getDict. */
+	protected transient Map<String, Map<String, Double>> dict;
 
 	/**
 	 * initializes the Object
@@ -58,30 +62,28 @@ public class NRCExpandedEmotionLexiconEvaluator extends LexiconEvaluator {
 	 */	
 	public NRCExpandedEmotionLexiconEvaluator(String path,String name) {
 		super(path,name);
-		this.dict = new HashMap<String, Map<String, Double>>();
 
 		this.featureNames=new ArrayList<String>();
-		this.featureNames.add(name+"-anger");
-		this.featureNames.add(name+"-anticipation");
-		this.featureNames.add(name+"-disgust");
-		this.featureNames.add(name+"-fear");
-		this.featureNames.add(name+"-joy");
-		this.featureNames.add(name+"-sadness");
-		this.featureNames.add(name+"-surprise");
-		this.featureNames.add(name+"-trust");
-		this.featureNames.add(name+"-negative");
-		this.featureNames.add(name+"-positive");
-
-
+		for(String emotion:NRCEmotionLexiconEvaluator.EMOTIONS)
+			this.featureNames.add(name+"-"+emotion);
 
 	}
 
 	/**
-	 * Gets the dictionary mapping the words to their emotion associations
+	 * Gets the dictionary mapping the words to their emotion associations. The dictionary is a 
+	 * read-only view of the lexicon table, the emotions of a word are created on each access.
 	 * 
 	 * @return the dictionary.
-	 */		
+	 */	
 	public Map<String, Map<String, Double>> getDict() {
+		if (this.dict == null) {
+			this.dict = new TableDict<Map<String, Double>>() {
+				@Override
+				protected Map<String, Double> value(int row) {
+					return emotionMap(row);
+				}
+			};
+		}
 		return this.dict;
 	}
 
@@ -92,12 +94,26 @@ public class NRCExpandedEmotionLexiconEvaluator extends LexiconEvaluator {
 	 * @return the emotions
 	 */		
 	public Map<String, Double> getWord(String word) {
-		if (this.dict.containsKey(word))
-			return dict.get(word);
+		int row = this.table.lookup(word);
+		if (row != -1)
+			return this.emotionMap(row);
 		else
 			return null;
 	}
 
+
+	/**
+	 * Creates a map with the emotion associations of a word.
+	 * @param row the row of the word in the lexicon table
+	 * @return the emotions
+	 */	
+	protected Map<String, Double> emotionMap(int row) {
+		Map<String, Double> entry = new HashMap<String, Double>();
+		for (int col = 0; col < this.table.numColumns(); col++)
+			entry.put(this.table.getColumnName(col), this.table.getScore(row, col));
+		return entry;
+	}
+
 	
 	/* (non-Javadoc)
 	 * @see affective.core.LexiconEvaluator#processDict()
@@ -114,21 +130,33 @@ public class NRCExpandedEmotionLexiconEvaluator extends LexiconEvaluator {
 		String firstLine=bf.readLine();
 		String fieldNames[] = firstLine.split("\t");
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(Arrays.copyOfRange(fieldNames, 1, fieldNames.length));
+
 		String line;
 		while ((line = bf.readLine()) != null) {
-			Map<String,Double> entry=new HashMap<String,Double>();
-
 			String pair[] = line.split("\t");
-			String word=pair[0];
+			int row = builder.addWord(pair[0]);
 			for(int i=1;i<pair.length;i++)
-				entry.put(fieldNames[i],Double.parseDouble(pair[i]));
-
-
-			this.dict.put(word, entry);
+				builder.setScore(row, i-1, Double.parseDouble(pair[i]));
 
 		}
 		bf.close();
 
+		this.setTable(builder.build());
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.LexiconEvaluator#setTable(affective.core.LexiconTable)
+	 */
+	@Override
+	protected void setTable(LexiconTable table) {
+		super.setTable(table);
+		// the order of the columns is given by the header of the lexicon file
+		this.emotionColumns = new int[NRCEmotionLexiconEvaluator.EMOTIONS.length];
+		for (int i = 0; i < this.emotionColumns.length; i++)
+			this.emotionColumns[i] = table.getColumnIndex(NRCEmotionLexiconEvaluator.EMOTIONS[i]);
 	}
 
 
@@ -140,45 +168,21 @@ public class NRCExpandedEmotionLexiconEvaluator extends LexiconEvaluator {
 
 		Map<String, Double> emoCount = new HashMap<String, Double>();
 
-		double anger = 0.0;
-		double anticipation = 0.0;
-		double disgust = 0.0;
-		double fear = 0.0;
-		double joy = 0.0;
-		double sadness = 0.0;
-		double surprise = 0.0;
-		double trust = 0.0;
-		double negative = 0.0;
-		double positive = 0.0;
+		double[] scores = new double[this.emotionColumns.length];
 
 		for (String word : words) {
-			// I retrieve the EmotionMap if the word match the lexicon
-			if (this.getDict().containsKey(word)) {
-				Map<String, Double> emotions = this.getDict().get(word);
-				anger += emotions.get("anger");
-				anticipation += emotions.get("anticipation");
-				disgust += emotions.get("disgust");
-				fear += emotions.get("fear");
-				joy += emotions.get("joy");
-				sadness += emotions.get("sadness");
-				surprise += emotions.get("surprise");
-				trust += emotions.get("trust");
-				negative += emotions.get("negative");
-				positive += emotions.get("positive");
-
+			// I retrieve the emotions if the word match the lexicon
+			int row = this.table.lookup(word);
+			if (row != -1) {
+				for (int i = 0; i < this.emotionColumns.length; i++) {
+					if (this.emotionColumns[i] != -1)
+						scores[i] += this.table.getScore(row, this.emotionColumns[i]);
+				}
 			}
 		}
 
-		emoCount.put(name+"-anger", anger);
-		emoCount.put(name+"-anticipation", anticipation);
-		emoCount.put(name+"-disgust", disgust);
-		emoCount.put(name+"-fear", fear);
-		emoCount.put(name+"-joy", joy);
-		emoCount.put(name+"-sadness", sadness);
-		emoCount.put(name+"-surprise", surprise);
-		emoCount.put(name+"-trust", trust);
-		emoCount.put(name+"-negative", negative);
-		emoCount.put(name+"-positive", positive);
+		for (int i = 0; i < this.emotionColumns.length; i++)
+			emoCount.put(name+"-"+NRCEmotionLexiconEvaluator.EMOTIONS[i], scores[i]);
 
 
 		return emoCount;
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -47,8 +48,12 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 	/** For serialization. */
 	private static final long serialVersionUID = -8764066806491555596L;
 
-	/** A mapping between words and the affective scores. */
-	protected Map<String, Map<String, Double>> dict; // each word is mapped to
+	/** The emotions of the lexicon, which are also the columns of the lexicon table. */
+	public static final String[] EMOTIONS = {"anger", "anticipation", "disgust", "fear", "joy",
+		"sadness", "surprise", "trust"};
+
+	/** The map view of the table, created on the first call to getDict. */
+	protected transient Map<String, Map<String, Double>> dict;
 
 	/**
 	 * initializes the Object
@@ -58,29 +63,28 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 	 */
 	public NRCHashtagEmotionLexiconEvaluator(String path,String name) {
 		super(path,name);
-		this.dict = new HashMap<String, Map<String, Double>>();
 
 		this.featureNames=new ArrayList<String>();
-		this.featureNames.add(name+"-anger");
-		this.featureNames.add(name+"-anticipation");
-		this.featureNames.add(name+"-disgust");
-		this.featureNames.add(name+"-fear");
-		this.featureNames.add(name+"-joy");
-		this.featureNames.add(name+"-sadness");
-		this.featureNames.add(name+"-surprise");
-		this.featureNames.add(name+"-trust");
-
-
-
+		for(String emotion:EMOTIONS)
+			this.featureNames.add(name+"-"+emotion);
 
 	}
 
 	/**
-	 * Gets the dictionary mapping the words to their emotion associations
+	 * Gets the dictionary mapping the words to their emotion associations. The dictionary is a 
+	 * read-only view of the lexicon table, the emotions of a word are created on each access.
 	 * 
 	 * @return the dictionary.
-	 */		
+	 */	
 	public Map<String, Map<String, Double>> getDict() {
+		if (this.dict == null) {
+			this.dict = new TableDict<Map<String, Double>>() {
+				@Override
+				protected Map<String, Double> value(int row) {
+					return emotionMap(row);
+				}
+			};
+		}
 		return this.dict;
 	}
 
@@ -91,12 +95,26 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 	 * @return the emotions
 	 */		
 	public Map<String, Double> getWord(String word) {
-		if (this.dict.containsKey(word))
-			return dict.get(word);
+		int row = this.table.lookup(word);
+		if (row != -1)
+			return this.emotionMap(row);
 		else
 			return null;
 	}
 
+
+	/**
+	 * Creates a map with the emotion associations of a word.
+	 * @param row the row of the word in the lexicon table
+	 * @return the emotions
+	 */	
+	protected Map<String, Double> emotionMap(int row) {
+		Map<String, Double> entry = new HashMap<String, Double>();
+		for (int col = 0; col < EMOTIONS.length; col++)
+			entry.put(EMOTIONS[col], this.table.getScore(row, col));
+		return entry;
+	}
+
 		
 	/* (non-Javadoc)
 	 * @see affective.core.LexiconEvaluator#processDict()
@@ -114,6 +132,7 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 			bf.readLine();
 		}
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(EMOTIONS);
 
 		String line;
 		while ((line = bf.readLine()) != null) {
@@ -121,24 +140,18 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 
 			String triple[] = line.split("\t");
 
-			String word=triple[1];
-
-			Map<String,Double> entry;
-			if(this.dict.containsKey(word)){
-				entry=this.dict.get(word);
-			}
-			else{
-				entry=new HashMap<String,Double>();
-				this.dict.put(word, entry);
-			}
-
-
-			entry.put(triple[0],Double.parseDouble(triple[2]));
+			// words without an association to an emotion keep a score of zero
+			int col = Arrays.asList(EMOTIONS).indexOf(triple[0]);
+			int row = builder.addWord(triple[1]);
+			if (col != -1)
+				builder.setScore(row, col, Double.parseDouble(triple[2]));
 
 
 		}
 		bf.close();
 
+		this.setTable(builder.build());
+
 	}
 
 	/* (non-Javadoc)
@@ -149,55 +162,19 @@ public class NRCHashtagEmotionLexiconEvaluator extends LexiconEvaluator {
 
 		Map<String, Double> emoCount = new HashMap<String, Double>();
 
-		double anger = 0.0;
-		double anticipation = 0.0;
-		double disgust = 0.0;
-		double fear = 0.0;
-		double joy = 0.0;
-		double sadness = 0.0;
-		double surprise = 0.0;
-		double trust = 0.0;
-
+		double[] scores = new double[EMOTIONS.length];
 
 		for (String word : words) {
-			// I retrieve the EmotionMap if the word match the lexicon
-			if (this.getDict().containsKey(word)) {
-				Map<String, Double> emotions = this.getDict().get(word);
-				if(emotions.containsKey("anger"))
-					anger += emotions.get("anger");
-
-				if(emotions.containsKey("anticipation"))
-					anticipation += emotions.get("anticipation");
-
-				if(emotions.containsKey("disgust"))
-					disgust += emotions.get("disgust");
-
-				if(emotions.containsKey("fear"))
-					fear += emotions.get("fear");
-
-				if(emotions.containsKey("joy"))
-					joy += emotions.get("joy");
-
-				if(emotions.containsKey("sadness"))
-					sadness += emotions.get("sadness");
-
-				if(emotions.containsKey("surprise"))
-					surprise += emotions.get("surprise");
-
-				if(emotions.containsKey("trust"))
-					trust += emotions.get("trust");
-
+			// I retrieve the emotions if the word match the lexicon
+			int row = this.table.lookup(word);
+			if (row != -1) {
+				for (int col = 0; col < EMOTIONS.length; col++)
+					scores[col] += this.table.getScore(row, col);
 			}
 		}
 
-		emoCount.put(name+"-anger", anger);
-		emoCount.put(name+"-anticipation", anticipation);
-		emoCount.put(name+"-disgust", disgust);
-		emoCount.put(name+"-fear", fear);
-		emoCount.put(name+"-joy", joy);
-		emoCount.put(name+"-sadness", sadness);
-		emoCount.put(name+"-surprise", surprise);
-		emoCount.put(name+"-trust", trust);
+		for (int col = 0; col < EMOTIONS.length; col++)
+			emoCount.put(name+"-"+EMOTIONS[col], scores[col]);
 
 
 		return emoCount;
@@ -0,0 +1,781 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    NearestNeighbourIndex.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  An approximate nearest neighbour index of word vectors based on the cosine similarity. The index is an
+ *  inverted file: the normalized vectors are clustered with spherical k-means and each vector is stored in
+ *  the list of its closest centroid. A query only scans the lists of the centroids closest to the query
+ *  vector. The clusters are calculated in parallel and the result does not depend on the number of threads.
+ *  The index can be saved to a file and loaded without the embeddings.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class NearestNeighbourIndex implements Serializable {
+
+	/** For serialization. */
+	private static final long serialVersionUID = -2916227463405937530L;
+
+	/** The first int of an index file, "ATNN". */
+	public static final int MAGIC = 0x41544E4E;
+
+	/** The version of the format of the index files. */
+	public static final int VERSION = 1;
+
+	/** The number of k-means iterations. */
+	protected static final int NUM_ITERATIONS = 10;
+
+	/** The number of training vectors per list used for calculating the centroids. */
+	protected static final int TRAINING_VECTORS_PER_LIST = 64;
+
+	/** The number of vectors assigned to their lists by a task. */
+	protected static final int BLOCK_SIZE = 4096;
+
+	/** The seed for sampling the training vectors. */
+	protected static final long SEED = 1;
+
+	/** The largest number of values of the vectors, which are stored in one array. */
+	protected static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+
+	/** The number of dimensions of the vectors. */
+	protected int dimensions;
+
+	/** The number of lists. */
+	protected int numLists;
+
+	/** The number of lists scanned by a query. */
+	protected int numProbes;
+
+	/** The normalized centroids of the lists, one after the other. */
+	protected float[] centroids;
+
+	/** The position of the first word of each list, followed by the number of words. */
+	protected int[] listStarts;
+
+	/** The words grouped by list. */
+	protected String[] words;
+
+	/** The normalized vectors of the words, one after the other. */
+	protected float[] vectors;
+
+	/** The position of each word. */
+	protected Object2IntOpenHashMap<String> positions;
+
+
+
+	/**
+	 * A word returned by a query and its cosine similarity with the query.
+	 */
+	public static class Neighbour implements Serializable {
+
+		/** For serialization. */
+		private static final long serialVersionUID = 4006011566519046567L;
+
+		/** The word. */
+		protected String word;
+
+		/** The cosine similarity. */
+		protected double similarity;
+
+		/**
+		 * Creates a neighbour.
+		 *
+		 * @param word the word
+		 * @param similarity the cosine similarity
+		 */
+		public Neighbour(String word, double similarity) {
+			this.word = word;
+			this.similarity = similarity;
+		}
+
+		/**
+		 * Gets the word.
+		 *
+		 * @return the word
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * Gets the cosine similarity with the query.
+		 *
+		 * @return the similarity
+		 */
+		public double getSimilarity() {
+			return similarity;
+		}
+
+		@Override
+		public String toString() {
+			return this.word + ":" + this.similarity;
+		}
+	}
+
+
+
+	/**
+	 * Creates an empty index to be loaded from a file.
+	 */
+	protected NearestNeighbourIndex() {
+
+	}
+
+
+	/**
+	 * Builds the index of the vectors of a handler with about the square root of the number of words as
+	 * the number of lists.
+	 *
+	 * @param handler the handler with the vectors
+	 * @param numThreads the number of threads
+	 * @throws Exception if a thread fails
+	 */
+	public NearestNeighbourIndex(EmbeddingHandler handler, int numThreads) throws Exception {
+		this(handler, (int) Math.round(Math.sqrt(handler.getWords().size())), numThreads);
+	}
+
+
+	/**
+	 * Builds the index of the vectors of a handler.
+	 *
+	 * @param handler the handler with the vectors
+	 * @param numLists the number of lists
+	 * @param numThreads the number of threads
+	 * @throws Exception if a thread fails
+	 */
+	public NearestNeighbourIndex(EmbeddingHandler handler, int numLists, int numThreads) throws Exception {
+		// the words are sorted, so the index does not depend on the order of the dictionary
+		List<String> sorted = new ArrayList<String>(handler.getWords());
+		Collections.sort(sorted);
+
+		int numWords = sorted.size();
+		this.dimensions = handler.getDimensions();
+		this.numLists = Math.max(1, Math.min(numLists, numWords));
+		this.numProbes = defaultNumProbes(this.numLists);
+
+		// the vectors are read once and rearranged in place, so the index holds a single copy of them
+		float[] data = new float[arraySize(numWords, this.dimensions)];
+		for (int w = 0; w < numWords; w++) {
+			AbstractDoubleList vector = handler.getVector(sorted.get(w));
+			for (int j = 0; j < this.dimensions; j++)
+				data[w * this.dimensions + j] = (float) vector.getDouble(j);
+			normalize(data, w * this.dimensions, this.dimensions);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			this.centroids = this.trainCentroids(data, numWords, pool);
+			int[] assignments = this.assign(data, identity(numWords), pool);
+
+			// the words are grouped by list keeping their order
+			this.listStarts = new int[this.numLists + 1];
+			for (int list : assignments)
+				this.listStarts[list + 1]++;
+			for (int l = 0; l < this.numLists; l++)
+				this.listStarts[l + 1] += this.listStarts[l];
+			int[] fill = Arrays.copyOf(this.listStarts, this.numLists);
+
+			// the word of each position
+			int[] sources = new int[numWords];
+			this.words = new String[numWords];
+			for (int w = 0; w < numWords; w++) {
+				int pos = fill[assignments[w]]++;
+				sources[pos] = w;
+				this.words[pos] = sorted.get(w);
+			}
+			moveRows(data, sources, this.dimensions);
+			this.vectors = data;
+		} finally {
+			pool.shutdown();
+		}
+
+		this.indexWords();
+	}
+
+
+	/**
+	 * Gets the number of values of a matrix stored in one array.
+	 *
+	 * @param numRows the number of rows
+	 * @param dimensions the number of values of a row
+	 * @return the number of values
+	 * @throws IllegalArgumentException if the matrix does not fit in an array
+	 */
+	protected static int arraySize(long numRows, int dimensions) {
+		long size = numRows * dimensions;
+		if (size > MAX_ARRAY_SIZE)
+			throw new IllegalArgumentException("The index cannot hold " + numRows + " vectors of " + dimensions
+					+ " dimensions, more than " + MAX_ARRAY_SIZE + " values");
+		return (int) size;
+	}
+
+
+	/**
+	 * Moves the rows of a matrix in place, following the cycles of the permutation, so that row pos
+	 * takes the values of row sources[pos]. The sources are overwritten.
+	 *
+	 * @param data the matrix
+	 * @param sources the row whose values go to each row
+	 * @param dimensions the number of values of a row
+	 */
+	protected static void moveRows(float[] data, int[] sources, int dimensions) {
+		float[] first = new float[dimensions];
+		for (int start = 0; start < sources.length; start++) {
+			if (sources[start] == start)
+				continue;
+			System.arraycopy(data, start * dimensions, first, 0, dimensions);
+			int pos = start;
+			while (sources[pos] != start) {
+				int source = sources[pos];
+				System.arraycopy(data, source * dimensions, data, pos * dimensions, dimensions);
+				sources[pos] = pos;
+				pos = source;
+			}
+			System.arraycopy(first, 0, data, pos * dimensions, dimensions);
+			sources[pos] = pos;
+		}
+	}
+
+
+	/**
+	 * Gets the default number of lists scanned by a query.
+	 *
+	 * @param numLists the number of lists
+	 * @return the number of lists scanned by a query
+	 */
+	protected static int defaultNumProbes(int numLists) {
+		return Math.min(numLists, Math.max(8, numLists / 16));
+	}
+
+
+	/**
+	 * Calculates the centroids with spherical k-means over a sample of the vectors. The sample and the
+	 * initial centroids are chosen with a fixed seed.
+	 *
+	 * @param data the normalized vectors
+	 * @param numWords the number of vectors
+	 * @param pool the threads
+	 * @return the centroids
+	 * @throws Exception if a thread fails
+	 */
+	protected float[] trainCentroids(float[] data, int numWords, ExecutorService pool) throws Exception {
+		int[] sample = identity(numWords);
+		Random random = new Random(SEED);
+		for (int i = numWords - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = sample[i];
+			sample[i] = sample[j];
+			sample[j] = tmp;
+		}
+		sample = Arrays.copyOf(sample, (int) Math.min(numWords, (long) this.numLists * TRAINING_VECTORS_PER_LIST));
+
+		float[] current = new float[this.numLists * this.dimensions];
+		for (int l = 0; l < this.numLists; l++)
+			System.arraycopy(data, sample[l] * this.dimensions, current, l * this.dimensions, this.dimensions);
+		this.centroids = current;
+
+		for (int it = 0; it < NUM_ITERATIONS; it++) {
+			int[] assignments = this.assign(data, sample, pool);
+
+			// the sums are calculated in the order of the sample
+			double[] sums = new double[this.numLists * this.dimensions];
+			int[] sizes = new int[this.numLists];
+			for (int i = 0; i < sample.length; i++) {
+				int offset = assignments[i] * this.dimensions;
+				int pos = sample[i] * this.dimensions;
+				for (int j = 0; j < this.dimensions; j++)
+					sums[offset + j] += data[pos + j];
+				sizes[assignments[i]]++;
+			}
+
+			// empty lists keep their centroid
+			float[] next = Arrays.copyOf(this.centroids, this.centroids.length);
+			for (int l = 0; l < this.numLists; l++) {
+				if (sizes[l] == 0)
+					continue;
+				for (int j = 0; j < this.dimensions; j++)
+					next[l * this.dimensions + j] = (float) sums[l * this.dimensions + j];
+				normalize(next, l * this.dimensions, this.dimensions);
+			}
+			this.centroids = next;
+		}
+
+		return this.centroids;
+	}
+
+
+	/**
+	 * Finds the closest centroid of some vectors. The vectors are split into blocks assigned in parallel.
+	 *
+	 * @param data the normalized vectors
+	 * @param rows the rows of the vectors to assign
+	 * @param pool the threads
+	 * @return the list of each row
+	 * @throws Exception if a thread fails
+	 */
+	protected int[] assign(final float[] data, final int[] rows, ExecutorService pool) throws Exception {
+		final int[] assignments = new int[rows.length];
+		List<Callable<Void>> blocks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < rows.length; start += BLOCK_SIZE) {
+			final int blockStart = start;
+			final int blockEnd = Math.min(start + BLOCK_SIZE, rows.length);
+			blocks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = blockStart; i < blockEnd; i++)
+						assignments[i] = closestCentroid(data, rows[i] * dimensions);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Void> block : pool.invokeAll(blocks))
+				block.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+		return assignments;
+	}
+
+
+	/**
+	 * Finds the centroid with the largest similarity with a vector.
+	 *
+	 * @param data the array with the vector
+	 * @param offset the position of the vector
+	 * @return the list of the centroid
+	 */
+	protected int closestCentroid(float[] data, int offset) {
+		int best = 0;
+		float bestSimilarity = Float.NEGATIVE_INFINITY;
+		for (int l = 0; l < this.numLists; l++) {
+			float similarity = dot(data, offset, this.centroids, l * this.dimensions, this.dimensions);
+			if (similarity > bestSimilarity) {
+				bestSimilarity = similarity;
+				best = l;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * Finds the nearest neighbours of a word.
+	 *
+	 * @param word the word
+	 * @param k the number of neighbours
+	 * @return the neighbours from the most to the least similar one, empty if the word is not in the index
+	 */
+	public List<Neighbour> nearestNeighbours(String word, int k) {
+		int pos = this.positions.getInt(word);
+		if (pos == -1)
+			return new ArrayList<Neighbour>();
+		return this.search(this.vectors, pos * this.dimensions, k, pos);
+	}
+
+
+	/**
+	 * Finds the nearest neighbours of a vector.
+	 *
+	 * @param vector the vector
+	 * @param k the number of neighbours
+	 * @return the neighbours from the most to the least similar one
+	 */
+	public List<Neighbour> nearestNeighbours(AbstractDoubleList vector, int k) {
+		float[] query = new float[this.dimensions];
+		for (int j = 0; j < this.dimensions; j++)
+			query[j] = (float) vector.getDouble(j);
+		normalize(query, 0, this.dimensions);
+		return this.search(query, 0, k, -1);
+	}
+
+
+	/**
+	 * Finds the nearest words of a word.
+	 *
+	 * @param word the word
+	 * @param k the number of words
+	 * @return the words from the most to the least similar one, empty if the word is not in the index
+	 */
+	public List<String> nearestWords(String word, int k) {
+		List<String> result = new ArrayList<String>();
+		for (Neighbour neighbour : this.nearestNeighbours(word, k))
+			result.add(neighbour.getWord());
+		return result;
+	}
+
+
+	/**
+	 * Finds the nearest neighbours of a list of words, e.g., the words of a seed lexicon. The words are
+	 * split into blocks searched in parallel.
+	 *
+	 * @param queries the words
+	 * @param k the number of neighbours of each word
+	 * @param numThreads the number of threads
+	 * @return the neighbours of each word in the order of the list
+	 * @throws Exception if a thread fails
+	 */
+	public List<List<Neighbour>> nearestNeighbours(final List<String> queries, final int k, int numThreads) throws Exception {
+		final List<List<Neighbour>> result = new ArrayList<List<Neighbour>>(Collections.<List<Neighbour>>nCopies(queries.size(), null));
+		List<Callable<Void>> blocks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < queries.size(); start += BLOCK_SIZE / 16) {
+			final int blockStart = start;
+			final int blockEnd = Math.min(start + BLOCK_SIZE / 16, queries.size());
+			blocks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = blockStart; i < blockEnd; i++)
+						result.set(i, nearestNeighbours(queries.get(i), k));
+					return null;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			for (Future<Void> block : pool.invokeAll(blocks))
+				block.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Scans the lists of the centroids closest to a normalized query vector. Ties are broken by the
+	 * position of the words, so the result is deterministic.
+	 *
+	 * @param query the array with the query vector
+	 * @param offset the position of the query vector
+	 * @param k the number of neighbours
+	 * @param exclude the position of a word excluded from the result or -1
+	 * @return the neighbours from the most to the least similar one
+	 */
+	protected List<Neighbour> search(float[] query, int offset, int k, int exclude) {
+		int probes = Math.min(this.numProbes, this.numLists);
+		int[] lists = new int[probes];
+		float[] listSimilarities = new float[probes];
+		int numSelected = 0;
+		for (int l = 0; l < this.numLists; l++)
+			numSelected = insert(lists, listSimilarities, numSelected, l,
+					dot(query, offset, this.centroids, l * this.dimensions, this.dimensions));
+
+		int[] best = new int[Math.max(0, k)];
+		float[] bestSimilarities = new float[best.length];
+		int numBest = 0;
+		for (int p = 0; p < numSelected; p++) {
+			int list = lists[p];
+			for (int pos = this.listStarts[list]; pos < this.listStarts[list + 1]; pos++) {
+				if (pos != exclude)
+					numBest = insert(best, bestSimilarities, numBest, pos,
+							dot(query, offset, this.vectors, pos * this.dimensions, this.dimensions));
+			}
+		}
+
+		List<Neighbour> result = new ArrayList<Neighbour>(numBest);
+		for (int i = 0; i < numBest; i++)
+			result.add(new Neighbour(this.words[best[i]], bestSimilarities[i]));
+		return result;
+	}
+
+
+	/**
+	 * Inserts an element into a list of at most ids.length elements sorted by decreasing score and
+	 * increasing id.
+	 *
+	 * @param ids the ids of the elements
+	 * @param scores the scores of the elements
+	 * @param size the number of elements
+	 * @param id the id of the new element
+	 * @param score the score of the new element
+	 * @return the new number of elements
+	 */
+	protected static int insert(int[] ids, float[] scores, int size, int id, float score) {
+		if (size == ids.length && (size == 0 || !better(score, id, scores[size - 1], ids[size - 1])))
+			return size;
+
+		int i = size == ids.length ? size - 1 : size;
+		while (i > 0 && better(score, id, scores[i - 1], ids[i - 1])) {
+			ids[i] = ids[i - 1];
+			scores[i] = scores[i - 1];
+			i--;
+		}
+		ids[i] = id;
+		scores[i] = score;
+		return size == ids.length ? size : size + 1;
+	}
+
+
+	/**
+	 * Compares two elements by decreasing score and increasing id.
+	 *
+	 * @param score the score of the first element
+	 * @param id the id of the first element
+	 * @param otherScore the score of the second element
+	 * @param otherId the id of the second element
+	 * @return true if the first element goes before the second one
+	 */
+	protected static boolean better(float score, int id, float otherScore, int otherId) {
+		return score > otherScore || (score == otherScore && id < otherId);
+	}
+
+
+	/**
+	 * Calculates the dot product of two vectors.
+	 *
+	 * @param a the array with the first vector
+	 * @param aOffset the position of the first vector
+	 * @param b the array with the second vector
+	 * @param bOffset the position of the second vector
+	 * @param length the number of dimensions
+	 * @return the dot product
+	 */
+	protected static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+		float sum = 0;
+		for (int j = 0; j < length; j++)
+			sum += a[aOffset + j] * b[bOffset + j];
+		return sum;
+	}
+
+
+	/**
+	 * Divides a vector by its norm. Zero vectors are not modified.
+	 *
+	 * @param a the array with the vector
+	 * @param offset the position of the vector
+	 * @param length the number of dimensions
+	 */
+	protected static void normalize(float[] a, int offset, int length) {
+		double norm = 0;
+		for (int j = 0; j < length; j++)
+			norm += a[offset + j] * a[offset + j];
+		norm = Math.sqrt(norm);
+		if (norm > 0) {
+			for (int j = 0; j < length; j++)
+				a[offset + j] = (float) (a[offset + j] / norm);
+		}
+	}
+
+
+	/**
+	 * Creates the array 0, 1, ..., n - 1.
+	 *
+	 * @param n the length of the array
+	 * @return the array
+	 */
+	protected static int[] identity(int n) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++)
+			a[i] = i;
+		return a;
+	}
+
+
+	/**
+	 * Maps the words to their positions.
+	 */
+	protected void indexWords() {
+		this.positions = new Object2IntOpenHashMap<String>(this.words.length);
+		this.positions.defaultReturnValue(-1);
+		for (int pos = 0; pos < this.words.length; pos++)
+			this.positions.put(this.words[pos], pos);
+	}
+
+
+	/**
+	 * Gets the number of lists scanned by a query.
+	 *
+	 * @return the number of lists
+	 */
+	public int getNumProbes() {
+		return numProbes;
+	}
+
+
+	/**
+	 * Sets the number of lists scanned by a query. More lists find more of the exact neighbours and
+	 * make the queries slower.
+	 *
+	 * @param numProbes the number of lists
+	 */
+	public void setNumProbes(int numProbes) {
+		this.numProbes = Math.max(1, numProbes);
+	}
+
+
+	/**
+	 * Gets the number of lists.
+	 *
+	 * @return the number of lists
+	 */
+	public int getNumLists() {
+		return numLists;
+	}
+
+
+	/**
+	 * Gets the number of words.
+	 *
+	 * @return the number of words
+	 */
+	public int getNumWords() {
+		return words.length;
+	}
+
+
+	/**
+	 * Saves the index to a file.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.words.length);
+			out.writeInt(this.dimensions);
+			out.writeInt(this.numLists);
+			out.writeInt(this.numProbes);
+			for (int start : this.listStarts)
+				out.writeInt(start);
+			for (String word : this.words)
+				out.writeUTF(word);
+			writeFloats(out, this.centroids);
+			writeFloats(out, this.vectors);
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Loads an index from a file.
+	 *
+	 * @param file the file
+	 * @return the index
+	 * @throws IOException if the file is not a valid index file
+	 */
+	public static NearestNeighbourIndex load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a nearest neighbour index file");
+			if (in.readInt() != VERSION)
+				throw new IOException(file + " was saved with an unsupported version of the format");
+
+			NearestNeighbourIndex index = new NearestNeighbourIndex();
+			int numWords = in.readInt();
+			index.dimensions = in.readInt();
+			index.numLists = in.readInt();
+			index.numProbes = in.readInt();
+			index.listStarts = new int[index.numLists + 1];
+			for (int l = 0; l <= index.numLists; l++)
+				index.listStarts[l] = in.readInt();
+			index.words = new String[numWords];
+			for (int w = 0; w < numWords; w++)
+				index.words[w] = in.readUTF();
+			index.centroids = readFloats(in, arraySize(index.numLists, index.dimensions));
+			index.vectors = readFloats(in, arraySize(numWords, index.dimensions));
+			index.indexWords();
+			return index;
+		} finally {
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Writes an array of floats.
+	 *
+	 * @param out the stream
+	 * @param values the array
+	 * @throws IOException if the stream cannot be written
+	 */
+	protected static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 * BLOCK_SIZE);
+		for (int start = 0; start < values.length; start += BLOCK_SIZE) {
+			int length = Math.min(BLOCK_SIZE, values.length - start);
+			buffer.clear();
+			buffer.asFloatBuffer().put(values, start, length);
+			out.write(buffer.array(), 0, 4 * length);
+		}
+	}
+
+
+	/**
+	 * Reads an array of floats.
+	 *
+	 * @param in the stream
+	 * @param length the length of the array
+	 * @return the array
+	 * @throws IOException if the stream cannot be read
+	 */
+	protected static float[] readFloats(DataInputStream in, int length) throws IOException {
+		float[] values = new float[length];
+		byte[] bytes = new byte[4 * BLOCK_SIZE];
+		for (int start = 0; start < length; start += BLOCK_SIZE) {
+			int n = Math.min(BLOCK_SIZE, length - start);
+			in.readFully(bytes, 0, 4 * n);
+			ByteBuffer.wrap(bytes).asFloatBuffer().get(values, start, n);
+		}
+		return values;
+	}
+
+}
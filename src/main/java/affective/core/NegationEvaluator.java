@@ -29,9 +29,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
@@ -49,8 +52,8 @@ public class NegationEvaluator extends LexiconEvaluator {
 	/** For serialization. */
 	private static final long serialVersionUID = 1331150082874408516L;
 
-	/** The negating words. */
-	protected Set<String> wordList;
+	/** The negating words, a view of the table. */
+	protected Set<String> wordList=new WordSet();
 
 	/**
 	 * Initializes the Object
@@ -60,7 +63,6 @@ public class NegationEvaluator extends LexiconEvaluator {
 	 */
 	public NegationEvaluator(String path, String name) {
 		super(path, name);
-		this.wordList=new HashSet<String>();
 
 		this.featureNames=new ArrayList<String>();
 		this.featureNames.add(name+"-negationCount");
@@ -78,15 +80,20 @@ public class NegationEvaluator extends LexiconEvaluator {
 		InputStreamReader xover = new InputStreamReader(gzis);
 		BufferedReader bf = new BufferedReader(xover);
 
+		// the table of the negating words has no score columns
+		LexiconTable.Builder builder = new LexiconTable.Builder();
+
 		String line;
 		while ((line = bf.readLine()) != null) {
-			this.wordList.add(line);
+			builder.addWord(line);
 		}
 		bf.close();
 		xover.close();
 		gzis.close();
 		fin.close();
 
+		this.setTable(builder.build());
+
 	}
 
 
@@ -102,7 +109,7 @@ public class NegationEvaluator extends LexiconEvaluator {
 
 		// counts the number of negation words
 		for (String w : tokens) {
-			if(this.wordList.contains(w))
+			if(this.table.lookup(w) != -1)
 				neationCount++;
 		}
 
@@ -123,5 +130,62 @@ public class NegationEvaluator extends LexiconEvaluator {
 	}
 
 
+	/**
+	 * Calculates which tokens occur in the scope of a negating word.
+	 * 
+	 * @param tokens the tokens of a tweet
+	 * @return the mask, true for the tokens in a negated context
+	 */	
+	public boolean[] getNegationMask(List<String> tokens) {
+		return Utils.negationMask(tokens, this.wordList, null);
+	}
+
+
+	/**
+	 * An unmodifiable view of the words of the table as a set.
+	 */
+	protected class WordSet extends AbstractSet<String> implements Serializable {
+
+		/** For serialization. */
+		private static final long serialVersionUID = -6452950330436414437L;
+
+		@Override
+		public boolean contains(Object o) {
+			return table != null && o instanceof String && table.lookup((String) o) != -1;
+		}
+
+		@Override
+		public int size() {
+			return table == null ? 0 : table.size();
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+
+				/** The next row. */
+				protected int row = 0;
+
+				@Override
+				public boolean hasNext() {
+					return row < size();
+				}
+
+				@Override
+				public String next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return table.getWord(row++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+
 
 }
@@ -0,0 +1,165 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    PhraseLexiconEvaluator.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ *  <!-- globalinfo-start -->
+ *  This class is used for evaluating lexicons of multi-word phrases with numerical sentiment scores,
+ *  e.g., the bigram lexicons of Sentiment140 and NRC Hashtag Sentiment. The tokens of a phrase are
+ *  separated by spaces in the lexicon file. All the phrases occurring in a tweet are matched in a single
+ *  pass over its tokens using a PhraseMatcher.
+ *  <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class PhraseLexiconEvaluator extends LexiconEvaluator  {
+
+
+	/** For serialization. */
+	private static final long serialVersionUID = 7795004264127429136L;
+
+	/** The name of the column with the scores. */
+	public static final String SCORE_COLUMN = "score";
+
+	/** The automaton matching the phrases, the value of each phrase is its row in the table. */
+	protected PhraseMatcher matcher;
+
+	/**
+	 * Initializes the Object
+	 *
+	 * @param file the file with the lexicon
+	 * @param name the prefix for all the attributes calculated from this lexicon
+	 */
+	public PhraseLexiconEvaluator(String file,String name) {
+		super(file,name);
+
+		this.featureNames=new ArrayList<String>();
+		this.featureNames.add(name+"-posScore");
+		this.featureNames.add(name+"-negScore");
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.LexiconEvaluator#processDict()
+	 */
+	@Override
+	public void processDict() throws IOException  {
+		// first, we open the file
+		FileInputStream fin = new FileInputStream(this.path);
+		GZIPInputStream gzis = new GZIPInputStream(fin);
+		InputStreamReader xover = new InputStreamReader(gzis);
+		BufferedReader bf = new BufferedReader(xover);
+
+		LexiconTable.Builder builder = new LexiconTable.Builder(SCORE_COLUMN);
+
+		String line;
+		while ((line = bf.readLine()) != null) {
+			String pair[] = line.split("\t");
+			try {
+				double value = Double.parseDouble(pair[1]);
+				builder.setScore(builder.addWord(pair[0]), 0, value);
+			} catch (NumberFormatException e) {
+				// entries without a numeric score are discarded
+			}
+
+		}
+		bf.close();
+		xover.close();
+		gzis.close();
+		fin.close();
+
+		this.setTable(builder.build());
+
+	}
+
+
+	/**
+	 * Sets the table and builds the automaton matching its phrases.
+	 *
+	 * @param table the table
+	 */
+	@Override
+	protected void setTable(LexiconTable table) {
+		super.setTable(table);
+
+		PhraseMatcher matcher = new PhraseMatcher();
+		for (int row = 0; row < table.size(); row++)
+			matcher.addPhrase(table.getWord(row).split(" "), row);
+		matcher.build();
+		this.matcher = matcher;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.LexiconEvaluator#getMemoryFootprint()
+	 */
+	@Override
+	public long getMemoryFootprint() {
+		return super.getMemoryFootprint() + (this.matcher == null ? 0 : this.matcher.getMemoryFootprint());
+	}
+
+
+	/* (non-Javadoc)
+	 * @see affective.core.LexiconEvaluator#evaluateTweet(java.util.List)
+	 */
+	@Override
+	public Map<String, Double> evaluateTweet(List<String> tokens) {
+		Map<String, Double> strengthScores = new HashMap<String, Double>();
+		double posScore = 0;
+		double negScore = 0;
+
+		IntList rows = new IntArrayList();
+		this.matcher.match(tokens, rows);
+		for (int i = 0; i < rows.size(); i++) {
+			double value = this.table.getScore(rows.getInt(i), 0);
+			if (value > 0) {
+				posScore += value;
+			} else {
+				negScore += value;
+			}
+		}
+
+		strengthScores.put(name+"-posScore", posScore);
+		strengthScores.put(name+"-negScore", negScore);
+
+		return strengthScores;
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    PhraseMatcher.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Matches multi-word phrases in a tokenized tweet using an Aho-Corasick automaton over token ids.
+ *  All the occurrences of all the phrases, including overlapping ones, are found in a single pass over the tokens.
+ *  Each phrase is associated with an int value, e.g., its row in a lexicon table.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class PhraseMatcher implements Serializable {
+
+	/** For serialization. */
+	private static final long serialVersionUID = 5304182379426094757L;
+
+	/** The root state of the automaton. */
+	protected static final int ROOT = 0;
+
+
+	/** Mapping between tokens and their ids. */
+	protected Object2IntOpenHashMap<String> tokenIds = new Object2IntOpenHashMap<String>();
+
+	/** The transitions of the trie, keyed by the state and the token id. */
+	protected Long2IntOpenHashMap transitions = new Long2IntOpenHashMap();
+
+	/** The parent of each state. */
+	protected IntArrayList parents = new IntArrayList();
+
+	/** The token id of the transition leading to each state. */
+	protected IntArrayList labels = new IntArrayList();
+
+	/** The depth of each state. */
+	protected IntArrayList depths = new IntArrayList();
+
+	/** The value of the phrase ending at each state or -1 if no phrase ends there. */
+	protected IntArrayList values = new IntArrayList();
+
+	/** The failure link of each state, calculated by build. */
+	protected int[] failures;
+
+	/** The closest state in the failure chain of each state where a phrase ends, or the root. */
+	protected int[] outputs;
+
+
+
+	/**
+	 * Creates an empty matcher.
+	 */
+	public PhraseMatcher() {
+		this.tokenIds.defaultReturnValue(-1);
+		this.transitions.defaultReturnValue(-1);
+		this.newState(-1, -1);
+	}
+
+
+	/**
+	 * Creates a new state.
+	 *
+	 * @param parent the parent state
+	 * @param label the token id of the transition from the parent
+	 * @return the new state
+	 */
+	protected int newState(int parent, int label) {
+		int state = this.parents.size();
+		this.parents.add(parent);
+		this.labels.add(label);
+		this.depths.add(parent == -1 ? 0 : this.depths.getInt(parent) + 1);
+		this.values.add(-1);
+		return state;
+	}
+
+
+	/**
+	 * Gets the transition key of a state and a token id.
+	 *
+	 * @param state the state
+	 * @param tokenId the token id
+	 * @return the key
+	 */
+	protected static long transitionKey(int state, int tokenId) {
+		return ((long) state << 32) | (tokenId & 0xFFFFFFFFL);
+	}
+
+
+	/**
+	 * Adds a phrase. A phrase added twice keeps the last value.
+	 *
+	 * @param tokens the tokens of the phrase
+	 * @param value the value associated with the phrase
+	 */
+	public void addPhrase(String[] tokens, int value) {
+		if (tokens.length == 0)
+			return;
+
+		int state = ROOT;
+		for (String token : tokens) {
+			int tokenId = this.tokenIds.getInt(token);
+			if (tokenId == -1) {
+				tokenId = this.tokenIds.size();
+				this.tokenIds.put(token, tokenId);
+			}
+
+			long key = transitionKey(state, tokenId);
+			int next = this.transitions.get(key);
+			if (next == -1) {
+				next = this.newState(state, tokenId);
+				this.transitions.put(key, next);
+			}
+			state = next;
+		}
+		this.values.set(state, value);
+		this.failures = null;
+	}
+
+
+	/**
+	 * Calculates the failure links of the automaton. It must be called after adding the phrases
+	 * and before matching them. States are processed in breadth-first order, so the failure link 
+	 * of a state is calculated after the ones of all the shorter states.
+	 */
+	public void build() {
+		int numStates = this.parents.size();
+
+		// sorts the states by depth
+		int maxDepth = 0;
+		for (int i = 0; i < numStates; i++)
+			maxDepth = Math.max(maxDepth, this.depths.getInt(i));
+		int[] starts = new int[maxDepth + 2];
+		for (int i = 0; i < numStates; i++)
+			starts[this.depths.getInt(i) + 1]++;
+		for (int d = 1; d < starts.length; d++)
+			starts[d] += starts[d - 1];
+		int[] order = new int[numStates];
+		for (int i = 0; i < numStates; i++)
+			order[starts[this.depths.getInt(i)]++] = i;
+
+		this.failures = new int[numStates];
+		this.outputs = new int[numStates];
+
+		for (int i = 1; i < numStates; i++) {
+			int state = order[i];
+			int parent = this.parents.getInt(state);
+			int label = this.labels.getInt(state);
+
+			int failure = ROOT;
+			if (parent != ROOT) {
+				int candidate = this.failures[parent];
+				while (true) {
+					int next = this.transitions.get(transitionKey(candidate, label));
+					if (next != -1) {
+						failure = next;
+						break;
+					}
+					if (candidate == ROOT)
+						break;
+					candidate = this.failures[candidate];
+				}
+			}
+
+			this.failures[state] = failure;
+			this.outputs[state] = this.values.getInt(failure) != -1 ? failure : this.outputs[failure];
+		}
+	}
+
+
+	/**
+	 * Finds all the phrases occurring in a list of tokens. The automaton must have been built.
+	 *
+	 * @param tokens the tokens
+	 * @return the values of the matched phrases, in the order in which the phrases end
+	 */
+	public IntList match(List<String> tokens) {
+		IntList matches = new IntArrayList();
+		this.match(tokens, matches);
+		return matches;
+	}
+
+
+	/**
+	 * Finds all the phrases occurring in a list of tokens.
+	 *
+	 * @param tokens the tokens
+	 * @param matches the list where the values of the matched phrases are added
+	 */
+	public void match(List<String> tokens, IntList matches) {
+		if (this.failures == null)
+			throw new IllegalStateException("The automaton has not been built");
+
+		int state = ROOT;
+		for (String token : tokens) {
+			int tokenId = this.tokenIds.getInt(token);
+			if (tokenId == -1) {
+				// no phrase contains the token
+				state = ROOT;
+				continue;
+			}
+
+			int next = this.transitions.get(transitionKey(state, tokenId));
+			while (next == -1 && state != ROOT) {
+				state = this.failures[state];
+				next = this.transitions.get(transitionKey(state, tokenId));
+			}
+			state = next == -1 ? ROOT : next;
+
+			int output = this.values.getInt(state) != -1 ? state : this.outputs[state];
+			while (output != ROOT) {
+				matches.add(this.values.getInt(output));
+				output = this.outputs[output];
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the number of states of the automaton.
+	 *
+	 * @return the number of states
+	 */
+	public int numStates() {
+		return this.parents.size();
+	}
+
+
+	/**
+	 * Gets the approximate number of bytes retained by the automaton, including its tokens.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		long bytes = LexiconTable.objectFootprint(9 * LexiconTable.REFERENCE_SIZE);
+
+		int tokenCapacity = HashCommon.arraySize(this.tokenIds.size(), 0.75f) + 1;
+		bytes += LexiconTable.objectFootprint(32) + LexiconTable.arrayFootprint(tokenCapacity, LexiconTable.REFERENCE_SIZE)
+				+ LexiconTable.arrayFootprint(tokenCapacity, 4);
+		for (String token : this.tokenIds.keySet())
+			bytes += LexiconTable.stringFootprint(token);
+
+		int transitionCapacity = HashCommon.arraySize(this.transitions.size(), 0.75f) + 1;
+		bytes += LexiconTable.objectFootprint(32) + LexiconTable.arrayFootprint(transitionCapacity, 8)
+				+ LexiconTable.arrayFootprint(transitionCapacity, 4);
+
+		for (IntArrayList list : new IntArrayList[]{this.parents, this.labels, this.depths, this.values})
+			bytes += LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE + 4) + LexiconTable.arrayFootprint(list.elements().length, 4);
+
+		if (this.failures != null)
+			bytes += LexiconTable.arrayFootprint(this.failures.length, 4) + LexiconTable.arrayFootprint(this.outputs.length, 4);
+
+		return bytes;
+	}
+
+}
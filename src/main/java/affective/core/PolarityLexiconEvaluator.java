@@ -48,8 +48,11 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 	/** For serialization. */
 	private static final long serialVersionUID = 5921580335557644894L;
 
-	/** A mapping between words and the sentiment label. */	
-	protected Map<String, String> dict;
+	/** The name of the column with the polarities: 1 for positive words, -1 for negative ones and 0 otherwise. */
+	public static final String POLARITY_COLUMN = "polarity";
+
+	/** The map view of the table, created on the first call to getDict. */
+	protected transient Map<String, String> dict;
 
 
 	/**
@@ -60,7 +63,6 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 	 */	
 	public PolarityLexiconEvaluator(String file,String name) {
 		super(file,name);
-		this.dict = new HashMap<String, String>();	
 
 		this.featureNames=new ArrayList<String>();
 		this.featureNames.add(name+"-posCount");
@@ -79,10 +81,18 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 		InputStreamReader xover = new InputStreamReader(gzis);
 		BufferedReader bf = new BufferedReader(xover);
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(POLARITY_COLUMN);
+
 		String line;
 		while ((line = bf.readLine()) != null) {
 			String pair[] = line.split("\t");
-			this.dict.put(pair[0], pair[1]);
+			int row = builder.addWord(pair[0]);
+			if (pair[1].equals("positive"))
+				builder.setScore(row, 0, 1);
+			else if (pair[1].equals("negative"))
+				builder.setScore(row, 0, -1);
+			else
+				builder.setScore(row, 0, 0);
 
 		}
 		bf.close();
@@ -90,6 +100,8 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 		gzis.close();
 		fin.close();
 
+		this.setTable(builder.build());
+
 	}
 
 	/**
@@ -99,15 +111,32 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 	 * @return the value for the word 
 	 */
 	public String retrieveValue(String word) {
-		if (!this.dict.containsKey(word)) {
+		int row = this.table.lookup(word);
+		if (row == -1) {
 			return "not_found";
 		} else {
-			return this.dict.get(word);
+			return polarityName(this.table.getScore(row, 0));
 		}
 
 	}
 
 
+	/**
+	 * Maps a polarity score into its label.
+	 * 
+	 * @param score the score
+	 * @return the label
+	 */
+	protected static String polarityName(double score) {
+		if (score > 0)
+			return "positive";
+		else if (score < 0)
+			return "negative";
+		else
+			return "neutral";
+	}
+
+
 	/* (non-Javadoc)
 	 * @see affective.core.LexiconEvaluator#evaluateTweet(java.util.List)
 	 */
@@ -119,10 +148,13 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 		double posCount = 0.0;
 
 		for (String w : tokens) {
-			String pol = this.retrieveValue(w);
-			if (pol.equals("positive")) {
+			int row = this.table.lookup(w);
+			if (row == -1)
+				continue;
+			double pol = this.table.getScore(row, 0);
+			if (pol > 0) {
 				posCount++;
-			} else if (pol.equals("negative")) {
+			} else if (pol < 0) {
 				negCount++;
 			}
 		}
@@ -135,11 +167,20 @@ public class PolarityLexiconEvaluator extends LexiconEvaluator {
 	
 	
 	/**
-	 * Gets the dictionary mapping the words to their sentiment
+	 * Gets the dictionary mapping the words to their sentiment. The dictionary is a read-only view
+	 * of the lexicon table, words that are neither positive nor negative are mapped to "neutral".
 	 * 
 	 * @return the dictionary.
 	 */	
 	public Map<String, String> getDict() {
+		if (this.dict == null) {
+			this.dict = new TableDict<String>() {
+				@Override
+				protected String value(int row) {
+					return polarityName(table.getScore(row, 0));
+				}
+			};
+		}
 		return this.dict;
 	}	
 	
@@ -0,0 +1,96 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    QuantizationBenchmark.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Random;
+
+import weka.classifiers.Evaluation;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Instances;
+import weka.filters.MultiFilter;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.RemoveType;
+import weka.filters.unsupervised.attribute.TweetToEmbeddingsFeatureVector;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  Compares the quantizations of word embeddings on a tweet classification dataset, e.g., the SemEval
+ *  sentiment datasets in arff format. For each quantization it reports the memory retained by the vectors,
+ *  their reconstruction error and the 10-fold cross-validation performance of a logistic regression
+ *  trained on the averaged embeddings. The last attribute of the dataset is used as the class.
+ *  Usage: java affective.core.QuantizationBenchmark &lt;csv.gz embeddings&gt; &lt;arff dataset&gt;
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class QuantizationBenchmark {
+
+	/**
+	 * Main method for running the benchmark.
+	 *
+	 * @param args the embeddings file in csv.gz format and the dataset in arff format
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java affective.core.QuantizationBenchmark <csv.gz embeddings> <arff dataset>");
+			return;
+		}
+
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(args[1]));
+			Instances data = new Instances(reader);
+			reader.close();
+			data.setClassIndex(data.numAttributes() - 1);
+
+			System.out.println("quantization\tbytes\treconstruction error\taccuracy\tweighted F1\tkappa");
+			for (EmbeddingHandler.Quantization quantization : EmbeddingHandler.Quantization.values()) {
+				CSVEmbeddingHandler handler = new CSVEmbeddingHandler();
+				handler.setEmbeddingsFile(new File(args[0]));
+				handler.setQuantization(quantization);
+				handler.createDict();
+
+				TweetToEmbeddingsFeatureVector embeddings = new TweetToEmbeddingsFeatureVector();
+				embeddings.setEmbeddingHandler(handler);
+				MultiFilter filter = new MultiFilter();
+				filter.setFilters(new Filter[]{embeddings, new RemoveType()});
+
+				FilteredClassifier classifier = new FilteredClassifier();
+				classifier.setFilter(filter);
+				classifier.setClassifier(new Logistic());
+
+				Evaluation evaluation = new Evaluation(data);
+				evaluation.crossValidateModel(classifier, data, 10, new Random(1));
+
+				System.out.println(quantization + "\t" + handler.getMemoryFootprint() + "\t" + handler.getReconstructionError()
+						+ "\t" + evaluation.pctCorrect() + "\t" + evaluation.weightedFMeasure() + "\t" + evaluation.kappa());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+}
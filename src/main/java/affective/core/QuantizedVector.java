@@ -0,0 +1,234 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    QuantizedVector.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  A word vector stored with a scalar quantization and decoded on the fly when its values are read.
+ *  FLOAT16 stores each value as an IEEE 754 half-precision float and INT8 stores each value as a byte
+ *  multiplied by a scale calculated for the vector.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public abstract class QuantizedVector extends AbstractDoubleList {
+
+
+	/**
+	 * Quantizes a vector.
+	 *
+	 * @param vector the vector
+	 * @param quantization the quantization, FLOAT16 or INT8
+	 * @return the quantized vector
+	 */
+	public static QuantizedVector quantize(DoubleList vector, EmbeddingHandler.Quantization quantization) {
+		switch (quantization) {
+		case FLOAT16:
+			return new Float16Vector(vector);
+		case INT8:
+			return new Int8Vector(vector);
+		default:
+			throw new IllegalArgumentException("Unsupported quantization: " + quantization);
+		}
+	}
+
+
+	/**
+	 * Adds the decoded values of the vector divided by a divisor to an array.
+	 *
+	 * @param result the array
+	 * @param offset the position of the first value in the array
+	 * @param divisor the divisor of the values
+	 */
+	public abstract void addTo(double[] result, int offset, double divisor);
+
+
+	/**
+	 * Gets the approximate number of bytes retained by the vector.
+	 *
+	 * @return the number of bytes
+	 */
+	public abstract long getMemoryFootprint();
+
+
+	/**
+	 * Converts a float into a half-precision float rounding to the nearest value.
+	 *
+	 * @param f the float
+	 * @return the bits of the half-precision float
+	 */
+	public static short toFloat16(float f) {
+		int bits = Float.floatToIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		int abs = bits & 0x7FFFFFFF;
+
+		// infinity and NaN
+		if (abs >= 0x7F800000)
+			return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+		// values rounding above the largest half-precision float
+		if (abs >= 0x477FF000)
+			return (short) (sign | 0x7C00);
+		// normal numbers, rounding half to even
+		if (abs >= 0x38800000)
+			return (short) (sign | ((abs + 0xFFF + ((abs >>> 13) & 1) - 0x38000000) >>> 13));
+		// values rounding to zero
+		if (abs < 0x33000000)
+			return (short) sign;
+
+		// subnormal numbers
+		int shift = 126 - (abs >>> 23);
+		int mantissa = (abs & 0x7FFFFF) | 0x800000;
+		int h = mantissa >>> shift;
+		int rest = mantissa & ((1 << shift) - 1);
+		int half = 1 << (shift - 1);
+		if (rest > half || (rest == half && (h & 1) != 0))
+			h++;
+		return (short) (sign | h);
+	}
+
+
+	/**
+	 * Converts a half-precision float into a float.
+	 *
+	 * @param h the bits of the half-precision float
+	 * @return the float
+	 */
+	public static float fromFloat16(short h) {
+		int sign = (h & 0x8000) << 16;
+		int exponent = (h >>> 10) & 0x1F;
+		int mantissa = h & 0x3FF;
+
+		if (exponent == 0x1F)
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		if (exponent == 0) {
+			// subnormal numbers are multiples of 2^-24
+			float value = mantissa * (1.0f / (1 << 24));
+			return sign == 0 ? value : -value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+	}
+
+
+
+	/**
+	 * A vector of half-precision floats.
+	 */
+	public static class Float16Vector extends QuantizedVector {
+
+		/** The values. */
+		protected short[] values;
+
+		/**
+		 * Quantizes a vector.
+		 *
+		 * @param vector the vector
+		 */
+		public Float16Vector(DoubleList vector) {
+			this.values = new short[vector.size()];
+			for (int i = 0; i < this.values.length; i++)
+				this.values[i] = toFloat16((float) vector.getDouble(i));
+		}
+
+		@Override
+		public double getDouble(int index) {
+			return fromFloat16(this.values[index]);
+		}
+
+		@Override
+		public void addTo(double[] result, int offset, double divisor) {
+			for (int i = 0; i < this.values.length; i++)
+				result[offset + i] += fromFloat16(this.values[i]) / divisor;
+		}
+
+		@Override
+		public int size() {
+			return this.values.length;
+		}
+
+		@Override
+		public long getMemoryFootprint() {
+			return LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE) + LexiconTable.arrayFootprint(this.values.length, 2);
+		}
+
+	}
+
+
+
+	/**
+	 * A vector of bytes with a scale, the value i is values[i] * scale.
+	 */
+	public static class Int8Vector extends QuantizedVector {
+
+		/** The quantized values in [-127, 127]. */
+		protected byte[] values;
+
+		/** The scale of the values. */
+		protected float scale;
+
+		/**
+		 * Quantizes a vector. The scale maps the largest absolute value of the vector to 127.
+		 *
+		 * @param vector the vector
+		 */
+		public Int8Vector(DoubleList vector) {
+			double max = 0;
+			for (int i = 0; i < vector.size(); i++)
+				max = Math.max(max, Math.abs(vector.getDouble(i)));
+			this.scale = (float) (max / 127);
+
+			this.values = new byte[vector.size()];
+			if (this.scale > 0) {
+				for (int i = 0; i < this.values.length; i++) {
+					long q = Math.round(vector.getDouble(i) / this.scale);
+					this.values[i] = (byte) Math.max(-127, Math.min(127, q));
+				}
+			}
+		}
+
+		@Override
+		public double getDouble(int index) {
+			return this.values[index] * this.scale;
+		}
+
+		@Override
+		public void addTo(double[] result, int offset, double divisor) {
+			for (int i = 0; i < this.values.length; i++)
+				result[offset + i] += this.values[i] * this.scale / divisor;
+		}
+
+		@Override
+		public int size() {
+			return this.values.length;
+		}
+
+		@Override
+		public long getMemoryFootprint() {
+			return LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE + 4) + LexiconTable.arrayFootprint(this.values.length, 1);
+		}
+
+	}
+
+}
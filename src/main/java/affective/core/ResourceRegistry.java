@@ -0,0 +1,297 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ResourceRegistry.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  A registry of the resources (lexicons, word embeddings, ...) loaded by the filters of the package.
+ *  Copies of a filter, like the ones created by Weka for each fold of a cross-validation, obtain
+ *  the resource already loaded in this JVM instead of loading or deserializing it again.
+ *  Resources are held through soft references, so they are evicted once no filter uses them and
+ *  memory is needed. The entries of evicted resources are removed from the registry the next time
+ *  it is accessed. Shared resources must not be modified after being loaded.
+ *  Resources can also be loaded in the background on a bounded pool of threads, so that independent
+ *  resources are loaded concurrently.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class ResourceRegistry {
+
+	/** The separator of the parts of a key. */
+	protected static final String KEY_SEPARATOR = "\u0000";
+
+	/** The registered resources. */
+	protected static final ConcurrentMap<String, Entry> resources = new ConcurrentHashMap<String, Entry>();
+
+	/** The references of the resources cleared by the garbage collector. */
+	protected static final ReferenceQueue<Object> clearedResources = new ReferenceQueue<Object>();
+
+	/** The executor loading resources in the background, created when first needed. */
+	protected static ExecutorService executor;
+
+
+	/**
+	 * Loads a resource that is not registered.
+	 *
+	 * @param <T> the type of the resource
+	 */
+	public interface Loader<T> {
+
+		/**
+		 * Loads the resource.
+		 *
+		 * @return the resource
+		 * @throws IOException if the resource cannot be loaded
+		 */
+		T load() throws IOException;
+	}
+
+
+	/**
+	 * An entry of the registry. Entries are used as locks so that a resource is loaded only once.
+	 */
+	protected static class Entry {
+
+		/** The key of the entry. */
+		protected String key;
+
+		/** The resource. */
+		protected ResourceReference resource;
+
+		/** True once the entry has been removed from the registry. */
+		protected boolean removed;
+
+		/**
+		 * Creates an empty entry.
+		 *
+		 * @param key the key of the entry
+		 */
+		protected Entry(String key) {
+			this.key = key;
+		}
+	}
+
+
+	/**
+	 * A soft reference to a resource, which knows its entry so that the entry can be removed once the
+	 * resource is cleared.
+	 */
+	protected static class ResourceReference extends SoftReference<Object> {
+
+		/** The entry holding the reference. */
+		protected Entry entry;
+
+		/**
+		 * Creates a reference registered in the queue of cleared resources.
+		 *
+		 * @param resource the resource
+		 * @param entry the entry holding the reference
+		 */
+		protected ResourceReference(Object resource, Entry entry) {
+			super(resource, clearedResources);
+			this.entry = entry;
+		}
+	}
+
+
+	/**
+	 * Gets a resource, loading it if it is not registered or if it was evicted.
+	 *
+	 * @param <T> the type of the resource
+	 * @param key the key of the resource
+	 * @param loader the loader used when the resource is not registered
+	 * @return the resource
+	 * @throws IOException if the resource cannot be loaded
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String key, Loader<T> loader) throws IOException {
+		expungeCleared();
+
+		while (true) {
+			Entry entry = resources.get(key);
+			if (entry == null) {
+				Entry newEntry = new Entry(key);
+				entry = resources.putIfAbsent(key, newEntry);
+				if (entry == null)
+					entry = newEntry;
+			}
+
+			synchronized (entry) {
+				// the entry was removed while waiting for it
+				if (entry.removed)
+					continue;
+
+				Object resource = entry.resource == null ? null : entry.resource.get();
+				if (resource == null) {
+					try {
+						resource = loader.load();
+					} catch (IOException e) {
+						// an entry without resource is not kept
+						remove(entry);
+						throw e;
+					} catch (RuntimeException e) {
+						remove(entry);
+						throw e;
+					}
+					entry.resource = new ResourceReference(resource, entry);
+				}
+				return (T) resource;
+			}
+		}
+	}
+
+
+	/**
+	 * Removes the entries whose resources have been cleared by the garbage collector. An entry whose 
+	 * resource has been loaded again is kept.
+	 */
+	protected static void expungeCleared() {
+		Reference<?> reference;
+		while ((reference = clearedResources.poll()) != null) {
+			Entry entry = ((ResourceReference) reference).entry;
+			synchronized (entry) {
+				if (entry.resource == reference)
+					remove(entry);
+			}
+		}
+	}
+
+
+	/**
+	 * Removes an entry from the registry. The caller holds the lock of the entry.
+	 *
+	 * @param entry the entry
+	 */
+	protected static void remove(Entry entry) {
+		entry.removed = true;
+		resources.remove(entry.key, entry);
+	}
+
+
+	/**
+	 * Starts loading a resource in the background. A later call to {@link #get(String, Loader)} with
+	 * the same key waits for the background load instead of loading the resource again.
+	 *
+	 * @param <T> the type of the resource
+	 * @param key the key of the resource
+	 * @param loader the loader used when the resource is not registered
+	 * @return the future resource, failing with an IOException if the resource cannot be loaded
+	 */
+	public static <T> Future<T> submit(final String key, final Loader<T> loader) {
+		return getExecutor().submit(new Callable<T>() {
+			@Override
+			public T call() throws IOException {
+				return get(key, loader);
+			}
+		});
+	}
+
+
+	/**
+	 * Gets the executor loading resources in the background. The number of threads is bounded by the
+	 * number of available processors and the threads do not prevent the JVM from exiting.
+	 *
+	 * @return the executor
+	 */
+	protected static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "AffectiveTweets-resource-loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+
+	/**
+	 * Removes a resource from the registry.
+	 *
+	 * @param key the key of the resource
+	 */
+	public static void remove(String key) {
+		Entry entry = resources.get(key);
+		if (entry != null) {
+			synchronized (entry) {
+				remove(entry);
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all the resources from the registry.
+	 */
+	public static void clear() {
+		for (String key : resources.keySet())
+			remove(key);
+	}
+
+
+	/**
+	 * Creates a key from the parts identifying a resource, e.g., its file, its stemmer and its options.
+	 *
+	 * @param parts the parts of the key
+	 * @return the key
+	 */
+	public static String key(Object... parts) {
+		StringBuilder key = new StringBuilder();
+		for (Object part : parts) {
+			if (key.length() > 0)
+				key.append(KEY_SEPARATOR);
+			key.append(part);
+		}
+		return key.toString();
+	}
+
+
+	/**
+	 * Creates the part of a key identifying a file. The size and the modification time of the file
+	 * are included, so a file that is modified is loaded again.
+	 *
+	 * @param file the file
+	 * @return the part of the key
+	 */
+	public static String fileKey(File file) {
+		return key(file.getAbsolutePath(), file.length(), file.lastModified());
+	}
+
+}
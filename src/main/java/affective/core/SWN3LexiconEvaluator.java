@@ -46,8 +46,8 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 	/** For serialization. */
 	private static final long serialVersionUID = 1576067300486821206L;
 
-	/** The dictionary. */
-	protected Map<String, Double> dict;
+	/** The name of the column with the scores. */
+	public static final String SCORE_COLUMN = "score";
 
 	/**
 	 * initializes the Object
@@ -58,8 +58,6 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 	public SWN3LexiconEvaluator(String path, String name) {
 		super(path,name);
 
-		this.dict = new HashMap<String, Double>();	
-
 		this.featureNames=new ArrayList<String>();
 		this.featureNames.add(name+"-posScore");
 		this.featureNames.add(name+"-negScore");
@@ -79,6 +77,8 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 		BufferedReader bf = new BufferedReader(xover);
 
 
+		LexiconTable.Builder builder = new LexiconTable.Builder(SCORE_COLUMN);
+
 		String line = "";
 
 		// discard comments
@@ -103,12 +103,7 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 				// More popular word receive a higher weight
 				int rank = Integer.parseInt(w_n[1]);
 
-				if (this.dict.containsKey(word)) {
-					Double prevScore=this.dict.get(word);
-					this.dict.put(word, prevScore + polScore/(1+rank));
-				} else {
-					this.dict.put(word, polScore/(1+rank));
-				}
+				builder.addScore(builder.addWord(word), 0, polScore/(1+rank));
 			}
 		}
 
@@ -116,6 +111,8 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 		xover.close();
 		gzis.close();
 		fin.close();
+
+		this.setTable(builder.build());
 	}
 
 
@@ -129,8 +126,9 @@ public class SWN3LexiconEvaluator extends LexiconEvaluator{
 		double negScore = 0;
 		for (String w : tokens) {
 
-			if (this.dict.containsKey(w)) {
-				double value = this.dict.get(w);
+			int row = this.table.lookup(w);
+			if (row != -1) {
+				double value = this.table.getScore(row, 0);
 				if (value > 0) {
 					posScore += value;
 				} else {
@@ -0,0 +1,321 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TweetMatrix.java
+ *    Copyright (C) 2018 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.io.Serializable;
+
+/**
+ *  <!-- globalinfo-start -->
+ *  An immutable matrix of tweet vectors in compressed sparse row format. The features are identified by
+ *  int ids and the values of all the rows are stored in two contiguous arrays, so the vectors of millions
+ *  of tweets take two arrays instead of millions of hash maps. The matrix is created with a Builder.
+ * <!-- globalinfo-end -->
+ *
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class TweetMatrix implements Serializable {
+
+	/** For serialization. */
+	private static final long serialVersionUID = 2871394640238575013L;
+
+	/** The name of each feature id. */
+	protected String[] featureNames;
+
+	/** The position of the first value of each row, followed by the number of values. */
+	protected int[] rowStarts;
+
+	/** The feature id of each value. */
+	protected int[] features;
+
+	/** The values. */
+	protected float[] values;
+
+
+	/**
+	 * Creates a matrix from its arrays.
+	 *
+	 * @param featureNames the name of each feature id
+	 * @param rowStarts the position of the first value of each row, followed by the number of values
+	 * @param features the feature id of each value
+	 * @param values the values
+	 */
+	protected TweetMatrix(String[] featureNames, int[] rowStarts, int[] features, float[] values) {
+		this.featureNames = featureNames;
+		this.rowStarts = rowStarts;
+		this.features = features;
+		this.values = values;
+	}
+
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	public int numRows() {
+		return this.rowStarts.length - 1;
+	}
+
+
+	/**
+	 * Gets the number of distinct features.
+	 *
+	 * @return the number of features
+	 */
+	public int numFeatures() {
+		return this.featureNames.length;
+	}
+
+
+	/**
+	 * Gets the name of a feature.
+	 *
+	 * @param feature the feature id
+	 * @return the name
+	 */
+	public String getFeatureName(int feature) {
+		return this.featureNames[feature];
+	}
+
+
+	/**
+	 * Gets the position of the first value of a row.
+	 *
+	 * @param row the row
+	 * @return the position
+	 */
+	public int rowStart(int row) {
+		return this.rowStarts[row];
+	}
+
+
+	/**
+	 * Gets the position after the last value of a row.
+	 *
+	 * @param row the row
+	 * @return the position
+	 */
+	public int rowEnd(int row) {
+		return this.rowStarts[row + 1];
+	}
+
+
+	/**
+	 * Gets the feature id of a value.
+	 *
+	 * @param pos the position of the value
+	 * @return the feature id
+	 */
+	public int feature(int pos) {
+		return this.features[pos];
+	}
+
+
+	/**
+	 * Gets a value.
+	 *
+	 * @param pos the position of the value
+	 * @return the value
+	 */
+	public float value(int pos) {
+		return this.values[pos];
+	}
+
+
+	/**
+	 * Maps the feature ids to the indexes of the attributes of a dataset.
+	 *
+	 * @param dictionary the index of the attribute of each feature name
+	 * @return the index of the attribute of each feature id, -1 for the features that are not in the dictionary
+	 */
+	public int[] attributeIndexes(Object2IntMap<String> dictionary) {
+		int[] indexes = new int[this.featureNames.length];
+		for (int f = 0; f < indexes.length; f++)
+			indexes[f] = dictionary.containsKey(this.featureNames[f]) ? dictionary.getInt(this.featureNames[f]) : -1;
+		return indexes;
+	}
+
+
+	/**
+	 * Adds the values of a row divided by a divisor to an array.
+	 *
+	 * @param row the row
+	 * @param attIndexes the position in the array of each feature id, -1 for the features that are skipped
+	 * @param result the array
+	 * @param divisor the divisor of the values
+	 */
+	public void addTo(int row, int[] attIndexes, double[] result, double divisor) {
+		for (int pos = this.rowStarts[row]; pos < this.rowStarts[row + 1]; pos++) {
+			int attIndex = attIndexes[this.features[pos]];
+			if (attIndex != -1)
+				result[attIndex] += this.values[pos] / divisor;
+		}
+	}
+
+
+	/**
+	 * Gets the approximate number of bytes retained by the matrix.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		long bytes = LexiconTable.objectFootprint(4 * LexiconTable.REFERENCE_SIZE)
+				+ LexiconTable.arrayFootprint(this.featureNames.length, LexiconTable.REFERENCE_SIZE)
+				+ LexiconTable.arrayFootprint(this.rowStarts.length, 4) + LexiconTable.arrayFootprint(this.features.length, 4)
+				+ LexiconTable.arrayFootprint(this.values.length, 4);
+		for (String name : this.featureNames)
+			bytes += LexiconTable.stringFootprint(name);
+		return bytes;
+	}
+
+
+
+	/**
+	 * Builds a matrix by adding its rows one by one.
+	 */
+	public static class Builder {
+
+		/** The id of each feature name. */
+		protected Object2IntOpenHashMap<String> featureIds = new Object2IntOpenHashMap<String>();
+
+		/** The name of each feature id. */
+		protected ObjectArrayList<String> featureNames = new ObjectArrayList<String>();
+
+		/** The position of the first value of each row, followed by the number of values. */
+		protected IntArrayList rowStarts = IntArrayList.wrap(new int[] { 0 });
+
+		/** The feature id of each value. */
+		protected IntArrayList features = new IntArrayList();
+
+		/** The values. */
+		protected FloatArrayList values = new FloatArrayList();
+
+
+		/**
+		 * Adds a row.
+		 *
+		 * @param vector the values of the row by feature name
+		 * @return the index of the row
+		 */
+		public int addRow(Object2IntMap<String> vector) {
+			return this.addRow(this.toRow(vector));
+		}
+
+
+		/**
+		 * Adds a row created by toRow.
+		 *
+		 * @param row the row
+		 * @return the index of the row
+		 */
+		public int addRow(Row row) {
+			this.features.addElements(this.features.size(), row.features);
+			this.values.addElements(this.values.size(), row.values);
+			this.rowStarts.add(this.features.size());
+			return this.rowStarts.size() - 2;
+		}
+
+
+		/**
+		 * Converts a vector into a row with the feature ids of this builder, without adding it to the matrix.
+		 *
+		 * @param vector the values of the row by feature name
+		 * @return the row
+		 */
+		public Row toRow(Object2IntMap<String> vector) {
+			int[] rowFeatures = new int[vector.size()];
+			float[] rowValues = new float[vector.size()];
+			int pos = 0;
+			for (Object2IntMap.Entry<String> entry : vector.object2IntEntrySet()) {
+				String name = entry.getKey();
+				int feature;
+				if (this.featureIds.containsKey(name))
+					feature = this.featureIds.getInt(name);
+				else {
+					feature = this.featureNames.size();
+					this.featureIds.put(name, feature);
+					this.featureNames.add(name);
+				}
+				rowFeatures[pos] = feature;
+				rowValues[pos] = entry.getIntValue();
+				pos++;
+			}
+			return new Row(rowFeatures, rowValues);
+		}
+
+
+		/**
+		 * Gets the number of rows added so far.
+		 *
+		 * @return the number of rows
+		 */
+		public int numRows() {
+			return this.rowStarts.size() - 1;
+		}
+
+
+		/**
+		 * Creates the matrix of the rows added so far.
+		 *
+		 * @return the matrix
+		 */
+		public TweetMatrix build() {
+			return new TweetMatrix(this.featureNames.toArray(new String[this.featureNames.size()]), this.rowStarts.toIntArray(),
+					this.features.toIntArray(), this.values.toFloatArray());
+		}
+
+	}
+
+
+
+	/**
+	 * A row kept outside the matrix, for instance in a sample from which only some rows are added.
+	 */
+	public static class Row {
+
+		/** The feature id of each value. */
+		protected int[] features;
+
+		/** The values. */
+		protected float[] values;
+
+		/**
+		 * Creates a row.
+		 *
+		 * @param features the feature id of each value
+		 * @param values the values
+		 */
+		protected Row(int[] features, float[] values) {
+			this.features = features;
+			this.values = values;
+		}
+
+	}
+
+}
@@ -28,6 +28,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import weka.core.stemmers.Stemmer;
 import weka.core.stopwords.StopwordsHandler;
@@ -47,43 +51,90 @@ public class Utils {
 
 	
 
+	/** The prefix added to the tokens occurring in a negated context. */
+	public static final String NEGATION_PREFIX = "NEGTOKEN-";
+
+	/** The characters forming the punctuation marks that end the scope of a negation. */
+	protected static final boolean[] SCOPE_END_CHARS = new boolean[128];
+
+	static {
+		for (char c : ".|,:;!?".toCharArray())
+			SCOPE_END_CHARS[c] = true;
+	}
+
+
 	/**
-	 * Adds a negation prefix to the tokens that follow a negation word until
-	 * the next punctuation mark.
+	 * Checks if a token is a punctuation mark ending the scope of a negation, i.e., a non-empty 
+	 * sequence of the characters . | , : ; ! ?
+	 * 
+	 * @param token the token
+	 * @return true if the token ends the scope of a negation
+	 */
+	public static boolean isScopeEnd(String token) {
+		if (token.length() == 0)
+			return false;
+		for (int i = 0; i < token.length(); i++) {
+			char c = token.charAt(i);
+			if (c >= SCOPE_END_CHARS.length || !SCOPE_END_CHARS[c])
+				return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Calculates which tokens occur in a negated context: the tokens that follow a negation word 
+	 * until the next punctuation mark, which is included in the context.
 	 * 
 	 * @param tokens
-	 *            the list of tokens to negate
+	 *            the list of tokens
 	 * @param set
 	 *            the set with the negated words to use
-	 * @return the negated tokens
+	 * @param mask
+	 *            an array that is reused if it has room for all the tokens, it can be null
+	 * @return the mask, true for the tokens in a negated context
 	 */
-	static public List<String> negateTokens(List<String> tokens, Set<String> set) {
-		List<String> negTokens = new ArrayList<String>();
+	public static boolean[] negationMask(List<String> tokens, Set<String> set, boolean[] mask) {
+		if (mask == null || mask.length < tokens.size())
+			mask = new boolean[tokens.size()];
 
 		// flag indicating negation state
 		boolean inNegation = false;
 
+		int i = 0;
 		for (String token : tokens) {
-
 			// when we find a negation word for the first time
-			if (set.contains(token) && !inNegation) {
+			if (!inNegation && set.contains(token)) {
 				inNegation = true;
-				negTokens.add(token);
+				mask[i++] = false;
 				continue;
 			}
 
-			// if we are in a negation context with add a prefix
-			if (inNegation) {
-				negTokens.add("NEGTOKEN-" + token);
-				// the negation context ends whend finding a punctuation match
-				if (token.matches("[\\.|,|:|;|!|\\?]+"))
-					inNegation = false;
-			} else {
-				negTokens.add(token);
-			}
+			mask[i++] = inNegation;
+			// the negation context ends when finding a punctuation mark
+			if (inNegation && isScopeEnd(token))
+				inNegation = false;
 		}
-		return negTokens;
+		return mask;
+	}
 
+
+	/**
+	 * Adds a negation prefix to the tokens that follow a negation word until
+	 * the next punctuation mark.
+	 * 
+	 * @param tokens
+	 *            the list of tokens to negate
+	 * @param set
+	 *            the set with the negated words to use
+	 * @return the negated tokens
+	 */
+	static public List<String> negateTokens(List<String> tokens, Set<String> set) {
+		boolean[] negated = negationMask(tokens, set, null);
+		List<String> negTokens = new ArrayList<String>(tokens.size());
+		for (int i = 0; i < tokens.size(); i++)
+			negTokens.add(negated[i] ? NEGATION_PREFIX + tokens.get(i) : tokens.get(i));
+		return negTokens;
 	}
 
 
@@ -163,6 +214,41 @@ public class Utils {
 	}
 
 
+	/**
+	 * Adds the token n-grams of a sequence of tokens to a vector of attributes. The names of the 
+	 * attributes are built directly, tokens in a negated context get the negation prefix.
+	 * For n=1 the result is the same as calculateTermFreq(negateTokens(tokens, set), prefix, freqWeights) and 
+	 * for n&gt;1 as calculateTermFreq(calculateTokenNgram(negateTokens(tokens, set), n), prefix, freqWeights).
+	 * 
+	 * @param vector the vector where the attributes are added
+	 * @param tokens the input tokens 
+	 * @param negated the negation mask of the tokens or null if no token is negated
+	 * @param n the size of the n-grams
+	 * @param prefix the prefix of each vector attribute
+	 * @param freqWeights true for considering term-frequency weights (booleans weights are used otherwise)
+	 */
+	public static void addTokenNgrams(Object2IntMap<String> vector, List<String> tokens, boolean[] negated, int n, 
+			String prefix, boolean freqWeights) {
+		StringBuilder name = new StringBuilder(prefix);
+		for (int i = 0; i <= tokens.size() - n; i++) {
+			name.setLength(prefix.length());
+			for (int j = i; j < i + n; j++) {
+				if (negated != null && negated[j])
+					name.append(NEGATION_PREFIX);
+				name.append(tokens.get(j));
+				if (j < i + n - 1)
+					name.append('-');
+			}
+
+			String attName = name.toString();
+			if (freqWeights)
+				vector.put(attName, vector.getInt(attName) + 1);
+			else
+				vector.put(attName, 1);
+		}
+	}
+
+
 	/**
 	 * Calculates character n-grams from a String.
 	 * 
@@ -239,4 +325,44 @@ public class Utils {
 
 
 
+	/**
+	 * Runs a list of tasks and returns their results in the order of the tasks.
+	 * 
+	 * @param pool the threads
+	 * @param tasks the tasks
+	 * @return the results
+	 * @throws Exception the exception thrown by a task
+	 */
+	public static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) throws Exception {
+		List<T> results=new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> task : pool.invokeAll(tasks))
+				results.add(task.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+		return results;
+	}
+
+
+
+	/**
+	 * Derives the seed of the random generator of one item from a global seed, so that each item can be generated
+	 * independently of the others. Consecutive items receive unrelated seeds (the SplitMix64 finaliser).
+	 *
+	 * @param seed the global seed
+	 * @param index the index of the item
+	 * @return the seed of the item
+	 */
+	public static long itemSeed(long seed, long index) {
+		long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+
 }
@@ -22,6 +22,8 @@
 package weka.filters.unsupervised.attribute;
 
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
@@ -29,6 +31,7 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -38,6 +41,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 
 
@@ -49,6 +55,7 @@ import weka.core.OptionMetadata;
 import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Type;
+import affective.core.TweetMatrix;
 
 
 
@@ -76,11 +83,14 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 
 
 
-	/** List of tweets having at least one positive word and no negative words. */
-	protected ObjectList<Object2IntMap<String>> posTweets;
+	/** The vectors of the annotated tweets. */
+	protected TweetMatrix tweets;
 
-	/** List of tweets having at least one negative word and no positive words. */
-	protected ObjectList<Object2IntMap<String>> negTweets;
+	/** The rows of the tweets having at least one positive word and no negative words. */
+	protected IntList posTweets;
+
+	/** The rows of the tweets having at least one negative word and no positive words. */
+	protected IntList negTweets;
 
 
 	/** The number of tweets sampled in each centroid. */
@@ -97,6 +107,15 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 	/** True for discarding tweets containing both positive and negative words during the annotation phase. */
 	protected boolean exclusiveSets=false;
 
+	/** The largest number of tweets of each polarity retained by the annotation phase, 0 for retaining all of them. */
+	protected int maxPoolSize=0;
+
+	/** The number of threads generating the instances. */
+	protected int numThreads=1;
+
+	/** The number of instances generated by each task. */
+	protected static final int INSTANCE_BLOCK_SIZE = 256;
+
 
 
 
@@ -154,8 +173,19 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 			e1.printStackTrace();
 		}
 
-		this.posTweets=new ObjectArrayList<Object2IntMap<String>>();
-		this.negTweets=new ObjectArrayList<Object2IntMap<String>>();
+		this.posTweets=new IntArrayList();
+		this.negTweets=new IntArrayList();
+
+		// a tweet in both sets is stored once
+		TweetMatrix.Builder builder=new TweetMatrix.Builder();
+
+		// the reservoirs of the tweets of each polarity when maxPoolSize is positive
+		ObjectList<TweetMatrix.Row> posPool=new ObjectArrayList<TweetMatrix.Row>();
+		ObjectList<TweetMatrix.Row> negPool=new ObjectArrayList<TweetMatrix.Row>();
+		long numPosSeen=0;
+		long numNegSeen=0;
+		// the reservoirs do not share the random numbers of the generated instances
+		Random r=new Random(affective.core.Utils.itemSeed(this.m_randomSeed, -1));
 
 		this.attributeCount= new Object2IntOpenHashMap<String>(); 
 
@@ -233,14 +263,42 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 
 			Object2IntMap<String> docVec=this.calculateDocVec(tokens);
 
-			if(condition){			
+			if(condition && this.maxPoolSize<=0){			
+				int row=builder.addRow(docVec);
 
 				if(hasPos)
-					this.posTweets.add(docVec);
+					this.posTweets.add(row);
 				if(hasNeg)
-					this.negTweets.add(docVec);
+					this.negTweets.add(row);
 
 			}
+			else if(condition){
+				// a tweet retained by both reservoirs is shared
+				TweetMatrix.Row row=null;
+				if(hasPos){
+					numPosSeen++;
+					int slot=this.reservoirSlot(posPool.size(), numPosSeen, r);
+					if(slot!=-1){
+						row=builder.toRow(docVec);
+						if(slot==posPool.size())
+							posPool.add(row);
+						else
+							posPool.set(slot, row);
+					}
+				}
+				if(hasNeg){
+					numNegSeen++;
+					int slot=this.reservoirSlot(negPool.size(), numNegSeen, r);
+					if(slot!=-1){
+						if(row==null)
+							row=builder.toRow(docVec);
+						if(slot==negPool.size())
+							negPool.add(row);
+						else
+							negPool.set(slot, row);
+					}
+				}
+			}
 			// adds the attributes to the List of attributes
 			for(String docAtt:docVec.keySet()){
 				if(this.attributeCount.containsKey(docAtt)){
@@ -255,7 +313,50 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 
 		}
 
+		if(this.maxPoolSize>0){
+			Reference2IntOpenHashMap<TweetMatrix.Row> rows=new Reference2IntOpenHashMap<TweetMatrix.Row>();
+			for(TweetMatrix.Row row:posPool)
+				this.posTweets.add(this.addPooledRow(builder, rows, row));
+			for(TweetMatrix.Row row:negPool)
+				this.negTweets.add(this.addPooledRow(builder, rows, row));
+		}
+
+		this.tweets=builder.build();
+
+	}
+
 
+	/**
+	 * Decides where a tweet goes in a reservoir of maxPoolSize tweets, so that the reservoir is a uniform 
+	 * sample of all the tweets offered to it.
+	 * 
+	 * @param poolSize the number of tweets in the reservoir
+	 * @param numSeen the number of tweets offered to the reservoir, including this one
+	 * @param r the random number generator
+	 * @return the slot of the tweet, poolSize for adding it, or -1 for discarding it
+	 */
+	protected int reservoirSlot(int poolSize, long numSeen, Random r){
+		if(poolSize<this.maxPoolSize)
+			return poolSize;
+		long slot=(long) (r.nextDouble()*numSeen);
+		return slot<this.maxPoolSize ? (int) slot : -1;
+	}
+
+
+	/**
+	 * Adds a row retained by a reservoir to the matrix, once even if both reservoirs retained it.
+	 * 
+	 * @param builder the builder of the matrix
+	 * @param rows the index of the rows already added
+	 * @param row the row
+	 * @return the index of the row in the matrix
+	 */
+	protected int addPooledRow(TweetMatrix.Builder builder, Reference2IntOpenHashMap<TweetMatrix.Row> rows, TweetMatrix.Row row){
+		if(rows.containsKey(row))
+			return rows.getInt(row);
+		int index=builder.addRow(row);
+		rows.put(row, index);
+		return index;
 	}
 
 	/* (non-Javadoc)
@@ -319,73 +420,108 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 		// The first batch creates de labelled data		
 		if(!this.isFirstBatchDone()){
 			result = getOutputFormat();
+			this.generateInstances(result);
+		}
 
-			Random r=new Random(this.m_randomSeed);
-
+		// Second batch maps tweets into the original feature space
+		else{
+			result=this.mapTargetInstance(instances, this.numThreads);
 
-			for(int i=0;i<this.numPosInstances;i++){
-				double[] values = new double[result.numAttributes()];
-				for(int j=0;j<this.getTweetsPerCentroid();j++){
-					int randomIndex=r.nextInt(this.posTweets.size()); 
-					Object2IntMap<String> vec=this.posTweets.get(randomIndex);
-					for(String innerAtt:vec.keySet()){
-						if(this.m_Dictionary.containsKey(innerAtt)){
-							int attIndex=this.m_Dictionary.getInt(innerAtt);
-							// we normalise the value by the number of documents
-							values[attIndex]+=((double)vec.getInt(innerAtt))/this.getTweetsPerCentroid();
-						}
-					}				
+		}
 
-				}
-				values[result.numAttributes()-1]=1;
 
-				Instance inst=new SparseInstance(1, values);
 
+		return result;
 
-				inst.setDataset(result);
+	}
 
-				result.add(inst);	
 
-			}
 
-			for(int i=0;i<this.numNegInstances;i++){
 
-				double[] values = new double[result.numAttributes()];
-
-				for(int j=0;j<this.getTweetsPerCentroid();j++){
-					int randomIndex=r.nextInt(this.negTweets.size()); 
-					Object2IntMap<String> vec=this.negTweets.get(randomIndex);
-					for(String innerAtt:vec.keySet()){
-						if(this.m_Dictionary.containsKey(innerAtt)){
-							int attIndex=this.m_Dictionary.getInt(innerAtt);
-							// we normalise the value by the number of documents
-							values[attIndex]+=((double)vec.getInt(innerAtt))/this.getTweetsPerCentroid();
+	/**
+	 * Generates the positive instances followed by the negative ones. The instances are split into blocks of 
+	 * INSTANCE_BLOCK_SIZE instances, which are processed by numThreads threads in rounds of 2*numThreads blocks. 
+	 * Each instance samples its tweets with its own random generator, seeded from the random seed and the 
+	 * position of the instance, so the output does not depend on the number of threads.
+	 * 
+	 * @param result the output format, where the instances are added
+	 * @throws Exception if the generation of a block fails
+	 */
+	protected void generateInstances(final Instances result) throws Exception {
+
+		// the index of the attribute of each feature of the tweets, -1 for attributes that are not valid
+		final int[] attIndexes=this.tweets.attributeIndexes(this.m_Dictionary);
+
+		int numInstances=this.numPosInstances+this.numNegInstances;
+
+		ExecutorService pool=this.numThreads>1 ? Executors.newFixedThreadPool(this.numThreads) : null;
+		try{
+			int roundSize=2*Math.max(1, this.numThreads)*INSTANCE_BLOCK_SIZE;
+			for(int roundStart=0;roundStart<numInstances;roundStart+=roundSize){
+				int roundEnd=Math.min(roundStart+roundSize, numInstances);
+
+				List<Callable<ObjectList<Instance>>> blocks=new ArrayList<Callable<ObjectList<Instance>>>();
+				for(int start=roundStart;start<roundEnd;start+=INSTANCE_BLOCK_SIZE){
+					final int blockStart=start;
+					final int blockEnd=Math.min(start+INSTANCE_BLOCK_SIZE, roundEnd);
+					blocks.add(new Callable<ObjectList<Instance>>() {
+						@Override
+						public ObjectList<Instance> call() {
+							ObjectList<Instance> instances=new ObjectArrayList<Instance>();
+							for(int i=blockStart;i<blockEnd;i++)
+								instances.add(generateInstance(i, attIndexes, result.numAttributes()));
+							return instances;
 						}
-					}				
-
+					});
 				}
-				values[result.numAttributes()-1]=0;
-
-				Instance inst=new SparseInstance(1, values);
-
-
-				inst.setDataset(result);
-
-				result.add(inst);	
 
+				List<ObjectList<Instance>> instances;
+				if(pool==null){
+					instances=new ArrayList<ObjectList<Instance>>();
+					for(Callable<ObjectList<Instance>> block:blocks)
+						instances.add(block.call());
+				}
+				else
+					instances=affective.core.Utils.invokeAll(pool, blocks);
+
+				for(ObjectList<Instance> blockInstances:instances){
+					for(Instance inst:blockInstances){
+						inst.setDataset(result);
+						result.add(inst);
+					}
+				}
 			}
+		} finally {
+			if(pool!=null)
+				pool.shutdown();
 		}
+	}
 
-		// Second batch maps tweets into the original feature space
-		else{
-			result=this.mapTargetInstance(instances);
 
-		}
+	/**
+	 * Generates one instance by averaging tweets sampled with replacement. 
+	 * 
+	 * @param i the position of the instance, the first numPosInstances ones are positive and the rest negative
+	 * @param attIndexes the index of the attribute of each feature of the tweets, -1 for attributes that are not valid
+	 * @param numAttributes the number of attributes of the output, the last one being the class
+	 * @return the instance
+	 */
+	protected Instance generateInstance(int i, int[] attIndexes, int numAttributes){
 
+		boolean positive=i<this.numPosInstances;
+		IntList sampledTweets=positive ? this.posTweets : this.negTweets;
 
+		Random r=new Random(affective.core.Utils.itemSeed(this.m_randomSeed, i));
 
-		return result;
+		double[] values = new double[numAttributes];
+		for(int j=0;j<this.getTweetsPerCentroid();j++){
+			int randomIndex=r.nextInt(sampledTweets.size()); 
+			// we normalise the value by the number of documents
+			this.tweets.addTo(sampledTweets.getInt(randomIndex), attIndexes, values, this.getTweetsPerCentroid());
+		}
+		values[numAttributes-1]=positive ? 1 : 0;
 
+		return new SparseInstance(1, values);
 	}
 
 
@@ -450,6 +586,36 @@ public class ASA  extends DistantSupervisionSyntheticFilter {
 
 
 
+	@OptionMetadata(displayName = "numThreads",
+			description = "The number of threads generating the instances. The output does not depend on the number of threads. Default: 1.", 
+			commandLineParamName = "threads", 
+			commandLineParamSynopsis = "-threads <int>",
+			displayOrder = 19)
+	public int getNumThreads() {
+		return numThreads;
+	}
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+
+
+
+	@OptionMetadata(displayName = "maxPoolSize",
+			description = "The largest number of positive and of negative tweets retained for sampling. Larger sets are replaced by a uniform sample of this size, so the memory does not grow with the number of tweets (0 for retaining all the tweets). \t default: 0", 
+			commandLineParamName = "maxpool", 
+			commandLineParamSynopsis = "-maxpool <int>",
+			displayOrder = 20)
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+
+
+
 	/**
 	 * Main method for testing this class.
 	 *
@@ -22,21 +22,30 @@
 
 package weka.filters.unsupervised.attribute;
 
-import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectList;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionMetadata;
+import weka.core.SerializedObject;
 import weka.core.SparseInstance;
 import weka.core.WekaPackageManager;
+import weka.core.stemmers.Stemmer;
+import weka.core.stopwords.StopwordsHandler;
+import weka.core.tokenizers.Tokenizer;
 import affective.core.ArffLexiconEvaluator;
 
 
@@ -128,6 +137,9 @@ public abstract class DistantSupervisionSyntheticFilter extends TweetToFeatureVe
 	/** LexiconEvaluator for sentiment prefixes. */
 	protected ArffLexiconEvaluator lex=new ArffLexiconEvaluator();
 
+	/** The number of tweets of the second batch mapped by each task. */
+	protected static final int MAPPING_BLOCK_SIZE = 256;
+
 
 
 
@@ -138,56 +150,155 @@ public abstract class DistantSupervisionSyntheticFilter extends TweetToFeatureVe
 	 * @return convertes Instances
 	 */
 	public Instances mapTargetInstance(Instances inp){
+		try {
+			return this.mapTargetInstance(inp, 1);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
 
-		// Creates instances with the same format
-		Instances result=getOutputFormat();
-
-
-		Attribute contentAtt=inp.attribute(this.m_textIndex.getIndex());
 
+	/**
+	 * Maps tweets from the second batch into instances that are compatible with the ones generated. The tweets are 
+	 * split into blocks of MAPPING_BLOCK_SIZE tweets, which are mapped by numThreads threads in rounds of 2*numThreads 
+	 * blocks and added in the order of the input.
+	 * 
+	 * @param inp input Instances
+	 * @param numThreads the number of threads mapping the tweets
+	 * @return the mapped Instances
+	 * @throws Exception if the mapping of a block fails
+	 */
+	public Instances mapTargetInstance(final Instances inp, int numThreads) throws Exception{
 
-		for(Instance inst:inp){
-			String content=inst.stringValue(contentAtt);
+		// Creates instances with the same format
+		final Instances result=getOutputFormat();
 
+		final Attribute contentAtt=inp.attribute(this.m_textIndex.getIndex());
 
+		if(numThreads<=1){
+			for(Instance inst:inp)
+				result.add(this.mapInstance(inst, contentAtt, result, this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler));
+			return result;
+		}
 
-			// tokenizes the content 
-			List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
+		// the tokenizer, stemmer and stopwords handler keep state, so each thread uses its own copies
+		final SerializedObject tools=new SerializedObject(new Object[]{this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler});
+		final ThreadLocal<Object[]> threadTools=new ThreadLocal<Object[]>(){
+			@Override
+			protected Object[] initialValue() {
+				try {
+					return (Object[]) tools.getObject();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		ExecutorService pool=Executors.newFixedThreadPool(numThreads);
+		try{
+			int roundSize=2*numThreads*MAPPING_BLOCK_SIZE;
+			for(int roundStart=0;roundStart<inp.numInstances();roundStart+=roundSize){
+				int roundEnd=Math.min(roundStart+roundSize, inp.numInstances());
+
+				List<Callable<ObjectList<Instance>>> blocks=new ArrayList<Callable<ObjectList<Instance>>>();
+				for(int start=roundStart;start<roundEnd;start+=MAPPING_BLOCK_SIZE){
+					final int blockStart=start;
+					final int blockEnd=Math.min(start+MAPPING_BLOCK_SIZE, roundEnd);
+					blocks.add(new Callable<ObjectList<Instance>>() {
+						@Override
+						public ObjectList<Instance> call() {
+							Object[] copies=threadTools.get();
+							ObjectList<Instance> mapped=new ObjectArrayList<Instance>(blockEnd-blockStart);
+							for(int i=blockStart;i<blockEnd;i++)
+								mapped.add(mapInstance(inp.instance(i), contentAtt, result, (Tokenizer) copies[0], 
+										(Stemmer) copies[1], (StopwordsHandler) copies[2]));
+							return mapped;
+						}
+					});
+				}
 
-			// Identifies the distinct terms
-			AbstractObjectSet<String> terms=new  ObjectOpenHashSet<String>(); 
-			terms.addAll(tokens);
+				for(ObjectList<Instance> mapped:affective.core.Utils.invokeAll(pool, blocks))
+					for(Instance inst:mapped)
+						result.add(inst);
+			}
+		} finally {
+			pool.shutdown();
+		}
 
+		return result;
+	}
 
-			Object2IntMap<String> docVec=this.calculateDocVec(tokens);
 
-			double[] values = new double[result.numAttributes()];
+	/**
+	 * Maps a single tweet into an instance that is compatible with the ones generated, for scoring tweets one 
+	 * at a time once the first batch has been processed.
+	 * 
+	 * @param inst the tweet, in the input format
+	 * @return the mapped instance, whose dataset is the output format
+	 */
+	public Instance mapTargetInstance(Instance inst){
+		Instances outputFormat=this.outputFormatPeek();
+		return this.mapInstance(inst, inst.dataset().attribute(this.m_textIndex.getIndex()), outputFormat, 
+				this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler);
+	}
 
 
-			values[result.classIndex()]= inst.classValue();
+	/**
+	 * Maps a tweet into a sparse instance. Only the features in the dictionary and the class value are stored, 
+	 * sorted by attribute index, without allocating a value per attribute of the output.
+	 * 
+	 * @param inst the tweet
+	 * @param contentAtt the attribute with the content of the tweet
+	 * @param result the output format, which becomes the dataset of the instance
+	 * @param tokenizer the tokenizer
+	 * @param stemmer the stemmer
+	 * @param stopwordsHandler the stopwords handler
+	 * @return the mapped instance
+	 */
+	protected Instance mapInstance(Instance inst, Attribute contentAtt, Instances result, Tokenizer tokenizer, 
+			Stemmer stemmer, StopwordsHandler stopwordsHandler){
 
-			for(String att:docVec.keySet()){
+		String content=inst.stringValue(contentAtt);
 
-				if(this.m_Dictionary.containsKey(att)){
-					int attIndex=this.m_Dictionary.getInt(att);
-					// we normalise the value by the number of documents
-					values[attIndex]=docVec.getInt(att);					
-				}
+		// tokenizes the content 
+		List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, tokenizer, stemmer, stopwordsHandler);
 
+		Object2IntMap<String> docVec=this.calculateDocVec(tokens);
 
+		// each valid feature is packed with the attribute index in the high bits, so sorting orders them by index
+		long[] features=new long[docVec.size()];
+		int numFeatures=0;
+		for(Object2IntMap.Entry<String> entry:docVec.object2IntEntrySet()){
+			if(entry.getIntValue()!=0 && this.m_Dictionary.containsKey(entry.getKey()))
+				features[numFeatures++]=((long) this.m_Dictionary.getInt(entry.getKey())<<32) | (entry.getIntValue() & 0xFFFFFFFFL);
+		}
+		Arrays.sort(features, 0, numFeatures);
+
+		int classIndex=result.classIndex();
+		double classValue=inst.classValue();
+		boolean storeClass=classValue!=0;
+
+		int[] indices=new int[numFeatures+(storeClass ? 1 : 0)];
+		double[] values=new double[indices.length];
+		int pos=0;
+		for(int f=0;f<numFeatures;f++){
+			int attIndex=(int) (features[f]>>>32);
+			if(storeClass && attIndex>classIndex){
+				indices[pos]=classIndex;
+				values[pos++]=classValue;
+				storeClass=false;
 			}
-
-
-			Instance outInst=new SparseInstance(1, values);
-
-			inst.setDataset(result);
-
-			result.add(outInst);
-
+			indices[pos]=attIndex;
+			values[pos++]=(int) features[f];
+		}
+		if(storeClass){
+			indices[pos]=classIndex;
+			values[pos]=classValue;
 		}
 
-		return result;
-
+		Instance outInst=new SparseInstance(1, values, indices, result.numAttributes());
+		outInst.setDataset(result);
+		return outInst;
 	}
 
 
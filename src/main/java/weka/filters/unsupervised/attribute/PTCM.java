@@ -24,6 +24,8 @@
 package weka.filters.unsupervised.attribute;
 
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
@@ -34,12 +36,16 @@ import it.unimi.dsi.fastutil.objects.ObjectList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 
 import weka.core.Attribute;
@@ -50,6 +56,10 @@ import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.Utils;
 import weka.core.TechnicalInformation.Type;
+import weka.core.converters.ArffSaver;
+import weka.core.converters.Saver;
+import affective.core.DocFrequencyCounter;
+import affective.core.TweetMatrix;
 
 
 /**
@@ -74,6 +84,10 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 	protected transient Object2ObjectMap<String, WordRep> wordInfo; 
 
 
+	/** The vectors of the tweets in the posting lists of the words. */
+	protected transient TweetMatrix tweets;
+
+
 	/** The minimum number of documents for a word to be included. */
 	protected int minInstDocs=0; 
 
@@ -82,6 +96,26 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 	protected int partNumber=-1;
 
 
+	/** The counter of a pre-pass over the tweets that discards the words with fewer than minInstDocs documents, NONE for no pre-pass. */
+	protected DocFrequencyCounter.Pruning pruning=DocFrequencyCounter.Pruning.NONE;
+
+
+	/** The number of threads generating the centroids of the words. */
+	protected int numThreads=1;
+
+
+	/** True for writing the centroids to streamFile as they are generated, instead of building them into one Instances object. */
+	protected boolean streamOutput=false;
+
+
+	/** The ARFF file where the centroids are written when streamOutput is set. */
+	protected File streamFile=new File("centroids.arff");
+
+
+	/** The number of words whose centroids are generated by a task. */
+	protected static final int WORD_BLOCK_SIZE = 256;
+
+
 
 	@Override
 	public String globalInfo() {
@@ -122,8 +156,8 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 		/** The number of documents where the word occurs. */	
 		int numDoc; 	
 		
-		/** The document vectors in which the word occurs. */
-		ObjectList<Object2IntMap<String>> postingList; 
+		/** The rows of the tweets in which the word occurs. */
+		IntList postingList; 
 
 
 		/**
@@ -133,15 +167,15 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 		public WordRep(String word){
 			this.word=word;
 			this.numDoc=0;
-			this.postingList=new ObjectArrayList<Object2IntMap<String>>();
+			this.postingList=new IntArrayList();
 		}
 
 		/**
 		 * Adds a new document to the posting list.
-		 * @param docVector a  document vector
+		 * @param row the row of the document in the tweet matrix
 		 */
-		public void addDoc(Object2IntMap<String> docVector){
-			this.postingList.add(docVector);
+		public void addDoc(int row){
+			this.postingList.add(row);
 			this.numDoc++;
 		}
 
@@ -150,11 +184,11 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 		/**
 		 * Returns a list of partitions of the posting list.
 		 * @param partSize the size of the partitions.
-		 * @return a list of word vectors.
+		 * @return a list of lists of rows.
 		 */
-		public ObjectList<ObjectList<Object2IntMap<String>>> partition(int partSize){
+		public ObjectList<IntList> partition(int partSize){
 
-			ObjectList<ObjectList<Object2IntMap<String>>> resList= new ObjectArrayList<ObjectList<Object2IntMap<String>>>();
+			ObjectList<IntList> resList= new ObjectArrayList<IntList>();
 
 			// if the partition size is larger than the posting list, then put the whole list into one partition
 			// if partsize is less or equal than zero we create one single partition too, which is equivalent to the full
@@ -241,6 +275,24 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 		Attribute attrCont = inputFormat.attribute(this.m_textIndex.getIndex());
 
 
+		// only the words that can reach minInstDocs get a WordRep, so the tweets without such words are not kept
+		DocFrequencyCounter docCounter=null;
+		if(this.pruning!=DocFrequencyCounter.Pruning.NONE && this.minInstDocs>1){
+			docCounter=DocFrequencyCounter.create(this.pruning, this.lex.getNomDict().size());
+			for(Instance inst:inputFormat){
+				List<String> tokens = affective.core.Utils.tokenize(inst.stringValue(attrCont), this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
+				List<String> labelledTerms=new ArrayList<String>();
+				for(String word:new ObjectOpenHashSet<String>(tokens))
+					if(this.isLabelled(word))
+						labelledTerms.add(word);
+				docCounter.addDoc(labelledTerms);
+			}
+		}
+
+
+		// only the tweets with a word of the lexicon are added to the matrix
+		TweetMatrix.Builder builder=new TweetMatrix.Builder();
+
 		for (ListIterator<Instance> it = inputFormat.listIterator(); it
 				.hasNext();) {
 			Instance inst = it.next();
@@ -277,27 +329,44 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 
 			// if the word is new we add it to the vocabulary, otherwise we
 			// add the document to the word representation
+			int row=-1;
 			for (String word : terms) {
-				if(this.lex.getNomDict().containsKey(word)){				
-					String value=this.lex.getNomDict().get(word).get(this.polarityAttName);
-					if(value.equals(this.polarityAttPosValName)||value.equals(this.polarityAttNegValName)){
-						if (this.wordInfo.containsKey(word)) {
-							WordRep wordRep=this.wordInfo.get(word);
-							wordRep.addDoc(docVec); // add the document
-						} else{
-							WordRep wordRep=new WordRep(word);
-							wordRep.addDoc(docVec); // add the document
-							this.wordInfo.put(word, wordRep);						
-						}
+				if(this.isLabelled(word) && (docCounter==null || docCounter.getCount(word)>=this.minInstDocs)){
+					if(row==-1)
+						row=builder.addRow(docVec);
+					if (this.wordInfo.containsKey(word)) {
+						WordRep wordRep=this.wordInfo.get(word);
+						wordRep.addDoc(row); // add the document
+					} else{
+						WordRep wordRep=new WordRep(word);
+						wordRep.addDoc(row); // add the document
+						this.wordInfo.put(word, wordRep);						
 					}
 				}
 			}
 
 		}
+
+		this.tweets=builder.build();
 	}
 
 
 
+	/**
+	 * Checks if a word has the positive or the negative value in the lexicon.
+	 * @param word the word
+	 * @return true if the word is labelled
+	 */
+	protected boolean isLabelled(String word){
+		if(!this.lex.getNomDict().containsKey(word))
+			return false;
+		String value=this.lex.getNomDict().get(word).get(this.polarityAttName);
+		return value.equals(this.polarityAttPosValName)||value.equals(this.polarityAttNegValName);
+	}
+
+
+
+
 	/* (non-Javadoc)
 	 * @see weka.filters.SimpleFilter#determineOutputFormat(weka.core.Instances)
 	 */
@@ -363,70 +432,152 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 		// The first batch creates de labelled data		
 		if(!this.isFirstBatchDone()){
 			result = getOutputFormat();
+			this.generateCentroids(result, null);
+		}
 
-			for(String word:this.wordInfo.keySet()){
-				// get the word vector
-				WordRep wordRep=this.wordInfo.get(word);
-
-				// We just consider valid words
-				if(wordRep.numDoc>=this.minInstDocs){
-
-					// a list of lists of tweet vectors
-					ObjectList<ObjectList<Object2IntMap<String>>> partitions=wordRep.partition(this.getPartNumber());
-
-					// traverse the partitions
-					for(ObjectList<Object2IntMap<String>> tweetPartition:partitions){
-						// create one instance per partition	
-						double[] values = new double[result.numAttributes()];
-
-						// average the vectors of the tweets in the partition
-						// traverse each feature space in the partition
-						for(Object2IntMap<String> wordSpace:tweetPartition){
-
-							for(String innerWord:wordSpace.keySet()){
-								// only include valid words
-								if(this.m_Dictionary.containsKey(innerWord)){
-									int attIndex=this.m_Dictionary.getInt(innerWord);
-									// we normalize the value by the number of documents
-									values[attIndex]+=((double)wordSpace.getInt(innerWord))/tweetPartition.size();					
-								}
-							}
-						}
-
-
-
-						String wordPol=this.lex.getNomDict().get(word).get(this.polarityAttName);
-						if(wordPol.equals(this.polarityAttNegValName))
-							values[result.numAttributes()-1]=0;
-						else if(wordPol.equals(this.polarityAttPosValName))
-							values[result.numAttributes()-1]=1;
-						else
-							values[result.numAttributes()-1]= Utils.missingValue();					
+		// Second batch maps tweets into the original feature space
+		else{
+			result=this.mapTargetInstance(instances, this.numThreads);
 
+		}
 
+		return result;
 
-						Instance inst=new SparseInstance(1, values);
+	}
 
 
-						inst.setDataset(result);
 
-						result.add(inst);
 
+	/**
+	 * Generates the centroids of the partitions of the words with at least minInstDocs documents. The words are split 
+	 * into blocks of WORD_BLOCK_SIZE words, which are processed by numThreads threads in rounds of 2*numThreads blocks. 
+	 * The centroids of a round are output in the order of the words, so the output does not depend on the number of threads.
+	 * 
+	 * @param result the output format, where the centroids are added
+	 * @param saver the saver where the centroids are written incrementally instead of adding them to result, or null
+	 * @throws Exception if the generation of a block fails or the centroids cannot be written
+	 */
+	protected void generateCentroids(final Instances result, Saver saver) throws Exception {
+
+		// the index of the attribute of each feature of the tweets, -1 for attributes that are not valid
+		final int[] attIndexes=this.tweets.attributeIndexes(this.m_Dictionary);
+
+		// We just consider valid words
+		final ObjectList<WordRep> words=new ObjectArrayList<WordRep>();
+		for(WordRep wordRep:this.wordInfo.values())
+			if(wordRep.numDoc>=this.minInstDocs)
+				words.add(wordRep);
+
+		ExecutorService pool=this.numThreads>1 ? Executors.newFixedThreadPool(this.numThreads) : null;
+		try{
+			int roundSize=2*Math.max(1, this.numThreads)*WORD_BLOCK_SIZE;
+			for(int roundStart=0;roundStart<words.size();roundStart+=roundSize){
+				int roundEnd=Math.min(roundStart+roundSize, words.size());
+
+				List<Callable<ObjectList<Instance>>> blocks=new ArrayList<Callable<ObjectList<Instance>>>();
+				for(int start=roundStart;start<roundEnd;start+=WORD_BLOCK_SIZE){
+					final int blockStart=start;
+					final int blockEnd=Math.min(start+WORD_BLOCK_SIZE, roundEnd);
+					blocks.add(new Callable<ObjectList<Instance>>() {
+						@Override
+						public ObjectList<Instance> call() {
+							ObjectList<Instance> centroids=new ObjectArrayList<Instance>();
+							for(int w=blockStart;w<blockEnd;w++)
+								addCentroids(words.get(w), attIndexes, result.numAttributes(), centroids);
+							return centroids;
+						}
+					});
+				}
 
+				List<ObjectList<Instance>> centroids;
+				if(pool==null){
+					centroids=new ArrayList<ObjectList<Instance>>();
+					for(Callable<ObjectList<Instance>> block:blocks)
+						centroids.add(block.call());
+				}
+				else
+					centroids=affective.core.Utils.invokeAll(pool, blocks);
 
+				for(ObjectList<Instance> blockCentroids:centroids){
+					for(Instance inst:blockCentroids){
+						inst.setDataset(result);
+						if(saver!=null)
+							saver.writeIncremental(inst);
+						else
+							result.add(inst);
 					}
 				}
 			}
+		} finally {
+			if(pool!=null)
+				pool.shutdown();
 		}
+	}
 
-		// Second batch maps tweets into the original feature space
-		else{
-			result=this.mapTargetInstance(instances);
 
+	/**
+	 * Calculates the centroids of the partitions of the posting list of a word.
+	 * 
+	 * @param wordRep the word
+	 * @param attIndexes the index of the attribute of each feature of the tweets, -1 for attributes that are not valid
+	 * @param numAttributes the number of attributes of the output, the last one being the class
+	 * @param centroids the list where the centroids are added
+	 */
+	protected void addCentroids(WordRep wordRep, int[] attIndexes, int numAttributes, ObjectList<Instance> centroids){
+
+		// a list of lists of tweet rows
+		ObjectList<IntList> partitions=wordRep.partition(this.getPartNumber());
+
+		String wordPol=this.lex.getNomDict().get(wordRep.word).get(this.polarityAttName);
+
+		// traverse the partitions
+		for(IntList tweetPartition:partitions){
+			// create one instance per partition	
+			double[] values = new double[numAttributes];
+
+			// average the vectors of the tweets in the partition, normalising the values by the number of documents
+			for(int p=0;p<tweetPartition.size();p++)
+				this.tweets.addTo(tweetPartition.getInt(p), attIndexes, values, tweetPartition.size());
+
+			if(wordPol.equals(this.polarityAttNegValName))
+				values[numAttributes-1]=0;
+			else if(wordPol.equals(this.polarityAttPosValName))
+				values[numAttributes-1]=1;
+			else
+				values[numAttributes-1]= Utils.missingValue();					
+
+			centroids.add(new SparseInstance(1, values));
 		}
+	}
 
-		return result;
 
+	/* (non-Javadoc)
+	 * @see weka.filters.SimpleBatchFilter#batchFinished()
+	 */
+	@Override
+	public boolean batchFinished() throws Exception {
+		// with streamOutput the first batch releases the tweets and writes the centroids to streamFile as they are generated,
+		// only the header is output
+		if(this.streamOutput && !this.isFirstBatchDone()){
+			if(this.getInputFormat()==null)
+				throw new IllegalStateException("No input instance format defined");
+
+			this.setOutputFormat(this.determineOutputFormat(new Instances(this.getInputFormat())));
+			this.flushInput();
+
+			ArffSaver saver=new ArffSaver();
+			saver.setFile(this.streamFile);
+			saver.setRetrieval(Saver.INCREMENTAL);
+			saver.setInstances(this.getOutputFormat());
+			this.generateCentroids(this.getOutputFormat(), saver);
+			// writes the header if there are no centroids and closes the file
+			saver.writeIncremental(null);
+
+			this.m_NewBatch=true;
+			this.m_FirstBatchDone=true;
+			return this.numPendingOutput()!=0;
+		}
+		return super.batchFinished();
 	}
 
 
@@ -461,6 +612,71 @@ public class PTCM extends DistantSupervisionSyntheticFilter{
 	}
 
 
+
+
+	@OptionMetadata(displayName = "pruning",
+			description = "A pre-pass over the tweets that counts the documents of each word of the lexicon, so that only the words that "
+					+ "can reach minInstDocs get a posting list: NONE (no pre-pass), EXACT (a hash map of the words) or SKETCH (a count-min "
+					+ "sketch of fixed size, which keeps a few more words). The tweets are tokenised twice. Default: NONE.",
+			commandLineParamName = "prune", 
+			commandLineParamSynopsis = "-prune <string>",
+			displayOrder = 15)
+	public DocFrequencyCounter.Pruning getPruning() {
+		return pruning;
+	}
+	public void setPruning(DocFrequencyCounter.Pruning pruning) {
+		this.pruning = pruning;
+	}
+
+
+
+
+	@OptionMetadata(displayName = "numThreads",
+			description = "The number of threads generating the centroids of the words. The output does not depend on the number of threads. Default: 1.", 
+			commandLineParamName = "threads", 
+			commandLineParamSynopsis = "-threads <int>",
+			displayOrder = 16)
+	public int getNumThreads() {
+		return numThreads;
+	}
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+
+
+
+	@OptionMetadata(displayName = "streamOutput",
+			description = "True for writing the centroids of the first batch to streamFile as they are generated, instead of building them "
+					+ "into one Instances object. The tweets are released before the centroids are generated and the filter only outputs the header "
+					+ "of the centroids.", 
+			commandLineParamIsFlag = true, 
+			commandLineParamName = "stream", 
+			commandLineParamSynopsis = "-stream",
+			displayOrder = 17)
+	public boolean isStreamOutput() {
+		return streamOutput;
+	}
+	public void setStreamOutput(boolean streamOutput) {
+		this.streamOutput = streamOutput;
+	}
+
+
+
+
+	@OptionMetadata(displayName = "streamFile",
+			description = "The ARFF file where the centroids are written with streamOutput. Default: centroids.arff.", 
+			commandLineParamName = "stream-file", 
+			commandLineParamSynopsis = "-stream-file <string>",
+			displayOrder = 18)
+	public File getStreamFile() {
+		return streamFile;
+	}
+	public void setStreamFile(File streamFile) {
+		this.streamFile = streamFile;
+	}
+
+
 	/**
 	 * Main method for testing this class.
 	 *
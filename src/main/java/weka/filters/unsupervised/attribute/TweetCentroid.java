@@ -23,9 +23,19 @@
 package weka.filters.unsupervised.attribute;
 
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
@@ -34,23 +44,45 @@ import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import weka.core.Attribute;
+import weka.core.Environment;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionMetadata;
+import weka.core.SerializedObject;
 import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Type;
+import weka.core.stemmers.Stemmer;
+import weka.core.stopwords.StopwordsHandler;
+import weka.core.tokenizers.Tokenizer;
+import affective.core.DocFrequencyCounter;
+import affective.core.LexiconTable;
 
 
 /**
@@ -80,6 +112,18 @@ public class TweetCentroid extends TweetToFeatureVector {
 	/** the prefix of the cluster-based attributes */
 	static String CLUSTPREFIX="CLUST-";
 
+	/** The number of tweets featurised by each task of the parallel construction. */
+	protected static final int BLOCK_SIZE = 1024;
+
+	/** The estimated number of bytes of an entry of a word vector, an int key and an int value in a table at most 3/4 full. */
+	protected static final int ENTRY_BYTES = 11;
+
+	/** The size of the buffers of the spill files. */
+	protected static final int SPILL_BUFFER_SIZE = 1 << 16;
+
+	/** The weight of the last batch above which the decayed word vectors are rescaled. */
+	protected static final double MAX_BATCH_WEIGHT = 1e100;
+
 
 	/** the vocabulary and the WordRep */
 	protected Object2ObjectMap<String, WordRep> wordInfo; 
@@ -95,6 +139,12 @@ public class TweetCentroid extends TweetToFeatureVector {
 	/** Contains a mapping of valid attribute with their indexes. */
 	protected Object2IntMap<String> m_Dictionary;
 
+	/** The id of each candidate attribute, used as the key of the word vectors. */
+	protected Object2IntMap<String> featureIds;
+
+	/** The candidate attributes sorted by id. */
+	protected ObjectList<String> featureNames;
+
 	/** Brown Clusters Dictionary */
 	protected Object2ObjectMap<String,String> brownDict;
 
@@ -129,6 +179,62 @@ public class TweetCentroid extends TweetToFeatureVector {
 	protected File wordClustFile=new File(RESOURCES_FOLDER_NAME+File.separator+"50mpaths2.txt.gz");
 
 
+	/** The number of threads building the word vectors. */
+	protected int numThreads=1;
+
+
+	/** The approximate number of megabytes of word vectors held in memory before they are spilled to disk, 0 for no limit. */
+	protected int memoryBudget=0;
+
+
+	/** The directory of the spill files. */
+	protected File spillDir=new File("${java.io.tmpdir}");
+
+
+	/** The spill files of the word vectors in the order in which they were written, empty if they fit in memory. */
+	protected ObjectList<File> spillFiles;
+
+
+	/** The words of the output in their order once the spill files have been merged. */
+	protected ObjectList<WordRep> mergedWords;
+
+
+	/** The estimated number of bytes used by the words held in memory, only tracked when memoryBudget is set. */
+	protected long wordInfoBytes;
+
+
+	/** True for adding the tweets of the batches after the first one to the word vectors. */
+	protected boolean incremental=false;
+
+
+	/** The factor by which the weight of the previous batches is multiplied when a batch is added in incremental mode, 1 for no decay. */
+	protected double decay=1;
+
+
+	/** The number of most recent batches represented by the word vectors in incremental mode, 0 for all of them. */
+	protected int windowSize=0;
+
+
+	/** The word vectors of each batch of the window, from the oldest to the newest. */
+	protected ObjectList<Object2ObjectMap<String, WordRep>> window;
+
+
+	/** The word vectors with decay, which replace wordInfo once the second batch has been added. */
+	protected Object2ObjectMap<String, DecayedWordRep> decayedInfo;
+
+
+	/** The weight of the last batch in decayedInfo. The weights of the batches grow by 1/decay, so the previous ones are not updated. */
+	protected double batchWeight;
+
+
+	/** The counter of a pre-pass over the tweets that discards the words with fewer than minInstDocs documents, NONE for no pre-pass. */
+	protected DocFrequencyCounter.Pruning pruning=DocFrequencyCounter.Pruning.NONE;
+
+
+	/** The number of documents of each word counted by the pre-pass, only set while the word vectors are calculated. */
+	protected DocFrequencyCounter docCounter;
+
+
 
 
 
@@ -143,11 +249,11 @@ public class TweetCentroid extends TweetToFeatureVector {
 		/** The number of documents where the word occurs. */
 		int numDoc; 
 
-		/** The vector representation of the word. */
-		Object2IntMap<String> wordSpace; 
+		/** The vector representation of the word, a mapping between the ids of the attributes and their frequencies. */
+		Int2IntOpenHashMap wordSpace; 
 
-		/** Additional numeric attributes occurring in the original dataset.  */
-		Object2DoubleMap<String> metaData; //
+		/** The sums of the additional numeric attributes occurring in the original dataset, in the order of numericAttributes.  */
+		double[] metaData;
 
 
 		/**
@@ -157,21 +263,20 @@ public class TweetCentroid extends TweetToFeatureVector {
 		public WordRep(String word){
 			this.word=word;
 			this.numDoc=0;
-			this.wordSpace=new Object2IntOpenHashMap<String>();
-			this.metaData=new Object2DoubleOpenHashMap<String>();
+			this.wordSpace=new Int2IntOpenHashMap();
 		}
 
 
 		/**
 		 * Adds a new document to the word representation.
-		 * @param docVector a  document vector
+		 * @param features the ids of the attributes of the document
+		 * @param freqs the frequencies of the attributes
 		 */
-		public void addDoc(Object2IntMap<String> docVector){
+		public void addDoc(int[] features, int[] freqs){
 			this.numDoc++;
-			for(String vecWord:docVector.keySet()){
-				int vecWordFreq=docVector.getInt(vecWord);
-				// if the word was seen before we add the current frequency
-				this.wordSpace.put(vecWord,vecWordFreq+this.wordSpace.getInt(vecWord));
+			for(int i=0;i<features.length;i++){
+				// if the attribute was seen before we add the current frequency
+				this.wordSpace.addTo(features[i], freqs[i]);
 			}	
 
 		}
@@ -180,14 +285,301 @@ public class TweetCentroid extends TweetToFeatureVector {
 		 * Adds values of additional attributes to the word vector.
 		 * @param metaVector the values of the additional attributes of the document
 		 */
-		public void addMetaData(Object2DoubleMap<String> metaVector){
-			for(String metaName:metaVector.keySet()){
-				double metaVal=metaVector.getDouble(metaName);
-				this.metaData.put(metaName, metaVal+this.metaData.getDouble(metaName));
+		public void addMetaData(double[] metaVector){
+			if(this.metaData==null)
+				this.metaData=new double[metaVector.length];
+			for(int i=0;i<metaVector.length;i++)
+				this.metaData[i]+=metaVector[i];
+		}
+
+
+		/**
+		 * Adds or subtracts the documents of another representation of the word. 
+		 * @param other the other representation
+		 * @param sign 1 for adding its documents, -1 for subtracting them
+		 */
+		public void addWordRep(WordRep other, int sign){
+			this.numDoc+=sign*other.numDoc;
+			for(Int2IntMap.Entry entry:other.wordSpace.int2IntEntrySet()){
+				int freq=sign*entry.getIntValue();
+				// the attributes that no longer occur are removed
+				if(this.wordSpace.addTo(entry.getIntKey(), freq)+freq==0)
+					this.wordSpace.remove(entry.getIntKey());
+			}
+			if(other.metaData!=null){
+				if(this.metaData==null)
+					this.metaData=new double[other.metaData.length];
+				for(int i=0;i<other.metaData.length;i++)
+					this.metaData[i]+=sign*other.metaData[i];
+			}
+		}
+
+
+	}
+
+
+	/**
+	 * A word representation whose documents are weighted by the batch in which they occur.
+	 *
+	 */
+	static class DecayedWordRep{
+		/** The word. */
+		String word; 
+
+		/** The weighted number of documents where the word occurs. */
+		double numDoc; 
+
+		/** The weighted frequencies of the attributes by id. */
+		Int2DoubleOpenHashMap wordSpace; 
+
+		/** The weighted sums of the additional numeric attributes. */
+		double[] metaData;
+
+
+		/**
+		 * Creates a new DecayedWordRep object.
+		 * @param word the word
+		 */
+		public DecayedWordRep(String word){
+			this.word=word;
+			this.wordSpace=new Int2DoubleOpenHashMap();
+		}
+
+
+		/**
+		 * Adds the documents of a batch.
+		 * @param wordRep the word in the batch
+		 * @param weight the weight of the batch
+		 */
+		public void add(WordRep wordRep, double weight){
+			this.numDoc+=weight*wordRep.numDoc;
+			for(Int2IntMap.Entry entry:wordRep.wordSpace.int2IntEntrySet())
+				this.wordSpace.addTo(entry.getIntKey(), weight*entry.getIntValue());
+			if(wordRep.metaData!=null){
+				if(this.metaData==null)
+					this.metaData=new double[wordRep.metaData.length];
+				for(int i=0;i<wordRep.metaData.length;i++)
+					this.metaData[i]+=weight*wordRep.metaData[i];
+			}
+		}
+
+
+		/**
+		 * Multiplies the weights of all the documents by a factor.
+		 * @param factor the factor
+		 */
+		public void scale(double factor){
+			this.numDoc*=factor;
+			for(Int2DoubleMap.Entry entry:this.wordSpace.int2DoubleEntrySet())
+				entry.setValue(entry.getDoubleValue()*factor);
+			if(this.metaData!=null)
+				for(int i=0;i<this.metaData.length;i++)
+					this.metaData[i]*=factor;
+		}
+
+	}
+
+
+	/**
+	 * A word representation that can be spilled to disk. It remembers its first occurrence, which restores the order of the 
+	 * words after the spill files are merged, and the values of the additional attributes of each document, so they are 
+	 * summed in the same order as in memory.
+	 *
+	 */
+	class SpilledWordRep extends WordRep{
+		/** The first occurrence of the word, the tweet in the upper 32 bits and the position of the word among the distinct terms of the tweet in the lower ones. */
+		long firstOccurrence;
+
+		/** The values of the additional numeric attributes of each document, in the order of the documents. */
+		DoubleArrayList metaValues;
+
+
+		/**
+		 * Creates a new SpilledWordRep object.
+		 * @param word the word
+		 * @param firstOccurrence the first occurrence of the word
+		 */
+		public SpilledWordRep(String word, long firstOccurrence){
+			super(word);
+			this.firstOccurrence=firstOccurrence;
+			this.metaValues=new DoubleArrayList();
+		}
+
+
+		@Override
+		public void addMetaData(double[] metaVector){
+			this.metaValues.addElements(this.metaValues.size(), metaVector);
+		}
+
+
+		/**
+		 * Sums the values of the additional attributes of the documents, as WordRep does when they are added.
+		 */
+		public void sumMetaValues(){
+			if(considerNumericAtts){
+				int numMeta=numericAttributes.size();
+				this.metaData=new double[numMeta];
+				for(int i=0;i<this.metaValues.size();i++)
+					this.metaData[i%numMeta]+=this.metaValues.getDouble(i);
+			}
+			this.metaValues=null;
+		}
+
+	}
+
+
+	/**
+	 * Reads the words of a spill file, which are sorted alphabetically.
+	 *
+	 */
+	static class SpillReader{
+		/** The content of the file. */
+		DataInputStream in;
+
+		/** The position of the file among the spill files. */
+		int spill;
+
+		/** The current word. */
+		String word;
+
+		/** The first occurrence of the current word. */
+		long firstOccurrence;
+
+		/** The number of documents of the current word in the file. */
+		int numDoc;
+
+		/** The number of attributes of the current word. */
+		int numEntries;
+
+		/** The ids of the attributes of the current word. */
+		int[] features=new int[16];
+
+		/** The frequencies of the attributes of the current word. */
+		int[] freqs=new int[16];
+
+		/** The number of values of additional attributes of the current word. */
+		int numMetaValues;
+
+		/** The values of the additional attributes of each document of the current word. */
+		double[] metaValues=new double[16];
+
+
+		/**
+		 * Opens a spill file.
+		 * @param file the file
+		 * @param spill the position of the file among the spill files
+		 * @throws IOException if the file cannot be opened
+		 */
+		public SpillReader(File file, int spill) throws IOException{
+			this.in=new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)), SPILL_BUFFER_SIZE));
+			this.spill=spill;
+		}
+
+
+		/**
+		 * Reads the next word.
+		 * @return false if there are no more words
+		 * @throws IOException if the file cannot be read
+		 */
+		public boolean next() throws IOException{
+			if(!this.in.readBoolean())
+				return false;
+
+			this.word=this.in.readUTF();
+			this.firstOccurrence=this.in.readLong();
+			this.numDoc=this.in.readInt();
+			this.numEntries=this.in.readInt();
+			this.features=IntArrays.ensureCapacity(this.features, this.numEntries);
+			this.freqs=IntArrays.ensureCapacity(this.freqs, this.numEntries);
+			for(int i=0;i<this.numEntries;i++){
+				this.features[i]=this.in.readInt();
+				this.freqs[i]=this.in.readInt();
 			}
+			this.numMetaValues=this.in.readInt();
+			this.metaValues=DoubleArrays.ensureCapacity(this.metaValues, this.numMetaValues);
+			for(int i=0;i<this.numMetaValues;i++)
+				this.metaValues[i]=this.in.readDouble();
+			return true;
 		}
 
 
+		/**
+		 * Closes the file.
+		 * @throws IOException if the file cannot be closed
+		 */
+		public void close() throws IOException{
+			this.in.close();
+		}
+
+	}
+
+
+	/**
+	 * A word identified by its position in the spill files and located by the hash code of its String, used to reproduce 
+	 * the order of the words in wordInfo.
+	 *
+	 */
+	static class HashedWord{
+		/** The hash code of the word. */
+		int hash;
+
+		/** The position of the word in the spill files. */
+		int ordinal;
+
+		/**
+		 * Creates a new HashedWord object.
+		 * @param hash the hash code of the word
+		 * @param ordinal the position of the word in the spill files
+		 */
+		public HashedWord(int hash, int ordinal){
+			this.hash=hash;
+			this.ordinal=ordinal;
+		}
+
+		@Override
+		public int hashCode(){
+			return this.hash;
+		}
+
+	}
+
+
+	/**
+	 * The tweets of a block featurised by one thread. The attributes of the block have local ids, assigned in the 
+	 * order in which they first appear in the block.
+	 *
+	 */
+	static class DocBlock{
+		/** The distinct terms of each tweet. */
+		String[][] terms;
+
+		/** The ids of the attributes of each tweet. */
+		int[][] features;
+
+		/** The frequencies of the attributes of each tweet. */
+		int[][] freqs;
+
+		/** The values of the numeric attributes of each tweet. */
+		double[][] metaValues;
+
+		/** The attributes of the block sorted by local id. */
+		ObjectList<String> featureNames=new ObjectArrayList<String>();
+
+		/** The number of tweets of the block in which each attribute appears. */
+		IntList featureCounts=new IntArrayList();
+
+
+		/**
+		 * Creates an empty block.
+		 * @param numTweets the number of tweets of the block
+		 */
+		public DocBlock(int numTweets){
+			this.terms=new String[numTweets][];
+			this.features=new int[numTweets][];
+			this.freqs=new int[numTweets][];
+			this.metaValues=new double[numTweets][];
+		}
+
 	}
 
 
@@ -253,8 +645,9 @@ public class TweetCentroid extends TweetToFeatureVector {
 	 * Calculates the vocabulary and the word vectors from an Instances object
 	 * The vocabulary is only extracted the first time the filter is run.
 	 * @param inputFormat the input Instances
+	 * @throws Exception if the parallel construction fails
 	 */
-	public void computeWordVecsAndVoc(Instances inputFormat) {
+	public void computeWordVecsAndVoc(Instances inputFormat) throws Exception {
 
 
 		if (!this.isFirstBatchDone()){
@@ -267,6 +660,26 @@ public class TweetCentroid extends TweetToFeatureVector {
 
 			this.attributeCount= new Object2IntOpenHashMap<String>(); 
 
+			this.featureIds=new Object2IntOpenHashMap<String>();
+			this.featureNames=new ObjectArrayList<String>();
+
+			// the spill files of a previous build are no longer needed
+			if(this.spillFiles!=null)
+				for(File spillFile:this.spillFiles)
+					spillFile.delete();
+			this.spillFiles=new ObjectArrayList<File>();
+			this.mergedWords=null;
+			this.wordInfoBytes=0;
+
+			if(this.incremental && this.memoryBudget>0)
+				throw new IllegalArgumentException("The incremental mode keeps the word vectors in memory, memoryBudget must be 0");
+			if(this.decay<1 && this.windowSize>0)
+				throw new IllegalArgumentException("The decay and the window of the incremental mode cannot be used together");
+			if(this.incremental && this.pruning!=DocFrequencyCounter.Pruning.NONE)
+				throw new IllegalArgumentException("The rare words of the following batches are not known in advance, pruning must be NONE in incremental mode");
+			this.window=null;
+			this.decayedInfo=null;
+
 
 
 			// the Dictionary of the brown Clusters
@@ -312,84 +725,707 @@ public class TweetCentroid extends TweetToFeatureVector {
 
 
 
-			// reference to the content of the message
-			Attribute attrCont = inputFormat.attribute(this.m_textIndex.getIndex());
+			// only the words that can reach minInstDocs get a WordRep
+			if(this.pruning!=DocFrequencyCounter.Pruning.NONE && this.minInstDocs>1)
+				this.docCounter=this.countDocFrequencies(inputFormat);
 
-			for (ListIterator<Instance> it = inputFormat.listIterator(); it
-					.hasNext();) {
-				Instance inst = it.next();
-				String content = inst.stringValue(attrCont);
+			try{
+				this.addTweets(inputFormat);
+			} finally {
+				this.docCounter=null;
+			}
+		}
 
+	}
 
-				// tokenises the content 
-				List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
 
-				// Identifies the distinct terms
-				AbstractObjectSet<String> terms=new  ObjectOpenHashSet<String>(); 
-				terms.addAll(tokens);
+	/**
+	 * Counts the number of documents of each word in a pre-pass over the tweets, using numThreads threads.
+	 * 
+	 * @param inputFormat the tweets
+	 * @return the counter
+	 * @throws Exception if the tokenisation fails
+	 */
+	protected DocFrequencyCounter countDocFrequencies(final Instances inputFormat) throws Exception {
+		long start=System.currentTimeMillis();
+
+		final Attribute attrCont = inputFormat.attribute(this.m_textIndex.getIndex());
+		// a sample of tweets has a few distinct words per tweet, most of them occurring only once
+		DocFrequencyCounter counter=DocFrequencyCounter.create(this.pruning, 4*inputFormat.numInstances());
+
+		if(this.numThreads<=1)
+			this.countBlock(inputFormat, attrCont, 0, inputFormat.numInstances(), counter, this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler);
+		else{
+			// each thread counts a range of tweets with its own counter and its own copies of the tokenizer, stemmer 
+			// and stopwords handler, then the counters are added
+			final SerializedObject tools=new SerializedObject(new Object[]{this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler});
+			List<Callable<DocFrequencyCounter>> counters=new ArrayList<Callable<DocFrequencyCounter>>();
+			for(int t=0;t<this.numThreads;t++){
+				final int rangeStart=(int) ((long) inputFormat.numInstances()*t/this.numThreads);
+				final int rangeEnd=(int) ((long) inputFormat.numInstances()*(t+1)/this.numThreads);
+				final DocFrequencyCounter rangeCounter=counter.emptyCopy();
+				counters.add(new Callable<DocFrequencyCounter>() {
+					@Override
+					public DocFrequencyCounter call() throws Exception {
+						Object[] copies=(Object[]) tools.getObject();
+						countBlock(inputFormat, attrCont, rangeStart, rangeEnd, rangeCounter, (Tokenizer) copies[0], 
+								(Stemmer) copies[1], (StopwordsHandler) copies[2]);
+						return rangeCounter;
+					}
+				});
+			}
 
+			ExecutorService pool=Executors.newFixedThreadPool(this.numThreads);
+			try{
+				for(DocFrequencyCounter rangeCounter:affective.core.Utils.invokeAll(pool, counters))
+					counter.add(rangeCounter);
+			} finally {
+				pool.shutdown();
+			}
+		}
 
-				Object2IntMap<String> docVec=this.calculateDocVec(tokens);			
+		if(this.getDebug()){
+			long time=Math.max(1, System.currentTimeMillis()-start);
+			System.err.println("Counted the words of "+inputFormat.numInstances()+" tweets with a "+this.pruning+" counter ("
+					+counter.getMemoryFootprint()+" bytes) in "+time+" ms, "+(inputFormat.numInstances()*1000L/time)+" tweets/s");
+		}
+
+		return counter;
+	}
 
 
+	/**
+	 * Counts the distinct terms of a range of tweets.
+	 * 
+	 * @param inputFormat the tweets
+	 * @param attrCont the attribute with the content of the tweets
+	 * @param start the first tweet
+	 * @param end the tweet after the last one
+	 * @param counter the counter
+	 * @param tokenizer the tokenizer
+	 * @param stemmer the stemmer
+	 * @param stopwordsHandler the stopwords handler
+	 */
+	protected void countBlock(Instances inputFormat, Attribute attrCont, int start, int end, DocFrequencyCounter counter, 
+			Tokenizer tokenizer, Stemmer stemmer, StopwordsHandler stopwordsHandler) {
+		for(int i=start;i<end;i++){
+			String content = inputFormat.instance(i).stringValue(attrCont);
+			List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, tokenizer, stemmer, stopwordsHandler);
+			counter.addDoc(new ObjectOpenHashSet<String>(tokens));
+		}
+	}
 
 
-				// adds the attributes to the List of attributes
-				for(String docAtt:docVec.keySet()){
-					if(this.attributeCount.containsKey(docAtt)){
-						int prevFreq=this.attributeCount.getInt(docAtt);
-						this.attributeCount.put(docAtt,prevFreq+1);						
-					}
-					else{
-						this.attributeCount.put(docAtt,1);
-					}
+	/**
+	 * Checks if the pre-pass has found that a word cannot reach minInstDocs.
+	 * 
+	 * @param word the word
+	 * @return true if the word is discarded
+	 */
+	protected boolean isRare(String word){
+		return this.docCounter!=null && this.docCounter.getCount(word)<this.minInstDocs;
+	}
+
+
+	/**
+	 * Adds the tweets of a dataset to the word vectors and to the counts of the attributes.
+	 * @param inputFormat the tweets
+	 * @throws Exception if the parallel construction fails or a spill file cannot be written
+	 */
+	protected void addTweets(Instances inputFormat) throws Exception {
+
+		// reference to the content of the message
+		Attribute attrCont = inputFormat.attribute(this.m_textIndex.getIndex());
+
+		if(this.numThreads>1){
+			this.computeWordVecsInParallel(inputFormat, attrCont);
+			return;
+		}
+
+		long tweet=0;
+		for (ListIterator<Instance> it = inputFormat.listIterator(); it
+				.hasNext();tweet++) {
+			Instance inst = it.next();
+			String content = inst.stringValue(attrCont);
+
+
+			// tokenises the content 
+			List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
+
+			// Identifies the distinct terms
+			AbstractObjectSet<String> terms=new  ObjectOpenHashSet<String>(); 
+			terms.addAll(tokens);
+
+
+			Object2IntMap<String> docVec=this.calculateDocVec(tokens);			
+
+
+			// the attributes of the document are replaced by their ids once, so the words of the 
+			// document add them to their vectors without hashing strings
+			int[] docFeatures=new int[docVec.size()];
+			int[] docFreqs=new int[docVec.size()];
+			int f=0;
+
+			// adds the attributes to the List of attributes
+			for(Object2IntMap.Entry<String> entry:docVec.object2IntEntrySet()){
+				String docAtt=entry.getKey();
+				if(this.attributeCount.containsKey(docAtt)){
+					int prevFreq=this.attributeCount.getInt(docAtt);
+					this.attributeCount.put(docAtt,prevFreq+1);						
+					docFeatures[f]=this.featureIds.getInt(docAtt);
+				}
+				else{
+					this.attributeCount.put(docAtt,1);
+					docFeatures[f]=this.featureNames.size();
+					this.featureIds.put(docAtt,docFeatures[f]);
+					this.featureNames.add(docAtt);
+				}
+				docFreqs[f]=entry.getIntValue();
+				f++;
+
+			}
+
+
+			// the values of the numeric attributes are shared by all the words of the document
+			double[] metaValues=null;
+			if(this.considerNumericAtts){
+				metaValues=new double[this.numericAttributes.size()];
+				for(int m=0;m<metaValues.length;m++)
+					metaValues[m]=inst.value(this.numericAttributes.get(m));
+			}
+
+
+			// if the word is new we add it to the vocabulary, otherwise we
+			// add the document to the vector
+			int p=0;
+			for (String word : terms) {
+				if(this.isRare(word))
+					continue;
+
+				WordRep wordRep;
+
+				if (this.wordInfo.containsKey(word)) {
+					wordRep=this.wordInfo.get(word);
+
+				} else{
+					wordRep=this.newWordRep(word, (tweet<<32) | p);
+					this.wordInfo.put(word, wordRep);						
+					this.wordInfoBytes+=this.wordFootprint(wordRep);
+				}
+				this.wordInfoBytes+=this.addDoc(wordRep, docFeatures, docFreqs, metaValues);
+				p++;
+
+
+			}
+
+
+			if(this.memoryBudget>0 && this.wordInfoBytes>this.memoryBudget*1024L*1024L){
+				this.spill(this.wordInfo.values());
+				this.wordInfo=new Object2ObjectOpenHashMap<String, WordRep>();
+				this.wordInfoBytes=0;
+			}
+
+
+		}
+
+		this.finishSpilling();
+
+	}
+
+
+	/**
+	 * Adds a batch of tweets to the word vectors in incremental mode, with a cost proportional to the size of the batch. 
+	 * Without decay and window the tweets are added as if they were part of the first batch. With a window, the oldest 
+	 * batch is subtracted once the window is full. With decay, the previous batches are down-weighted by giving the new 
+	 * batch a weight 1/decay times larger, which leaves the normalised vectors unchanged, and the weights are rescaled 
+	 * when they become too large. The attribute space is the one of the first batch.
+	 * 
+	 * @param batch the tweets
+	 * @throws Exception if the parallel construction fails
+	 */
+	public void updateWordVecs(Instances batch) throws Exception {
+		if(this.decay>=1 && this.windowSize<=0){
+			this.addTweets(batch);
+			return;
+		}
+
+		// the vectors of the batch are calculated on their own
+		Object2ObjectMap<String, WordRep> previous=this.wordInfo;
+		this.wordInfo=new Object2ObjectOpenHashMap<String, WordRep>();
+		this.addTweets(batch);
+		Object2ObjectMap<String, WordRep> batchInfo=this.wordInfo;
+		this.wordInfo=previous;
+
+		if(this.windowSize>0){
+			// the first batch leaves wordInfo, which becomes the sum of the batches of the window 
+			if(this.window==null){
+				this.window=new ObjectArrayList<Object2ObjectMap<String, WordRep>>();
+				this.window.add(this.wordInfo);
+				this.wordInfo=new Object2ObjectOpenHashMap<String, WordRep>();
+				this.addToWindow(this.window.get(0), 1);
+			}
+
+			this.window.add(batchInfo);
+			this.addToWindow(batchInfo, 1);
+			while(this.window.size()>this.windowSize)
+				this.addToWindow(this.window.remove(0), -1);
+		}
+		else{
+			if(this.decayedInfo==null){
+				this.decayedInfo=new Object2ObjectOpenHashMap<String, DecayedWordRep>();
+				this.batchWeight=1;
+				this.addDecayed(this.wordInfo);
+				this.wordInfo=new Object2ObjectOpenHashMap<String, WordRep>();
+			}
 
+			this.batchWeight/=this.decay;
+			this.addDecayed(batchInfo);
+			if(this.batchWeight>MAX_BATCH_WEIGHT){
+				for(DecayedWordRep wordRep:this.decayedInfo.values())
+					wordRep.scale(1/this.batchWeight);
+				this.batchWeight=1;
+			}
+		}
+	}
+
+
+	/**
+	 * Adds or subtracts the vectors of a batch to the ones of the window. The words that no longer occur are removed.
+	 * 
+	 * @param batchInfo the vectors of the batch
+	 * @param sign 1 for adding the batch, -1 for subtracting it
+	 */
+	protected void addToWindow(Object2ObjectMap<String, WordRep> batchInfo, int sign){
+		for(WordRep batchRep:batchInfo.values()){
+			WordRep wordRep=this.wordInfo.get(batchRep.word);
+			if(wordRep==null){
+				wordRep=new WordRep(batchRep.word);
+				this.wordInfo.put(batchRep.word, wordRep);
+			}
+			wordRep.addWordRep(batchRep, sign);
+			if(wordRep.numDoc==0)
+				this.wordInfo.remove(batchRep.word);
+		}
+	}
+
+
+	/**
+	 * Adds the vectors of a batch to the decayed vectors with the weight of the last batch.
+	 * 
+	 * @param batchInfo the vectors of the batch
+	 */
+	protected void addDecayed(Object2ObjectMap<String, WordRep> batchInfo){
+		for(WordRep batchRep:batchInfo.values()){
+			DecayedWordRep wordRep=this.decayedInfo.get(batchRep.word);
+			if(wordRep==null){
+				wordRep=new DecayedWordRep(batchRep.word);
+				this.decayedInfo.put(batchRep.word, wordRep);
+			}
+			wordRep.add(batchRep, this.batchWeight);
+		}
+	}
+
+
+	/**
+	 * Creates the representation of a new word, which can be spilled to disk when memoryBudget is set.
+	 * 
+	 * @param word the word
+	 * @param firstOccurrence the first occurrence of the word, the tweet in the upper 32 bits and the 
+	 * position of the word among the distinct terms of the tweet in the lower ones
+	 * @return the word representation
+	 */
+	protected WordRep newWordRep(String word, long firstOccurrence){
+		if(this.memoryBudget>0)
+			return new SpilledWordRep(word, firstOccurrence);
+		else
+			return new WordRep(word);
+	}
+
+
+	/**
+	 * Estimates the bytes used by a new word: its String, its SpilledWordRep with an empty vector and an empty list of 
+	 * additional values, and its slot in the map of the words.
+	 * 
+	 * @param wordRep the new word
+	 * @return the estimated number of bytes when memoryBudget is set, 0 otherwise
+	 */
+	protected long wordFootprint(WordRep wordRep){
+		if(this.memoryBudget<=0)
+			return 0;
+		return LexiconTable.stringFootprint(wordRep.word)+LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE*5+4+8)
+				+LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE*5+4*5)+2*LexiconTable.arrayFootprint(17, 4)
+				+LexiconTable.objectFootprint(LexiconTable.REFERENCE_SIZE+4)+LexiconTable.arrayFootprint(10, 8)
+				+2*LexiconTable.REFERENCE_SIZE*4/3;
+	}
+
+
+	/**
+	 * Adds a document to a word.
+	 * 
+	 * @param wordRep the word
+	 * @param docFeatures the ids of the attributes of the document
+	 * @param docFreqs the frequencies of the attributes
+	 * @param metaValues the values of the additional attributes of the document
+	 * @return the estimated number of bytes added to the word when memoryBudget is set, 0 otherwise
+	 */
+	protected long addDoc(WordRep wordRep, int[] docFeatures, int[] docFreqs, double[] metaValues){
+		int numEntries=wordRep.wordSpace.size();
+		wordRep.addDoc(docFeatures, docFreqs); // add the document
+		if(this.considerNumericAtts){
+			wordRep.addMetaData(metaValues);						
+		}					
+		if(this.memoryBudget>0)
+			return (long) (wordRep.wordSpace.size()-numEntries)*ENTRY_BYTES+(metaValues==null ? 0 : 8L*metaValues.length);
+		return 0;
+	}
+
+
+	/**
+	 * Writes the words held in memory into a new spill file, sorted alphabetically. Each word is written with its first 
+	 * occurrence, its number of documents, its (attribute, frequency) pairs and the values of its additional attributes. 
+	 * 
+	 * @param words the words
+	 * @throws Exception if the file cannot be written
+	 */
+	protected void spill(Collection<WordRep> words) throws Exception {
+		long start=System.currentTimeMillis();
+
+		WordRep[] sorted=words.toArray(new WordRep[words.size()]);
+		Arrays.sort(sorted, new Comparator<WordRep>() {
+			@Override
+			public int compare(WordRep w1, WordRep w2) {
+				return w1.word.compareTo(w2.word);
+			}
+		});
+
+		File dir=new File(Environment.getSystemWide().substitute(this.spillDir.getPath()));
+		File spillFile=File.createTempFile("TweetCentroid-", ".spill", dir);
+		spillFile.deleteOnExit();
+		this.spillFiles.add(spillFile);
+
+		long numEntries=0;
+		Deflater deflater=new Deflater(Deflater.BEST_SPEED);
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(spillFile), 
+				deflater, SPILL_BUFFER_SIZE), SPILL_BUFFER_SIZE));
+		try{
+			for(WordRep wordRep:sorted){
+				SpilledWordRep spilled=(SpilledWordRep) wordRep;
+				out.writeBoolean(true);
+				out.writeUTF(spilled.word);
+				out.writeLong(spilled.firstOccurrence);
+				out.writeInt(spilled.numDoc);
+				out.writeInt(spilled.wordSpace.size());
+				for(Int2IntMap.Entry entry:spilled.wordSpace.int2IntEntrySet()){
+					out.writeInt(entry.getIntKey());
+					out.writeInt(entry.getIntValue());
 				}
+				out.writeInt(spilled.metaValues.size());
+				for(int i=0;i<spilled.metaValues.size();i++)
+					out.writeDouble(spilled.metaValues.getDouble(i));
+				numEntries+=spilled.wordSpace.size();
+			}
+			out.writeBoolean(false);
+		} finally {
+			out.close();
+			deflater.end();
+		}
+
+		if(this.getDebug()){
+			long time=Math.max(1, System.currentTimeMillis()-start);
+			System.err.println("Spilled "+sorted.length+" words with "+numEntries+" attribute values into "+spillFile+" ("
+					+spillFile.length()+" bytes) in "+time+" ms, "+(numEntries*1000/time)+" values/s");
+		}
+	}
 
 
-				// if the word is new we add it to the vocabulary, otherwise we
-				// add the document to the vector
-				for (String word : terms) {
+	/**
+	 * Completes a build with memoryBudget. If some words were spilled the remaining ones are spilled too, otherwise the 
+	 * values of their additional attributes are summed as in a build without memoryBudget.
+	 * 
+	 * @throws Exception if the spill file cannot be written
+	 */
+	protected void finishSpilling() throws Exception {
+		if(this.memoryBudget<=0)
+			return;
+
+		if(!this.spillFiles.isEmpty()){
+			if(!this.wordInfo.isEmpty())
+				this.spill(this.wordInfo.values());
+			this.wordInfo=new Object2ObjectOpenHashMap<String, WordRep>();
+		}
+		else{
+			for(WordRep wordRep:this.wordInfo.values())
+				((SpilledWordRep) wordRep).sumMetaValues();
+		}
+		this.wordInfoBytes=0;
+	}
 
 
-					WordRep wordRep;
+	/**
+	 * Calculates the vocabulary and the word vectors using numThreads threads. The tweets are processed in rounds
+	 * of blocks of BLOCK_SIZE tweets. The blocks of a round are tokenised in parallel, then their attributes are 
+	 * merged in order into attributeCount, and finally the words are added to their vectors by numThreads shards, 
+	 * each one owning the words whose hash falls into it. The shards add the tweets of a word in their original order
+	 * and the words are inserted into wordInfo in the order of their first occurrence, so the result is identical to the 
+	 * sequential construction.
+	 * 
+	 * @param inputFormat the input Instances
+	 * @param attrCont the attribute with the content of the tweets
+	 * @throws Exception if the featurisation of a block fails
+	 */
+	protected void computeWordVecsInParallel(final Instances inputFormat, final Attribute attrCont) throws Exception {
 
-					if (this.wordInfo.containsKey(word)) {
-						wordRep=this.wordInfo.get(word);
-						wordRep.addDoc(docVec); // add the document
+		// the tokenizer, stemmer and stopwords handler keep state, so each thread uses its own copies
+		final SerializedObject tools=new SerializedObject(new Object[]{this.m_tokenizer, this.m_stemmer, this.m_stopwordsHandler});
+		final ThreadLocal<Object[]> threadTools=new ThreadLocal<Object[]>(){
+			@Override
+			protected Object[] initialValue() {
+				try {
+					return (Object[]) tools.getObject();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		final int numShards=this.numThreads;
+		final ObjectList<ObjectList<WordRep>> shardWords=new ObjectArrayList<ObjectList<WordRep>>();
+		final ObjectList<LongList> shardFirstOccurrences=new ObjectArrayList<LongList>();
+		final ObjectList<Object2ObjectMap<String, WordRep>> shardInfo=new ObjectArrayList<Object2ObjectMap<String, WordRep>>();
+		for(int s=0;s<numShards;s++){
+			shardWords.add(new ObjectArrayList<WordRep>());
+			shardFirstOccurrences.add(new LongArrayList());
+			shardInfo.add(new Object2ObjectOpenHashMap<String, WordRep>());
+		}
 
-					} else{
-						wordRep=new WordRep(word);
-						wordRep.addDoc(docVec); // add the document
-						this.wordInfo.put(word, wordRep);						
+		ExecutorService pool=Executors.newFixedThreadPool(this.numThreads);
+		try{
+			int roundSize=2*this.numThreads*BLOCK_SIZE;
+			for(int roundStart=0;roundStart<inputFormat.numInstances();roundStart+=roundSize){
+				final int roundEnd=Math.min(roundStart+roundSize, inputFormat.numInstances());
+
+				List<Callable<DocBlock>> featurisers=new ArrayList<Callable<DocBlock>>();
+				for(int start=roundStart;start<roundEnd;start+=BLOCK_SIZE){
+					final int blockStart=start;
+					final int blockEnd=Math.min(start+BLOCK_SIZE, roundEnd);
+					featurisers.add(new Callable<DocBlock>() {
+						@Override
+						public DocBlock call() {
+							Object[] copies=threadTools.get();
+							return featurizeBlock(inputFormat, attrCont, blockStart, blockEnd, (Tokenizer) copies[0], 
+									(Stemmer) copies[1], (StopwordsHandler) copies[2]);
+						}
+					});
+				}
+				final List<DocBlock> blocks=affective.core.Utils.invokeAll(pool, featurisers);
+
+				// the attributes are merged in the order of the blocks, so they get the same ids and 
+				// the same position in attributeCount as in the sequential construction
+				for(DocBlock block:blocks){
+					int[] globalIds=new int[block.featureNames.size()];
+					for(int l=0;l<globalIds.length;l++){
+						String docAtt=block.featureNames.get(l);
+						if(this.attributeCount.containsKey(docAtt)){
+							this.attributeCount.put(docAtt,this.attributeCount.getInt(docAtt)+block.featureCounts.getInt(l));
+							globalIds[l]=this.featureIds.getInt(docAtt);
+						}
+						else{
+							this.attributeCount.put(docAtt,block.featureCounts.getInt(l));
+							globalIds[l]=this.featureNames.size();
+							this.featureIds.put(docAtt,globalIds[l]);
+							this.featureNames.add(docAtt);
+						}
 					}
+					for(int[] docFeatures:block.features)
+						for(int f=0;f<docFeatures.length;f++)
+							docFeatures[f]=globalIds[docFeatures[f]];
+				}
 
-					if(this.considerNumericAtts){
-						Object2DoubleMap<String> metaValues=new Object2DoubleOpenHashMap<String>();
-						for(Attribute att:this.numericAttributes){
-							// just consider attribute with values different from zero
-							double val=inst.value(att);
-							if(val!=0.0)
-								metaValues.put(att.name(),val);
+				final int firstTweet=roundStart;
+				List<Callable<Long>> shards=new ArrayList<Callable<Long>>();
+				for(int s=0;s<numShards;s++){
+					final int shard=s;
+					final Object2ObjectMap<String, WordRep> info=shardInfo.get(shard);
+					final ObjectList<WordRep> words=shardWords.get(shard);
+					final LongList firstOccurrences=shardFirstOccurrences.get(shard);
+					shards.add(new Callable<Long>() {
+						@Override
+						public Long call() {
+							return addToShard(blocks, firstTweet, shard, numShards, info, words, firstOccurrences);
 						}
-						wordRep.addMetaData(metaValues);						
-					}					
+					});
+				}
+				for(long bytes:affective.core.Utils.invokeAll(pool, shards))
+					this.wordInfoBytes+=bytes;
 
+				// the shards are spilled between rounds, when no thread is using them
+				if(this.memoryBudget>0 && this.wordInfoBytes>this.memoryBudget*1024L*1024L)
+					this.spillShards(shardInfo, shardWords, shardFirstOccurrences);
+			}
+		} finally {
+			pool.shutdown();
+		}
 
-				}
+		if(!this.spillFiles.isEmpty()){
+			this.spillShards(shardInfo, shardWords, shardFirstOccurrences);
+			this.finishSpilling();
+			return;
+		}
+
+		// the words of the shards are sorted by their first occurrence merging the shards
+		int[] heads=new int[numShards];
+		while(true){
+			int next=-1;
+			for(int s=0;s<numShards;s++){
+				if(heads[s]<shardWords.get(s).size() && (next==-1 || 
+						shardFirstOccurrences.get(s).getLong(heads[s])<shardFirstOccurrences.get(next).getLong(heads[next])))
+					next=s;
+			}
+			if(next==-1)
+				break;
+			WordRep wordRep=shardWords.get(next).get(heads[next]++);
+			// the words added by a previous batch in incremental mode keep their position
+			WordRep previous=this.wordInfo.get(wordRep.word);
+			if(previous!=null)
+				previous.addWordRep(wordRep, 1);
+			else
+				this.wordInfo.put(wordRep.word, wordRep);
+		}
 
+		this.finishSpilling();
+	}
+
+
+	/**
+	 * Spills the words of the shards and leaves the shards empty.
+	 * 
+	 * @param shardInfo the words of each shard and their WordRep
+	 * @param shardWords the WordRep of each shard in the order of their first occurrence
+	 * @param shardFirstOccurrences the first occurrence of each word of shardWords
+	 * @throws Exception if the spill file cannot be written
+	 */
+	protected void spillShards(ObjectList<Object2ObjectMap<String, WordRep>> shardInfo, ObjectList<ObjectList<WordRep>> shardWords, 
+			ObjectList<LongList> shardFirstOccurrences) throws Exception {
+		ObjectList<WordRep> words=new ObjectArrayList<WordRep>();
+		for(int s=0;s<shardWords.size();s++){
+			words.addAll(shardWords.get(s));
+			shardInfo.set(s, new Object2ObjectOpenHashMap<String, WordRep>());
+			shardWords.set(s, new ObjectArrayList<WordRep>());
+			shardFirstOccurrences.set(s, new LongArrayList());
+		}
+		if(!words.isEmpty())
+			this.spill(words);
+		this.wordInfoBytes=0;
+	}
 
 
+	/**
+	 * Tokenises a block of tweets and calculates their vectors. 
+	 * 
+	 * @param inputFormat the input Instances
+	 * @param attrCont the attribute with the content of the tweets
+	 * @param start the first tweet of the block
+	 * @param end the end of the block, exclusive
+	 * @param tokenizer the tokenizer used by the thread
+	 * @param stemmer the stemmer used by the thread
+	 * @param stopwordsHandler the stopwords handler used by the thread
+	 * @return the featurised block
+	 */
+	protected DocBlock featurizeBlock(Instances inputFormat, Attribute attrCont, int start, int end, Tokenizer tokenizer, 
+			Stemmer stemmer, StopwordsHandler stopwordsHandler) {
+		DocBlock block=new DocBlock(end-start);
+		Object2IntMap<String> localIds=new Object2IntOpenHashMap<String>();
+
+		for(int i=start;i<end;i++){
+			Instance inst=inputFormat.instance(i);
+			String content = inst.stringValue(attrCont);
+			List<String> tokens = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, tokenizer, stemmer, stopwordsHandler);
+
+			// the distinct terms are kept in the order of the set used by the sequential construction
+			AbstractObjectSet<String> terms=new  ObjectOpenHashSet<String>(); 
+			terms.addAll(tokens);
+			block.terms[i-start]=terms.toArray(new String[terms.size()]);
+
+			Object2IntMap<String> docVec=this.calculateDocVec(tokens);
+			int[] docFeatures=new int[docVec.size()];
+			int[] docFreqs=new int[docVec.size()];
+			int f=0;
+			for(Object2IntMap.Entry<String> entry:docVec.object2IntEntrySet()){
+				String docAtt=entry.getKey();
+				if(localIds.containsKey(docAtt)){
+					docFeatures[f]=localIds.getInt(docAtt);
+					block.featureCounts.set(docFeatures[f], block.featureCounts.getInt(docFeatures[f])+1);
+				}
+				else{
+					docFeatures[f]=block.featureNames.size();
+					localIds.put(docAtt, docFeatures[f]);
+					block.featureNames.add(docAtt);
+					block.featureCounts.add(1);
+				}
+				docFreqs[f]=entry.getIntValue();
+				f++;
+			}
+			block.features[i-start]=docFeatures;
+			block.freqs[i-start]=docFreqs;
+
+			if(this.considerNumericAtts){
+				double[] metaValues=new double[this.numericAttributes.size()];
+				for(int m=0;m<metaValues.length;m++)
+					metaValues[m]=inst.value(this.numericAttributes.get(m));
+				block.metaValues[i-start]=metaValues;
 			}
 		}
 
+		return block;
 	}
 
+
+	/**
+	 * Adds the tweets of a round to the words of a shard. A word belongs to the shard given by its hash code.
+	 * 
+	 * @param blocks the featurised blocks of the round, whose attributes have global ids
+	 * @param firstTweet the index of the first tweet of the round
+	 * @param shard the shard
+	 * @param numShards the number of shards
+	 * @param shardInfo the words of the shard and their WordRep
+	 * @param shardWords the WordRep of the shard in the order of their first occurrence
+	 * @param firstOccurrences the first occurrence of each word of shardWords, the tweet in the upper 32 bits and 
+	 * the position of the word among the distinct terms of the tweet in the lower ones
+	 * @return the estimated number of bytes added to the shard when memoryBudget is set, 0 otherwise
+	 */
+	protected long addToShard(List<DocBlock> blocks, int firstTweet, int shard, int numShards, Object2ObjectMap<String, WordRep> shardInfo,
+			ObjectList<WordRep> shardWords, LongList firstOccurrences) {
+		long bytes=0;
+		long tweet=firstTweet;
+		for(DocBlock block:blocks){
+			for(int t=0;t<block.terms.length;t++,tweet++){
+				String[] terms=block.terms[t];
+				for(int p=0;p<terms.length;p++){
+					String word=terms[p];
+					if((word.hashCode() & Integer.MAX_VALUE) % numShards!=shard || this.isRare(word))
+						continue;
+
+					WordRep wordRep=shardInfo.get(word);
+					if(wordRep==null){
+						wordRep=this.newWordRep(word, (tweet<<32) | p);
+						shardInfo.put(word, wordRep);
+						shardWords.add(wordRep);
+						firstOccurrences.add((tweet<<32) | p);
+						bytes+=this.wordFootprint(wordRep);
+					}
+					bytes+=this.addDoc(wordRep, block.features[t], block.freqs[t], block.metaValues[t]);
+				}
+			}
+		}
+		return bytes;
+	}
+
+
 	/* (non-Javadoc)
 	 * @see weka.filters.SimpleFilter#determineOutputFormat(weka.core.Instances)
 	 */
 	@Override
-	protected Instances determineOutputFormat(Instances inputFormat) {
+	protected Instances determineOutputFormat(Instances inputFormat) throws Exception {
 
 		// calculates the word frequency vectors and the vocabulary
 		this.computeWordVecsAndVoc(inputFormat);
@@ -405,8 +1441,9 @@ public class TweetCentroid extends TweetToFeatureVector {
 
 
 		if(this.considerNumericAtts){
+			// the attributes are copied, as the output format would change the indexes of the ones of the input format
 			for(Attribute metaAtt:this.numericAttributes){
-				att.add(metaAtt);
+				att.add(metaAtt.copy(metaAtt.name()));
 				i++;
 			}
 		}
@@ -441,58 +1478,238 @@ public class TweetCentroid extends TweetToFeatureVector {
 
 		Instances result = getOutputFormat();
 
+		// the index of the attribute of each id, -1 for attributes that are not valid
+		int[] attIndexes=new int[this.featureNames.size()];
+		for(int id=0;id<attIndexes.length;id++){
+			String feature=this.featureNames.get(id);
+			attIndexes[id]=this.m_Dictionary.containsKey(feature) ? this.m_Dictionary.getInt(feature) : -1;
+		}
+
+		int[] metaIndexes=null;
+		if(this.considerNumericAtts){
+			metaIndexes=new int[this.numericAttributes.size()];
+			for(int m=0;m<metaIndexes.length;m++)
+				metaIndexes[m]=result.attribute(this.numericAttributes.get(m).name()).index();
+		}
+
+		// the spill files are merged once, the following batches reuse the merged words
+		if(this.spillFiles!=null && !this.spillFiles.isEmpty()){
+			this.mergedWords=this.mergeSpills();
+			for(File spillFile:this.spillFiles)
+				spillFile.delete();
+			this.spillFiles.clear();
+		}
+
+		if(this.mergedWords!=null){
+			for(WordRep wordRep:this.mergedWords)
+				this.addWordVector(result, attIndexes, metaIndexes, wordRep);
+			return result;
+		}
+
+		if(this.decayedInfo!=null){
+			for(DecayedWordRep wordRep:this.decayedInfo.values())
+				this.addDecayedWordVector(result, attIndexes, metaIndexes, wordRep);
+			return result;
+		}
+
 		for(String word:this.wordInfo.keySet()){
 			// get the word vector
 			WordRep wordRep=this.wordInfo.get(word);
+			this.addWordVector(result, attIndexes, metaIndexes, wordRep);
+		}
 
-			// We just consider valid words
-			if(wordRep.numDoc>=this.minInstDocs){
-				double[] values = new double[result.numAttributes()];
 
 
-				for(String wordFeat:wordRep.wordSpace.keySet()){
-					// only include valid words
-					if(this.m_Dictionary.containsKey(wordFeat)){
-						int attIndex=this.m_Dictionary.getInt(wordFeat);
-						// we normalise the value by the number of documents
-						values[attIndex]=((double)wordRep.wordSpace.getInt(wordFeat))/wordRep.numDoc;					
-					}
-				}
+		return result;
 
 
-				if(this.considerNumericAtts){
-					for(Attribute metaAtt:this.numericAttributes){
-						String metaAttName=metaAtt.name();
-						values[result.attribute(metaAttName).index()]= wordRep.metaData.getDouble(metaAtt.name())/wordRep.numDoc;
-					}
 
 
+
+	}
+
+
+	/**
+	 * Adds the vector of a word to the output if the word occurs in at least minInstDocs documents.
+	 * 
+	 * @param result the output
+	 * @param attIndexes the index of the attribute of each id, -1 for attributes that are not valid
+	 * @param metaIndexes the index of each additional attribute
+	 * @param wordRep the word
+	 */
+	protected void addWordVector(Instances result, int[] attIndexes, int[] metaIndexes, WordRep wordRep){
+		String word=wordRep.word;
+
+		// We just consider valid words
+		if(wordRep.numDoc>=this.minInstDocs){
+			double[] values = new double[result.numAttributes()];
+
+
+			for(Int2IntMap.Entry entry:wordRep.wordSpace.int2IntEntrySet()){
+				// only include valid words
+				int attIndex=attIndexes[entry.getIntKey()];
+				if(attIndex!=-1){
+					// we normalise the value by the number of documents
+					values[attIndex]=((double)entry.getIntValue())/wordRep.numDoc;					
 				}
+			}
+
 
+			if(this.considerNumericAtts && wordRep.metaData!=null){
+				for(int m=0;m<metaIndexes.length;m++)
+					values[metaIndexes[m]]= wordRep.metaData[m]/wordRep.numDoc;
+
+
+			}
 
-				int wordNameIndex=result.attribute("WORD_NAME").index();
-				values[wordNameIndex]=result.attribute(wordNameIndex).addStringValue(word);					
 
+			int wordNameIndex=result.attribute("WORD_NAME").index();
+			values[wordNameIndex]=result.attribute(wordNameIndex).addStringValue(word);					
 
-				Instance inst=new SparseInstance(1, values);
 
-				inst.setDataset(result);
+			Instance inst=new SparseInstance(1, values);
 
-				result.add(inst);
+			inst.setDataset(result);
 
+			result.add(inst);
+
+		}
+	}
+
+
+	/**
+	 * Adds the vector of a word with decay to the output if its number of documents, weighted relative to the last batch, 
+	 * is at least minInstDocs. The weights of the batches cancel out in the normalised values.
+	 * 
+	 * @param result the output
+	 * @param attIndexes the index of the attribute of each id, -1 for attributes that are not valid
+	 * @param metaIndexes the index of each additional attribute
+	 * @param wordRep the word
+	 */
+	protected void addDecayedWordVector(Instances result, int[] attIndexes, int[] metaIndexes, DecayedWordRep wordRep){
+		if(wordRep.numDoc/this.batchWeight>=this.minInstDocs){
+			double[] values = new double[result.numAttributes()];
+
+			for(Int2DoubleMap.Entry entry:wordRep.wordSpace.int2DoubleEntrySet()){
+				int attIndex=attIndexes[entry.getIntKey()];
+				if(attIndex!=-1)
+					values[attIndex]=entry.getDoubleValue()/wordRep.numDoc;
 			}
 
+			if(this.considerNumericAtts && wordRep.metaData!=null){
+				for(int m=0;m<metaIndexes.length;m++)
+					values[metaIndexes[m]]= wordRep.metaData[m]/wordRep.numDoc;
+			}
+
+			int wordNameIndex=result.attribute("WORD_NAME").index();
+			values[wordNameIndex]=result.attribute(wordNameIndex).addStringValue(wordRep.word);					
 
+			Instance inst=new SparseInstance(1, values);
+			inst.setDataset(result);
+			result.add(inst);
 		}
+	}
 
 
+	/**
+	 * Merges the spill files. The records of a word are combined in the order of the files, so the values of the additional 
+	 * attributes are summed in the order of the documents. The words are then sorted in the order of a map of the same type 
+	 * as wordInfo into which they are inserted by first occurrence, which only needs their hash codes, so the output is 
+	 * identical to the one of a build in memory.
+	 * 
+	 * @return the words that occur in at least minInstDocs documents in the order of the output
+	 * @throws Exception if a spill file cannot be read
+	 */
+	protected ObjectList<WordRep> mergeSpills() throws Exception {
+		long start=System.currentTimeMillis();
+		int numMeta=this.considerNumericAtts ? this.numericAttributes.size() : 0;
+
+		PriorityQueue<SpillReader> heads=new PriorityQueue<SpillReader>(this.spillFiles.size(), new Comparator<SpillReader>() {
+			@Override
+			public int compare(SpillReader r1, SpillReader r2) {
+				int cmp=r1.word.compareTo(r2.word);
+				return cmp!=0 ? cmp : r1.spill-r2.spill;
+			}
+		});
+
+		// the first occurrence and the hash code of every word, and the words that are added to the output
+		final LongList firstOccurrences=new LongArrayList();
+		IntList hashes=new IntArrayList();
+		ObjectList<WordRep> validWords=new ObjectArrayList<WordRep>();
+
+		long numRecords=0;
+		long numBytes=0;
+		ObjectList<SpillReader> readers=new ObjectArrayList<SpillReader>();
+		try{
+			for(int i=0;i<this.spillFiles.size();i++){
+				SpillReader reader=new SpillReader(this.spillFiles.get(i), i);
+				readers.add(reader);
+				numBytes+=this.spillFiles.get(i).length();
+				if(reader.next())
+					heads.add(reader);
+			}
 
-		return result;
+			while(!heads.isEmpty()){
+				SpillReader reader=heads.poll();
+				WordRep wordRep=new WordRep(reader.word);
+				firstOccurrences.add(reader.firstOccurrence);
+				hashes.add(reader.word.hashCode());
+				if(this.considerNumericAtts)
+					wordRep.metaData=new double[numMeta];
+
+				while(true){
+					wordRep.numDoc+=reader.numDoc;
+					for(int i=0;i<reader.numEntries;i++)
+						wordRep.wordSpace.addTo(reader.features[i], reader.freqs[i]);
+					for(int i=0;i<reader.numMetaValues;i++)
+						wordRep.metaData[i%numMeta]+=reader.metaValues[i];
+					numRecords++;
+
+					if(reader.next())
+						heads.add(reader);
+					if(heads.isEmpty() || !heads.peek().word.equals(wordRep.word))
+						break;
+					reader=heads.poll();
+				}
 
+				validWords.add(wordRep.numDoc>=this.minInstDocs ? wordRep : null);
+			}
+		} finally {
+			for(SpillReader reader:readers)
+				reader.close();
+		}
 
+		if(this.getDebug()){
+			long time=Math.max(1, System.currentTimeMillis()-start);
+			System.err.println("Merged "+numRecords+" records of "+this.spillFiles.size()+" spill files ("+numBytes+" bytes) into "
+					+firstOccurrences.size()+" words in "+time+" ms, "+(numRecords*1000/time)+" records/s");
+		}
 
+		int[] byOccurrence=new int[firstOccurrences.size()];
+		for(int i=0;i<byOccurrence.length;i++)
+			byOccurrence[i]=i;
+		IntArrays.quickSort(byOccurrence, new IntComparator() {
+			@Override
+			public int compare(int w1, int w2) {
+				long o1=firstOccurrences.getLong(w1);
+				long o2=firstOccurrences.getLong(w2);
+				return o1<o2 ? -1 : (o1==o2 ? 0 : 1);
+			}
+		});
 
+		Object2ObjectMap<HashedWord, HashedWord> order=new Object2ObjectOpenHashMap<HashedWord, HashedWord>();
+		for(int w:byOccurrence){
+			HashedWord hashedWord=new HashedWord(hashes.getInt(w), w);
+			order.put(hashedWord, hashedWord);
+		}
 
+		ObjectList<WordRep> merged=new ObjectArrayList<WordRep>();
+		for(HashedWord hashedWord:order.keySet()){
+			WordRep wordRep=validWords.get(hashedWord.ordinal);
+			if(wordRep!=null)
+				merged.add(wordRep);
+		}
+		return merged;
 	}
 
 
@@ -502,6 +1719,55 @@ public class TweetCentroid extends TweetToFeatureVector {
 
 
 
+
+	/* (non-Javadoc)
+	 * @see weka.filters.SimpleBatchFilter#input(weka.core.Instance)
+	 */
+	@Override
+	public boolean input(Instance instance) throws Exception {
+		// in incremental mode the tweets of the following batches are kept until the batch is finished 
+		if(this.incremental && this.isFirstBatchDone()){
+			if(this.m_NewBatch){
+				this.resetQueue();
+				this.m_NewBatch=false;
+			}
+			this.bufferInput(instance);
+			return false;
+		}
+		return super.input(instance);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see weka.filters.SimpleBatchFilter#batchFinished()
+	 */
+	@Override
+	public boolean batchFinished() throws Exception {
+		// in incremental mode a following batch is added to the word vectors, which are output again
+		if(this.incremental && this.isFirstBatchDone()){
+			if(this.m_NewBatch){
+				this.resetQueue();
+				this.m_NewBatch=false;
+			}
+			Instances batch=new Instances(this.getInputFormat());
+			this.flushInput();
+
+			this.updateWordVecs(batch);
+			Instances result=this.process(batch);
+			for(int i=0;i<result.numInstances();i++)
+				this.push(result.instance(i), false);
+
+			this.m_NewBatch=true;
+			return this.numPendingOutput()!=0;
+		}
+		return super.batchFinished();
+	}
+
+
+
+
+
+
 	@OptionMetadata(displayName = "minAttDocs",
 			description = "Minimum frequency of a sparse attribute to be considered in the attribute space.", 
 			commandLineParamName = "M", 
@@ -600,6 +1866,112 @@ public class TweetCentroid extends TweetToFeatureVector {
 	}
 
 
+
+	@OptionMetadata(displayName = "numThreads",
+			description = "The number of threads building the word vectors. With more than one thread, blocks of tweets are tokenised"
+					+ " in parallel and the words are split into shards by their hash. The result is identical to the one of a single thread. Default: 1.",
+			commandLineParamName = "threads", 
+			commandLineParamSynopsis = "-threads <int>",
+			displayOrder = 13)		
+	public int getNumThreads() {
+		return numThreads;
+	}
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+
+
+	@OptionMetadata(displayName = "memoryBudget",
+			description = "The approximate number of megabytes of word vectors held in memory. When they exceed it they are written to"
+					+ " a spill file and merged from disk at the end, with the same result as in memory. 0 for no limit. Default: 0.",
+			commandLineParamName = "memoryBudget", 
+			commandLineParamSynopsis = "-memoryBudget <int>",
+			displayOrder = 14)		
+	public int getMemoryBudget() {
+		return memoryBudget;
+	}
+	public void setMemoryBudget(int memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+
+
+	@OptionMetadata(displayName = "spillDir",
+			description = "The directory of the spill files, which can contain environment variables. Default: ${java.io.tmpdir}.",
+			commandLineParamName = "spillDir", 
+			commandLineParamSynopsis = "-spillDir <string>",
+			displayOrder = 15)		
+	public File getSpillDir() {
+		return spillDir;
+	}
+	public void setSpillDir(File spillDir) {
+		this.spillDir = spillDir;
+	}
+
+
+
+	@OptionMetadata(displayName = "incremental",
+			description = "True for adding the tweets of the batches after the first one to the word vectors, which are output again"
+					+ " after each batch. The attributes are the ones of the first batch.",
+			commandLineParamIsFlag = true, 
+			commandLineParamName = "incremental", 
+			commandLineParamSynopsis = "-incremental",
+			displayOrder = 16)		
+	public boolean isIncremental() {
+		return incremental;
+	}
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+
+
+	@OptionMetadata(displayName = "decay",
+			description = "The factor by which the weight of the previous batches is multiplied when a batch is added in incremental mode."
+					+ " Default: 1.0 (no decay).",
+			commandLineParamName = "decay", 
+			commandLineParamSynopsis = "-decay <double>",
+			displayOrder = 17)		
+	public double getDecay() {
+		return decay;
+	}
+	public void setDecay(double decay) {
+		this.decay = decay;
+	}
+
+
+
+	@OptionMetadata(displayName = "windowSize",
+			description = "The number of most recent batches represented by the word vectors in incremental mode, it cannot be used"
+					+ " together with decay. Default: 0 (all the batches).",
+			commandLineParamName = "window", 
+			commandLineParamSynopsis = "-window <int>",
+			displayOrder = 18)		
+	public int getWindowSize() {
+		return windowSize;
+	}
+	public void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+
+
+	@OptionMetadata(displayName = "pruning",
+			description = "A pre-pass over the tweets that counts the documents of each word, so that only the words that can reach "
+					+ "minInstDocs get a word vector: NONE (no pre-pass), EXACT (a hash map of the words) or SKETCH (a count-min sketch of fixed "
+					+ "size, which keeps a few more words). The tweets are tokenised twice. Default: NONE.",
+			commandLineParamName = "prune", 
+			commandLineParamSynopsis = "-prune <string>",
+			displayOrder = 19)		
+	public DocFrequencyCounter.Pruning getPruning() {
+		return pruning;
+	}
+	public void setPruning(DocFrequencyCounter.Pruning pruning) {
+		this.pruning = pruning;
+	}
+
+
 	/**
 	 * Main method for testing this class.
 	 *
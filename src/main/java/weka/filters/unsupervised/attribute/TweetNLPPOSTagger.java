@@ -35,6 +35,7 @@ import cmu.arktweetnlp.Tagger;
 import cmu.arktweetnlp.impl.ModelSentence;
 import cmu.arktweetnlp.impl.Sentence;
 
+import affective.core.ResourceRegistry;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -104,6 +105,60 @@ public class TweetNLPPOSTagger  extends SimpleBatchFilter {
 
 
 
+	/**
+	 * Gets the tagger for a model file. The tagger is shared through the ResourceRegistry, 
+	 * the vocabularies of a loaded model are locked and tagging does not modify it.
+	 * 
+	 * @param taggerFile the file with the tagger model
+	 * @return the tagger
+	 * @throws IOException in case of wrong file
+	 */
+	public static Tagger loadTagger(File taggerFile) throws IOException {
+		return ResourceRegistry.get(taggerKey(taggerFile), taggerLoader(taggerFile));
+	}
+
+
+	/**
+	 * Starts loading the tagger for a model file in the background.
+	 * 
+	 * @param taggerFile the file with the tagger model
+	 */
+	public static void preloadTagger(File taggerFile) {
+		if(taggerFile.exists())
+			ResourceRegistry.submit(taggerKey(taggerFile), taggerLoader(taggerFile));
+	}
+
+
+	/**
+	 * Gets the key identifying a tagger in the ResourceRegistry.
+	 * 
+	 * @param taggerFile the file with the tagger model
+	 * @return the key
+	 */
+	protected static String taggerKey(File taggerFile) {
+		return ResourceRegistry.key(Tagger.class.getName(), ResourceRegistry.fileKey(taggerFile));
+	}
+
+
+	/**
+	 * Creates a loader for the tagger of a model file.
+	 * 
+	 * @param taggerFile the file with the tagger model
+	 * @return the loader
+	 */
+	protected static ResourceRegistry.Loader<Tagger> taggerLoader(final File taggerFile) {
+		return new ResourceRegistry.Loader<Tagger>() {
+			@Override
+			public Tagger load() throws IOException {
+				Tagger tagger=new Tagger();
+				tagger.loadModel(taggerFile.getAbsolutePath());
+				return tagger;
+			}
+		};
+	}
+
+
+
 
 
 
@@ -218,6 +273,22 @@ public class TweetNLPPOSTagger  extends SimpleBatchFilter {
 	}
 
 
+	/**
+	 * Sets the format of the input instances and starts loading the tagger in the background 
+	 * while the first batch is being input.
+	 * 
+	 * @param instanceInfo the format of the input instances
+	 * @return true if the output format is immediately available
+	 * @throws Exception if the input format cannot be set
+	 */
+	@Override
+	public boolean setInputFormat(Instances instanceInfo) throws Exception {
+		boolean immediate=super.setInputFormat(instanceInfo);
+		preloadTagger(this.taggerFile);
+		return immediate;
+	}
+
+
 
 
 
@@ -281,9 +352,8 @@ public class TweetNLPPOSTagger  extends SimpleBatchFilter {
 
 		if (!this.isFirstBatchDone()){
 
-			this.tagger= new Tagger();
 			try {
-				this.tagger.loadModel(taggerFile.getAbsolutePath());
+				this.tagger=loadTagger(this.taggerFile);
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
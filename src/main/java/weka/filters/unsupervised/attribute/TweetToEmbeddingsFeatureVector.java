@@ -22,18 +22,20 @@
 
 package weka.filters.unsupervised.attribute;
 
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import affective.core.CSVEmbeddingHandler;
 import affective.core.EmbeddingHandler;
-import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
 import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionMetadata;
-import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.WekaPackageManager;
 import weka.core.TechnicalInformation.Type;
@@ -94,6 +96,14 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 	protected int k=15;
 
 
+	/** True for loading only the vectors of the words of the first batch. */
+	protected boolean vocabularyOnly=false;
+
+
+	/** The maximum number of vectors of words not found in the first batch kept in memory. */
+	protected int cacheSize=10000;
+
+
 	/**
 	 * Returns a string describing this filter.
 	 * 
@@ -128,6 +138,24 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 
 
 
+	/**
+	 * Sets the format of the input instances and starts loading the embeddings in the background 
+	 * while the first batch is being input. The vectors of a vocabulary can only be loaded once the
+	 * first batch is complete.
+	 * 
+	 * @param instanceInfo the format of the input instances
+	 * @return true if the output format is immediately available
+	 * @throws Exception if the input format cannot be set
+	 */
+	@Override
+	public boolean setInputFormat(Instances instanceInfo) throws Exception {
+		boolean immediate=super.setInputFormat(instanceInfo);
+		if(!this.vocabularyOnly)
+			this.embeddingHandler.preloadDict();
+		return immediate;
+	}
+
+
 	/* (non-Javadoc)
 	 * @see weka.filters.SimpleFilter#determineOutputFormat(weka.core.Instances)
 	 */
@@ -148,7 +176,10 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 
 		// The dictionaries of the lexicons are initialized only in the first batch
 		if(!this.isFirstBatchDone()){
-			this.embeddingHandler.createDict();						
+			if(this.vocabularyOnly)
+				this.embeddingHandler.createDict(this.vocabulary(inputFormat), this.cacheSize);
+			else
+				this.embeddingHandler.createDict();						
 		}
 
 
@@ -176,6 +207,23 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 
 
 
+	/**
+	 * Gets the words of the tweets of a batch.
+	 * 
+	 * @param instances the batch
+	 * @return the words
+	 */
+	protected Set<String> vocabulary(Instances instances) {
+		Set<String> words=new ObjectOpenHashSet<String>();
+		for (int i = 0; i < instances.numInstances(); i++) {
+			String content = instances.instance(i).stringValue(this.m_textIndex.getIndex());
+			words.addAll(affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler));
+		}
+		return words;
+	}
+
+
+
 	/* (non-Javadoc)
 	 * @see weka.filters.SimpleFilter#process(weka.core.Instances)
 	 */
@@ -187,6 +235,10 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 		// reference to the content of the message
 		Attribute attrCont = instances.attribute(this.m_textIndex.getIndex());
 
+		// the embeddings are added after the attributes of the input
+		int firstEmbedding = instances.numAttributes();
+		int dimensions = this.embeddingHandler.getDimensions();
+
 
 		for (int i = 0; i < instances.numInstances(); i++) {
 			double[] values = new double[result.numAttributes()];
@@ -196,35 +248,23 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 			String content = instances.instance(i).stringValue(attrCont);
 			List<String> words = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
 
-
+			// the vector of each word is added to the values at the offset given by the action
+			double divisor = m_action.equals(Action.AVERAGE_ACTION) ? words.size() : 1;
 			int m=0;
 			for(String word:words){
-				if(this.embeddingHandler.getWordMap().containsKey(word)){
-					AbstractDoubleList embforWordVals=this.embeddingHandler.getWordMap().get(word);
-					int j=0;
-					for(double embDimVal:embforWordVals){						
-						if(m_action.equals(Action.AVERAGE_ACTION)){
-							values[result.attribute("Embedding-"+j).index()] += embDimVal/words.size();	
-						}
-						else if(m_action.equals(Action.ADD_ACTION)){
-							values[result.attribute("Embedding-"+j).index()] += embDimVal;
-						}
-						else if(m_action.equals(Action.CONCATENATE_ACTION)){
-							if(m<this.k){
-								values[result.attribute("Embedding-"+m+","+j).index()] += embDimVal;
-							}
-						}
-
-						j++;
-					}					
+				if(m_action.equals(Action.CONCATENATE_ACTION)){
+					if(m>=this.k)
+						break;
+					this.embeddingHandler.addVector(word, values, firstEmbedding+m*dimensions, divisor);
 				}
+				else
+					this.embeddingHandler.addVector(word, values, firstEmbedding, divisor);
 				m++;
-
 			}
 
 
-
-			Instance inst = new SparseInstance(1, values);
+			// all the embedding attributes are usually non-zero
+			Instance inst = new DenseInstance(1, values);
 
 			inst.setDataset(result);
 
@@ -274,7 +314,7 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 
 
 	@OptionMetadata(displayName = "embeddingHandler",
-			description = "The embeddingHandler object to use.",
+			description = "The embeddingHandler object to use. The embeddings start loading in the background when the input format is set.",
 			commandLineParamName = "embeddingHandler",
 			commandLineParamSynopsis = "-embeddingHandler <string>", displayOrder = 6)		
 	public EmbeddingHandler getEmbeddingHandler() {
@@ -285,6 +325,32 @@ public class TweetToEmbeddingsFeatureVector extends TweetToFeatureVector {
 	}
 
 
+	@OptionMetadata(displayName = "vocabularyOnly",
+			description = "Load only the vectors of the words of the first batch instead of all the vectors of the embeddings file. "
+					+ "The vectors of other words are fetched on demand from an index of the embeddings file, which is built when the "
+					+ "first word out of the vocabulary is read. The vectors are rounded to floats, which is the precision of the index.",
+			commandLineParamName = "vocabulary", commandLineParamSynopsis = "-vocabulary", commandLineParamIsFlag = true,
+			displayOrder = 8)
+	public boolean getVocabularyOnly() {
+		return vocabularyOnly;
+	}
+	public void setVocabularyOnly(boolean vocabularyOnly) {
+		this.vocabularyOnly = vocabularyOnly;
+	}
+
+
+	@OptionMetadata(displayName = "cacheSize",
+			description = "The maximum number of vectors fetched on demand kept in memory when only the vectors of the first batch are loaded (default 10000).",
+			commandLineParamName = "cacheSize", commandLineParamSynopsis = "-cacheSize <int>",
+			displayOrder = 9)
+	public int getCacheSize() {
+		return cacheSize;
+	}
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+
 	/**
 	 * Main method for testing this class.
 	 *
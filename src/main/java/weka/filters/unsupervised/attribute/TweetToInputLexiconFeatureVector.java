@@ -25,7 +25,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import affective.core.ArffLexiconEvaluator;
 import weka.core.Attribute;
@@ -61,9 +63,16 @@ public class TweetToInputLexiconFeatureVector extends TweetToFeatureVector {
 	public static String NRC_AFFECT_INTENSITY_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"NRC-AffectIntensity-Lexicon.arff";
 
 
+	/** The number of tweets evaluated by each task when the lexicons are evaluated in parallel. */
+	protected static final int BLOCK_SIZE = 256;
+
+
 	/** List of Lexicons to use. */
 	protected ArffLexiconEvaluator[] lexiconEval=new ArffLexiconEvaluator[]{new ArffLexiconEvaluator()};
 
+	/** The number of threads evaluating the lexicons. */
+	protected int numThreads=1;
+
 
 
 	/**
@@ -154,41 +163,108 @@ public class TweetToInputLexiconFeatureVector extends TweetToFeatureVector {
 		Attribute attrCont = instances.attribute(this.m_textIndex.getIndex());
 
 
-		for (int i = 0; i < instances.numInstances(); i++) {
-			double[] values = new double[result.numAttributes()];
-			for (int n = 0; n < instances.numAttributes(); n++)
-				values[n] = instances.instance(i).value(n);
-
-			String content = instances.instance(i).stringValue(attrCont);
-			List<String> words = affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler);
+		// the features of each lexicon are added after the ones of the previous lexicons
+		int[] offsets = new int[this.lexiconEval.length];
+		int offset = instances.numAttributes();
+		for (int l = 0; l < this.lexiconEval.length; l++) {
+			offsets[l] = offset;
+			offset += this.lexiconEval[l].getFeatureNames().size();
+		}
 
+		// the tweets are processed in chunks, only the dense values of a chunk are held at once
+		ExecutorService pool = this.numThreads > 1 ? Executors.newFixedThreadPool(this.numThreads) : null;
+		int chunkSize = Math.max(1, this.numThreads) * BLOCK_SIZE;
+		try {
+			for (int start = 0; start < instances.numInstances(); start += chunkSize) {
+				int end = Math.min(start + chunkSize, instances.numInstances());
 
+				double[][] matrix = new double[end - start][];
+				List<List<String>> tokenizedTweets = new ArrayList<List<String>>(end - start);
+				for (int i = start; i < end; i++) {
+					double[] values = new double[result.numAttributes()];
+					for (int n = 0; n < instances.numAttributes(); n++)
+						values[n] = instances.instance(i).value(n);
+					matrix[i - start] = values;
 
+					String content = instances.instance(i).stringValue(attrCont);
+					tokenizedTweets.add(affective.core.Utils.tokenize(content, this.toLowerCase, this.standarizeUrlsUsers, this.reduceRepeatedLetters, this.m_tokenizer,this.m_stemmer,this.m_stopwordsHandler));
+				}
 
-			for(ArffLexiconEvaluator lexEval:this.lexiconEval){
-				Map<String,Double> featuresForLex=lexEval.evaluateTweet(words);
-				for(String featName:featuresForLex.keySet()){
-					values[result.attribute(featName).index()] = featuresForLex.get(featName);
-				}			
-			}
-
+				if (pool != null)
+					this.evaluateLexiconsInParallel(pool, tokenizedTweets, matrix, offsets);
+				else
+					for (int l = 0; l < this.lexiconEval.length; l++)
+						this.evaluateLexicon(this.lexiconEval[l], tokenizedTweets, matrix, offsets[l], 0, matrix.length);
 
+				for (int i = 0; i < matrix.length; i++) {
+					Instance inst = new SparseInstance(1, matrix[i]);
 
+					inst.setDataset(result);
 
+					// copy possible strings, relational values...
+					copyValues(inst, false, instances, result);
 
+					result.add(inst);
+				}
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
 
-			Instance inst = new SparseInstance(1, values);
+		return result;
+	}
 
-			inst.setDataset(result);
 
-			// copy possible strings, relational values...
-			copyValues(inst, false, instances, result);
+	/**
+	 * Evaluates a lexicon on a block of tweets.
+	 * 
+	 * @param lexEval the lexicon
+	 * @param tokenizedTweets the tokens of all the tweets
+	 * @param matrix the values of all the instances
+	 * @param offset the position of the first feature of the lexicon
+	 * @param start the first tweet of the block
+	 * @param end the end of the block, exclusive
+	 */
+	protected void evaluateLexicon(ArffLexiconEvaluator lexEval, List<List<String>> tokenizedTweets, 
+			double[][] matrix, int offset, int start, int end) {
+		for (int i = start; i < end; i++)
+			lexEval.evaluateTweet(tokenizedTweets.get(i), matrix[i], offset);
+	}
 
-			result.add(inst);
 
+	/**
+	 * Evaluates all the lexicons on a chunk of tweets using the threads of a pool. The work is split 
+	 * into tiles of BLOCK_SIZE tweets and one lexicon, which are taken by the threads from a shared queue. 
+	 * Each tile writes its own cells of the matrix, so the result does not depend on the order of the tiles.
+	 * 
+	 * @param pool the threads
+	 * @param tokenizedTweets the tokens of the tweets of the chunk
+	 * @param matrix the values of the instances of the chunk
+	 * @param offsets the position of the first feature of each lexicon
+	 * @throws Exception if the evaluation of a tile fails
+	 */
+	protected void evaluateLexiconsInParallel(ExecutorService pool, final List<List<String>> tokenizedTweets, 
+			final double[][] matrix, int[] offsets) throws Exception {
+		List<Callable<Void>> tiles = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < matrix.length; start += BLOCK_SIZE) {
+			final int blockStart = start;
+			final int blockEnd = Math.min(start + BLOCK_SIZE, matrix.length);
+			// the tiles of a block are consecutive, so its tokens are shared while they are in the cache
+			for (int l = 0; l < this.lexiconEval.length; l++) {
+				final ArffLexiconEvaluator lexEval = this.lexiconEval[l];
+				final int offset = offsets[l];
+				tiles.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						evaluateLexicon(lexEval, tokenizedTweets, matrix, offset, blockStart, blockEnd);
+						return null;
+					}
+				});
+			}
 		}
 
-		return result;
+		affective.core.Utils.invokeAll(pool, tiles);
 	}
 
 
@@ -204,6 +280,19 @@ public class TweetToInputLexiconFeatureVector extends TweetToFeatureVector {
 	public void setLexiconEval(ArffLexiconEvaluator[] lexiconEval) {
 		this.lexiconEval = lexiconEval;
 	}
+
+
+	@OptionMetadata(displayName = "numThreads",
+			description = "The number of threads evaluating the lexicons. With more than one thread, blocks of tweets are evaluated"
+					+ " in parallel across lexicons and instances. The dense values of numThreads blocks of tweets are held at once. Default: 1.",
+			commandLineParamName = "threads",
+			commandLineParamSynopsis = "-threads <int>", displayOrder = 7)		
+	public int getNumThreads() {
+		return numThreads;
+	}
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
 	
 
 	/**
@@ -23,17 +23,24 @@ package weka.filters.unsupervised.attribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import affective.core.IntensityLexiconEvaluator;
+import affective.core.LexiconBundle;
 import affective.core.LexiconEvaluator;
 import affective.core.NRCEmotionLexiconEvaluator;
 import affective.core.NRCExpandedEmotionLexiconEvaluator;
 import affective.core.NRCHashtagEmotionLexiconEvaluator;
 import affective.core.NegationEvaluator;
+import affective.core.PhraseLexiconEvaluator;
 import affective.core.PolarityLexiconEvaluator;
+import affective.core.ResourceRegistry;
 import affective.core.SWN3LexiconEvaluator;
 import weka.core.Attribute;
 import weka.core.Instance;
@@ -97,6 +104,12 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 	/** The path of the NRC-Hashtag-Sentiment lexicon. */
 	public static String NRC_HASH_SENT_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"NRC-Hashtag-Sentiment-Lexicon-v0.1"+java.io.File.separator+"unigrams-pmilexicon.txt.gz";
 
+	/** The path of the S140 bigram lexicon. */
+	public static String S140_BIGRAMS_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"Sentiment140-Lexicon-v0.1"+java.io.File.separator+"bigrams-pmilexicon.txt.gz";
+
+	/** The path of the NRC-Hashtag-Sentiment bigram lexicon. */
+	public static String NRC_HASH_SENT_BIGRAMS_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"NRC-Hashtag-Sentiment-Lexicon-v0.1"+java.io.File.separator+"bigrams-pmilexicon.txt.gz";
+
 	/** The path of the NRC-emotion lexicon. */
 	public static String NRC10_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"NRC-emotion-lexicon-wordlevel-v0.92.txt.gz";
 
@@ -121,6 +134,10 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 	public static String NEGATION_LIST_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"NegatingWordList.txt.gz";
 
 
+	/** The path of the bundle with the compiled lexicons. */
+	public static String LEXICON_BUNDLE_FILE_NAME=LEXICON_FOLDER_NAME+java.io.File.separator+"lexicons.bundle";
+
+
 	/** True for calculating features from the MPQA lexicon. */
 	protected boolean useMpqa=true;
 
@@ -139,6 +156,14 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 	protected boolean useNrcHashSent=true;
 
 
+	/** True for calculating features from the S140 bigram lexicon. */
+	protected boolean useS140Bigrams=false;
+
+
+	/** True for calculating features from the NRC-Hashtag-Sentiment bigram lexicon. */
+	protected boolean useNrcHashSentBigrams=false;
+
+
 	/** True for calculating features from the NRC-emotion lexicon. */
 	protected boolean useNrc10=true;
 
@@ -161,8 +186,12 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 	protected boolean useNegation=true;
 
 
-	/** List of Lexicons to use. */
-	private List<LexiconEvaluator> lexicons=new ArrayList<LexiconEvaluator>();
+	/** The bundle with the compiled lexicons. The lexicons are parsed from their files if the bundle does not exist. */
+	protected File lexiconBundle=new File(LEXICON_BUNDLE_FILE_NAME);
+
+
+	/** List of Lexicons to use. The lexicons are shared through the ResourceRegistry and are resolved again after deserialization. */
+	private transient List<LexiconEvaluator> lexicons=new ArrayList<LexiconEvaluator>();
 
 
 	/**
@@ -204,154 +233,187 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 	 * Initializes the dictionaries of all the lexicons to use. 
 	 */
 	protected void initializeDicts() {
-
-		if(this.useMpqa){
-			LexiconEvaluator mpqaLex = new PolarityLexiconEvaluator(
-					MPQA_FILE_NAME,"mpqa");
-			try {
-				mpqaLex.processDict();
-				this.lexicons.add(mpqaLex);
-			} catch (IOException e) {
-				this.useMpqa=false;
-			}			
-
-		}
-
-		if(this.useBingLiu){
-			LexiconEvaluator bingLiuLex = new PolarityLexiconEvaluator(
-					BING_LIU_FILE_NAME,"BingLiu");
-			try{
-				bingLiuLex.processDict();				
-				this.lexicons.add(bingLiuLex);				
-			}
-			catch (IOException e) {
-				this.useBingLiu=false;
-			}	
-		}
-
-
-
-		if(this.useAfinn){
-			LexiconEvaluator afinnLex = new IntensityLexiconEvaluator(
-					AFINN_FILE_NAME,"AFINN");
-			try {
-				afinnLex.processDict();
-				this.lexicons.add(afinnLex);
-			} catch (IOException e) {
-				this.useAfinn=false;
-			}
-
-		}
-
-
-		if(this.useS140){
-			LexiconEvaluator s140Lex = new IntensityLexiconEvaluator(
-					S140_FILE_NAME,"S140");
+		LexiconBundle bundle=null;
+		if(this.lexiconBundle.exists()){
+			final File bundleFile=this.lexiconBundle;
 			try {
-				s140Lex.processDict();
-				this.lexicons.add(s140Lex);
+				bundle=ResourceRegistry.get(ResourceRegistry.key(LexiconBundle.class.getName(), ResourceRegistry.fileKey(bundleFile)),
+						new ResourceRegistry.Loader<LexiconBundle>() {
+					@Override
+					public LexiconBundle load() throws IOException {
+						return LexiconBundle.open(bundleFile);
+					}
+				});
 			} catch (IOException e) {
-				this.useS140=false;
+				// the lexicons are parsed from their files
+				bundle=null;
 			}
-
-		}
-
-
-		if(this.useNrcHashSent){
-			LexiconEvaluator nrcHashSentLex = new IntensityLexiconEvaluator(
-					NRC_HASH_SENT_FILE_NAME,"NRC-Hash-Sent");
-			try {
-				nrcHashSentLex.processDict();
-				this.lexicons.add(nrcHashSentLex);
-			} catch (IOException e) {
-				this.useNrcHashSent=false;
-			}		
-
 		}
+		this.initializeDicts(bundle);
+	}
 
 
-		if(this.useNrc10){
-			LexiconEvaluator nrc10Lex = new NRCEmotionLexiconEvaluator(
-					NRC10_FILE_NAME,"NRC-10");
-			try {
-				nrc10Lex.processDict();
-				this.lexicons.add(nrc10Lex);
-			} catch (IOException e) {
-				this.useNrc10=false;
+	/**
+	 * Starts loading the dictionary of a lexicon in the background. A lexicon already loaded by another 
+	 * filter in this JVM is obtained from the ResourceRegistry.
+	 * 
+	 * @param lex the lexicon evaluator
+	 * @param bundle the bundle with the compiled lexicons or null for parsing the lexicon file
+	 * @return the lexicon evaluator with its dictionary loaded
+	 */
+	protected Future<LexiconEvaluator> loadDict(final LexiconEvaluator lex, final LexiconBundle bundle) {
+		String key=ResourceRegistry.key(lex.getClass().getName(), lex.getName(), ResourceRegistry.fileKey(new File(lex.getPath())),
+				bundle!=null?ResourceRegistry.fileKey(bundle.getFile()):"");
+
+		return ResourceRegistry.submit(key, new ResourceRegistry.Loader<LexiconEvaluator>() {
+			@Override
+			public LexiconEvaluator load() throws IOException {
+				if(bundle!=null)
+					lex.processDict(bundle);
+				else
+					lex.processDict();
+				return lex;
 			}
-		}
-
-
-		if(this.useNrc10Expanded){
-			LexiconEvaluator nrcExpandedEmoLex = new NRCExpandedEmotionLexiconEvaluator(
-					NRC10_EXPANDED_FILE_NAME,"NRC-10-Expanded");
-			try {
-				nrcExpandedEmoLex.processDict();
-				this.lexicons.add(nrcExpandedEmoLex);
-			} catch (IOException e) {
-				this.useNrc10Expanded=false;
-			}		
-
-		}
-
-
-		if(this.useNrcHashEmo){
-			LexiconEvaluator nrcHashtagEmoLex = new NRCHashtagEmotionLexiconEvaluator(
-					NRC_HASH_EMO_FILE_NAME,"NRC-Hash-Emo");
-			try {
-				nrcHashtagEmoLex.processDict();
-				this.lexicons.add(nrcHashtagEmoLex);
-			} catch (IOException e) {
-				this.useNrcHashEmo=false;
-
-			}		
+		});
+	}
 
 
+	/**
+	 * Waits for a lexicon loaded in the background and adds it to the lexicons to use.
+	 * 
+	 * @param lex the lexicon being loaded
+	 * @return false if the lexicon cannot be loaded because of a wrong file
+	 */
+	protected boolean addDict(Future<LexiconEvaluator> lex) {
+		try {
+			this.lexicons.add(lex.get());
+			return true;
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				return false;
+			else if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
 		}
+	}
 
 
+	/**
+	 * Initializes the dictionaries of all the lexicons to use. The lexicons are loaded concurrently 
+	 * and are added in a fixed order.
+	 * 
+	 * @param bundle the bundle with the compiled lexicons or null for parsing the lexicon files
+	 */
+	protected void initializeDicts(LexiconBundle bundle) {
+
+		this.lexicons=new ArrayList<LexiconEvaluator>();
+
+		Future<LexiconEvaluator> mpqaLex = this.useMpqa ? this.loadDict(new PolarityLexiconEvaluator(MPQA_FILE_NAME,"mpqa"), bundle) : null;
+		Future<LexiconEvaluator> bingLiuLex = this.useBingLiu ? this.loadDict(new PolarityLexiconEvaluator(BING_LIU_FILE_NAME,"BingLiu"), bundle) : null;
+		Future<LexiconEvaluator> afinnLex = this.useAfinn ? this.loadDict(new IntensityLexiconEvaluator(AFINN_FILE_NAME,"AFINN"), bundle) : null;
+		Future<LexiconEvaluator> s140Lex = this.useS140 ? this.loadDict(new IntensityLexiconEvaluator(S140_FILE_NAME,"S140"), bundle) : null;
+		Future<LexiconEvaluator> nrcHashSentLex = this.useNrcHashSent ? this.loadDict(new IntensityLexiconEvaluator(NRC_HASH_SENT_FILE_NAME,"NRC-Hash-Sent"), bundle) : null;
+		Future<LexiconEvaluator> s140BigramsLex = this.useS140Bigrams ? this.loadDict(new PhraseLexiconEvaluator(S140_BIGRAMS_FILE_NAME,"S140-Bigrams"), bundle) : null;
+		Future<LexiconEvaluator> nrcHashSentBigramsLex = this.useNrcHashSentBigrams ? this.loadDict(new PhraseLexiconEvaluator(NRC_HASH_SENT_BIGRAMS_FILE_NAME,"NRC-Hash-Sent-Bigrams"), bundle) : null;
+		Future<LexiconEvaluator> nrc10Lex = this.useNrc10 ? this.loadDict(new NRCEmotionLexiconEvaluator(NRC10_FILE_NAME,"NRC-10"), bundle) : null;
+		Future<LexiconEvaluator> nrcExpandedEmoLex = this.useNrc10Expanded ? this.loadDict(new NRCExpandedEmotionLexiconEvaluator(NRC10_EXPANDED_FILE_NAME,"NRC-10-Expanded"), bundle) : null;
+		Future<LexiconEvaluator> nrcHashtagEmoLex = this.useNrcHashEmo ? this.loadDict(new NRCHashtagEmotionLexiconEvaluator(NRC_HASH_EMO_FILE_NAME,"NRC-Hash-Emo"), bundle) : null;
+		Future<LexiconEvaluator> sentiWordEvaluator = this.useSentiWordnet ? this.loadDict(new SWN3LexiconEvaluator(SENTIWORDNET_FILE_NAME,"SentiWordnet"), bundle) : null;
+		Future<LexiconEvaluator> emoticonLex = this.useEmoticons ? this.loadDict(new IntensityLexiconEvaluator(EMOTICON_LIST_FILE_NAME,"Emoticons"), bundle) : null;
+		Future<LexiconEvaluator> negationLex = this.useNegation ? this.loadDict(new NegationEvaluator(NEGATION_LIST_FILE_NAME,"Negation"), bundle) : null;
+
+
+		// a lexicon is disabled if its file cannot be loaded
+		if(this.useMpqa)
+			this.useMpqa=this.addDict(mpqaLex);
+		if(this.useBingLiu)
+			this.useBingLiu=this.addDict(bingLiuLex);
+		if(this.useAfinn)
+			this.useAfinn=this.addDict(afinnLex);
+		if(this.useS140)
+			this.useS140=this.addDict(s140Lex);
+		if(this.useNrcHashSent)
+			this.useNrcHashSent=this.addDict(nrcHashSentLex);
+		if(this.useS140Bigrams)
+			this.useS140Bigrams=this.addDict(s140BigramsLex);
+		if(this.useNrcHashSentBigrams)
+			this.useNrcHashSentBigrams=this.addDict(nrcHashSentBigramsLex);
+		if(this.useNrc10)
+			this.useNrc10=this.addDict(nrc10Lex);
+		if(this.useNrc10Expanded)
+			this.useNrc10Expanded=this.addDict(nrcExpandedEmoLex);
+		if(this.useNrcHashEmo)
+			this.useNrcHashEmo=this.addDict(nrcHashtagEmoLex);
+		if(this.useSentiWordnet)
+			this.useSentiWordnet=this.addDict(sentiWordEvaluator);
+		if(this.useEmoticons)
+			this.useEmoticons=this.addDict(emoticonLex);
+		if(this.useNegation)
+			this.useNegation=this.addDict(negationLex);
 
-		if(this.useSentiWordnet){
-			LexiconEvaluator sentiWordEvaluator = new SWN3LexiconEvaluator(
-					SENTIWORDNET_FILE_NAME,"SentiWordnet");
-			try {
-				sentiWordEvaluator.processDict();
-				this.lexicons.add(sentiWordEvaluator);
-			} catch (IOException e) {
-				this.useSentiWordnet=false;
-
-			}		
-
-
-		}
+	}
 
 
-		if(this.useEmoticons){
-			LexiconEvaluator emoticonLex = new IntensityLexiconEvaluator(
-					EMOTICON_LIST_FILE_NAME,"Emoticons");
-			try {
-				emoticonLex.processDict();
-				this.lexicons.add(emoticonLex);
-			} catch (IOException e) {
-				this.useEmoticons=false;
-			}		
+	/**
+	 * Compiles all the lexicons used by the filter into a bundle that can be memory-mapped.
+	 * 
+	 * @param bundleFile the bundle file
+	 * @throws IOException if the bundle cannot be written
+	 */
+	public static void compileLexiconBundle(File bundleFile) throws IOException {
+		TweetToLexiconFeatureVector filter=new TweetToLexiconFeatureVector();
+		// the optional lexicons are compiled too when their files exist
+		filter.setUseS140Bigrams(true);
+		filter.setUseNrcHashSentBigrams(true);
+		filter.initializeDicts(null);
+		LexiconBundle.write(bundleFile, filter.lexicons);
+	}
 
-		}
 
+	/**
+	 * Gets the names of the lexicons that are used.
+	 * 
+	 * @return the names of the lexicons
+	 */
+	protected List<String> usedLexicons() {
+		List<String> used=new ArrayList<String>();
+		boolean[] flags={this.useMpqa, this.useBingLiu, this.useAfinn, this.useS140, this.useNrcHashSent, this.useS140Bigrams, 
+				this.useNrcHashSentBigrams, this.useNrc10, this.useNrc10Expanded, this.useNrcHashEmo, this.useSentiWordnet, 
+				this.useEmoticons, this.useNegation};
+		String[] names={"mpqa", "BingLiu", "AFINN", "S140", "NRC-Hash-Sent", "S140-Bigrams", "NRC-Hash-Sent-Bigrams", 
+				"NRC-10", "NRC-10-Expanded", "NRC-Hash-Emo", "SentiWordnet", "Emoticons", "Negation"};
+		for(int i=0;i<flags.length;i++)
+			if(flags[i])
+				used.add(names[i]);
+		return used;
+	}
 
 
-		if(this.useNegation){
-			LexiconEvaluator negationLex = new NegationEvaluator(
-					NEGATION_LIST_FILE_NAME,"Negation");
-			try {
-				negationLex.processDict();
-				this.lexicons.add(negationLex);
-			} catch (IOException e) {
-				this.useNegation=false;
-			}		
-
+	/**
+	 * Resolves the lexicons again after deserialization, so that all the copies of the filter
+	 * share the lexicons registered in the JVM. The lexicons are not serialized with the filter, 
+	 * so a lexicon used when the filter was trained must be loadable again from its file.
+	 *
+	 * @return this filter
+	 * @throws ObjectStreamException if a lexicon used by the trained filter cannot be loaded
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		if(this.isFirstBatchDone()){
+			List<String> missing=this.usedLexicons();
+			this.initializeDicts();
+			missing.removeAll(this.usedLexicons());
+			// the output format has an attribute for each lexicon, so a missing one cannot be skipped
+			if(!missing.isEmpty())
+				throw new InvalidObjectException("Cannot load the lexicons "+missing+" used by the trained filter, "
+						+ "their files must be available at the same path as when the filter was trained");
 		}
-
+		else
+			this.lexicons=new ArrayList<LexiconEvaluator>();
+		return this;
 	}
 
 
@@ -619,6 +681,55 @@ public class TweetToLexiconFeatureVector extends TweetToFeatureVector {
 
 
 
+	@OptionMetadata(displayName = "useS140Bigrams",
+			description = "Calculates a positive and negative score by aggregating the associations of the bigrams from the S140 lexicon occurring in the tweet.\n"
+					+ "More info at: http://saifmohammad.com/WebPages/lexicons.html \n"
+					+ "Publication: Svetlana Kiritchenko, Xiaodan Zhu and Saif Mohammad, Sentiment Analysis of Short Informal Texts.",
+					commandLineParamIsFlag = true, 
+					commandLineParamName = "s140-bigrams", 
+					commandLineParamSynopsis = "-s140-bigrams",
+					displayOrder = 17)			
+	public boolean isUseS140Bigrams() {
+		return useS140Bigrams;
+	}
+	public void setUseS140Bigrams(boolean useS140Bigrams) {
+		this.useS140Bigrams = useS140Bigrams;
+	}
+
+
+	@OptionMetadata(displayName = "useNrcHashSentBigrams",
+			description = "Calculates a positive and negative score by aggregating the associations of the bigrams from the NRC Hashtag Sentiment lexicon occurring in the tweet.\n"
+					+ "More info at: http://saifmohammad.com/WebPages/lexicons.html \n"
+					+ "Publication: Svetlana Kiritchenko, Xiaodan Zhu and Saif Mohammad, Sentiment Analysis of Short Informal Texts.",
+					commandLineParamIsFlag = true, 
+					commandLineParamName = "hash-sent-bigrams", 
+					commandLineParamSynopsis = "-hash-sent-bigrams",
+					displayOrder = 18)			
+	public boolean isUseNrcHashSentBigrams() {
+		return useNrcHashSentBigrams;
+	}
+	public void setUseNrcHashSentBigrams(boolean useNrcHashSentBigrams) {
+		this.useNrcHashSentBigrams = useNrcHashSentBigrams;
+	}
+
+
+
+	@OptionMetadata(displayName = "lexiconBundle",
+			description = "The bundle with the compiled lexicons. Compiled lexicons are memory-mapped instead of being parsed. "
+					+ "The lexicon files are used if the bundle does not exist or if a lexicon has changed after compiling the bundle.\n"
+					+ "Bundles are created with: java affective.core.LexiconCompiler <bundle file>",
+					commandLineParamName = "bundle", 
+					commandLineParamSynopsis = "-bundle <string>",
+					displayOrder = 19)			
+	public File getLexiconBundle() {
+		return lexiconBundle;
+	}
+	public void setLexiconBundle(File lexiconBundle) {
+		this.lexiconBundle = lexiconBundle;
+	}
+
+
+
 	/**
 	 * Main method for testing this class.
 	 *
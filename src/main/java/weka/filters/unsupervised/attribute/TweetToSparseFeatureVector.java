@@ -39,6 +39,7 @@ import java.util.ListIterator;
 import java.util.zip.GZIPInputStream;
 
 import affective.core.NegationEvaluator;
+import affective.core.ResourceRegistry;
 import cmu.arktweetnlp.Tagger;
 import cmu.arktweetnlp.impl.ModelSentence;
 import cmu.arktweetnlp.impl.Sentence;
@@ -49,6 +50,7 @@ import weka.core.OptionMetadata;
 import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Type;
+import weka.core.stemmers.Stemmer;
 
 /**
  *  <!-- globalinfo-start --> An attribute filter that calculates different types of sparse features 
@@ -198,13 +200,74 @@ public class TweetToSparseFeatureVector extends TweetToFeatureVector {
 	 */	
 	public void initializeTagger(){
 		try {
-			this.tagger= new Tagger();
-			this.tagger.loadModel(taggerFile.getAbsolutePath());
+			this.tagger=TweetNLPPOSTagger.loadTagger(this.taggerFile);
 		} catch (IOException e) {
 			this.posNgramMaxDim=0;
 		}
 	}
 
+
+	/**
+	 * Starts loading the POS tagger in the background if POS n-grams are calculated.
+	 */	
+	protected void preloadTagger(){
+		if(this.posNgramMaxDim>0)
+			TweetNLPPOSTagger.preloadTagger(this.taggerFile);
+	}
+
+
+	/**
+	 * Gets the key identifying the Brown clusters in the ResourceRegistry. 
+	 * 
+	 * @return the key
+	 */	
+	protected String brownDictKey(){
+		return ResourceRegistry.key("BrownClusters", ResourceRegistry.fileKey(this.wordClustFile), weka.core.Utils.toCommandLine(this.m_stemmer));
+	}
+
+
+	/**
+	 * Creates a loader for the dictionary of the Brown clusters. The words in the clusters are stemmed.
+	 * 
+	 * @return the loader
+	 */	
+	protected ResourceRegistry.Loader<Object2ObjectMap<String,String>> brownDictLoader(){
+		final File clustFile=this.wordClustFile;
+		final Stemmer stemmer=this.m_stemmer;
+		return new ResourceRegistry.Loader<Object2ObjectMap<String,String>>() {
+			@Override
+			public Object2ObjectMap<String, String> load() throws IOException {
+				Object2ObjectMap<String,String> brownDict=new Object2ObjectOpenHashMap<String,String>();
+				FileInputStream fin = new FileInputStream(clustFile);
+				GZIPInputStream gzis = new GZIPInputStream(fin);
+				InputStreamReader xover = new InputStreamReader(gzis);
+				BufferedReader bf = new BufferedReader(xover);
+
+				String line;
+				while ((line = bf.readLine()) != null) {
+					String pair[] = line.split("\t");
+					// the word in the clusters are stemmed
+					brownDict.put(stemmer.stem(pair[1]), pair[0]);
+				}
+				bf.close();
+				xover.close();
+				gzis.close();
+				fin.close();
+
+				return brownDict;
+			}
+		};
+	}
+
+
+	/**
+	 * Starts loading the Brown clusters in the background if cluster n-grams are calculated.
+	 */	
+	protected void preloadBrownDict(){
+		if(this.clustNgramMaxDim>0 && this.wordClustFile.exists())
+			ResourceRegistry.submit(this.brownDictKey(), this.brownDictLoader());
+	}
+
 	/**
 	 * Initializes the NegationEvaluator object
 	 */	
@@ -281,41 +344,28 @@ public class TweetToSparseFeatureVector extends TweetToFeatureVector {
 		if(this.clustNgramMaxDim>0){
 			// calcultates the vector of clusters
 			List<String> brownClust=affective.core.Utils.clustList(tokens,brownDict);
-			docVec.putAll(affective.core.Utils.calculateTermFreq(brownClust,this.clustPrefix+"1-",this.freqWeights));		
-			// add ngrams where n > 1
-			if(this.clustNgramMaxDim>1){
-				for(int i=2;i<=this.clustNgramMaxDim;i++){
-					docVec.putAll(affective.core.Utils.calculateTermFreq(affective.core.Utils.calculateTokenNgram(brownClust,i),this.clustPrefix+i+"-",this.freqWeights));					
-				}
-
+			// add ngrams where n >= 1
+			for(int i=1;i<=this.clustNgramMaxDim;i++){
+				affective.core.Utils.addTokenNgrams(docVec,brownClust,null,i,this.clustPrefix+i+"-",this.freqWeights);					
 			}
 		}	
 
 		if(this.posNgramMaxDim>0){
 			List<String> posTags=this.getPOStags(tokens);
-			docVec.putAll(affective.core.Utils.calculateTermFreq(posTags,this.posPrefix+"1-",this.freqWeights));
-			// add ngrams where n > 1
-			if(this.posNgramMaxDim>1){
-				for(int i=2;i<=this.posNgramMaxDim;i++){
-					docVec.putAll(affective.core.Utils.calculateTermFreq(affective.core.Utils.calculateTokenNgram(posTags,i),this.posPrefix+i+"-",this.freqWeights));					
-				}
+			// add ngrams where n >= 1
+			for(int i=1;i<=this.posNgramMaxDim;i++){
+				affective.core.Utils.addTokenNgrams(docVec,posTags,null,i,this.posPrefix+i+"-",this.freqWeights);					
 			}
 		}
 
-		// use negated tokens for word ngrams features if option is set
+		// the tokens in a negated context are prefixed in the word ngrams features if option is set
+		boolean[] negated=null;
 		if(this.negateTokens)
-			tokens=affective.core.Utils.negateTokens(tokens, this.negEval.getWordList());
-
-		// add the ngram vectors
-		if(this.wordNgramMaxDim>0){
-			// add the unigrams
-			docVec.putAll(affective.core.Utils.calculateTermFreq(tokens,this.wordNgramPrefix+"1-",this.freqWeights));
-			// add ngrams where n > 1
-			if(this.wordNgramMaxDim>1){
-				for(int i=2;i<=this.wordNgramMaxDim;i++){
-					docVec.putAll(affective.core.Utils.calculateTermFreq(affective.core.Utils.calculateTokenNgram(tokens,i),this.wordNgramPrefix+i+"-",this.freqWeights));					
-				}				
-			}			
+			negated=this.negEval.getNegationMask(tokens);
+
+		// add the ngram vectors, where n >= 1
+		for(int i=1;i<=this.wordNgramMaxDim;i++){
+			affective.core.Utils.addTokenNgrams(docVec,tokens,negated,i,this.wordNgramPrefix+i+"-",this.freqWeights);					
 		}
 
 		return docVec;
@@ -337,26 +387,8 @@ public class TweetToSparseFeatureVector extends TweetToFeatureVector {
 
 			// the Dictionary of the brown Clusters
 			if(this.clustNgramMaxDim>0){
-				this.brownDict=new Object2ObjectOpenHashMap<String,String>();
 				try {
-					FileInputStream fin = new FileInputStream(wordClustFile);
-					GZIPInputStream gzis = new GZIPInputStream(fin);
-					InputStreamReader xover = new InputStreamReader(gzis);
-					BufferedReader bf = new BufferedReader(xover);
-
-					String line;
-					while ((line = bf.readLine()) != null) {
-						String pair[] = line.split("\t");
-						// the word in the clusters are stemmed
-						brownDict.put(this.m_stemmer.stem(pair[1]), pair[0]);
-
-
-					}
-					bf.close();
-					xover.close();
-					gzis.close();
-					fin.close();
-
+					this.brownDict=ResourceRegistry.get(this.brownDictKey(), this.brownDictLoader());
 				} catch (IOException e) {
 					// do not create clusters attributes
 					this.clustNgramMaxDim=0;
@@ -419,6 +451,24 @@ public class TweetToSparseFeatureVector extends TweetToFeatureVector {
 	}
 
 
+	/**
+	 * Sets the format of the input instances and starts loading the POS tagger and the Brown clusters 
+	 * in the background while the first batch is being input. The resources are not loaded when their
+	 * options are set, as a later option may replace them.
+	 * 
+	 * @param instanceInfo the format of the input instances
+	 * @return true if the output format is immediately available
+	 * @throws Exception if the input format cannot be set
+	 */
+	@Override
+	public boolean setInputFormat(Instances instanceInfo) throws Exception {
+		boolean immediate=super.setInputFormat(instanceInfo);
+		this.preloadTagger();
+		this.preloadBrownDict();
+		return immediate;
+	}
+
+
 	/* (non-Javadoc)
 	 * @see weka.filters.SimpleFilter#determineOutputFormat(weka.core.Instances)
 	 */
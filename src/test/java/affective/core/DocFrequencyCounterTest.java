@@ -0,0 +1,134 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests DocFrequencyCounter. Run from the command line with: <p/>
+ * java affective.core.DocFrequencyCounterTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class DocFrequencyCounterTest extends TestCase {
+
+    /** The distinct words of each document. */
+    protected List<Set<String>> docs;
+
+    /** The number of documents of each word. */
+    protected Object2IntOpenHashMap<String> counts;
+
+    public DocFrequencyCounterTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        // the words follow a Zipf-like distribution, a few frequent words and many rare ones
+        Random random = new Random(1);
+        this.docs = new ArrayList<Set<String>>();
+        this.counts = new Object2IntOpenHashMap<String>();
+        for (int d = 0; d < 5000; d++) {
+            Set<String> doc = new HashSet<String>();
+            for (int i = 0; i < 10; i++)
+                doc.add("w" + (int) Math.floor(Math.exp(random.nextDouble() * Math.log(20000))));
+            for (String word : doc)
+                this.counts.addTo(word, 1);
+            this.docs.add(doc);
+        }
+    }
+
+    /** Counts the documents with a counter, split into parts counted by copies of the counter. */
+    protected DocFrequencyCounter count(DocFrequencyCounter counter, int numParts) {
+        int partSize = (this.docs.size() + numParts - 1) / numParts;
+        for (int start = 0; start < this.docs.size(); start += partSize) {
+            DocFrequencyCounter part = counter.emptyCopy();
+            for (int d = start; d < Math.min(start + partSize, this.docs.size()); d++)
+                part.addDoc(this.docs.get(d));
+            counter.add(part);
+        }
+        return counter;
+    }
+
+    public void testExactCounts() {
+        for (int numParts : new int[] {1, 3}) {
+            DocFrequencyCounter counter = count(DocFrequencyCounter.create(DocFrequencyCounter.Pruning.EXACT, 0), numParts);
+            for (Object2IntMap.Entry<String> entry : this.counts.object2IntEntrySet())
+                assertEquals(entry.getKey(), entry.getIntValue(), counter.getCount(entry.getKey()));
+            assertEquals(0, counter.getCount("unknown"));
+        }
+    }
+
+    public void testSketchNeverUnderestimates() {
+        // a narrow sketch has many collisions
+        for (int width : new int[] {1 << 6, 1 << 10, 1 << 16}) {
+            for (int numParts : new int[] {1, 4}) {
+                DocFrequencyCounter counter = count(new DocFrequencyCounter.Sketch(DocFrequencyCounter.Sketch.DEFAULT_DEPTH, width), numParts);
+                for (Object2IntMap.Entry<String> entry : this.counts.object2IntEntrySet())
+                    assertTrue(entry.getKey() + " in width " + width, counter.getCount(entry.getKey()) >= entry.getIntValue());
+            }
+        }
+    }
+
+    public void testSketchIsMostlyExact() {
+        DocFrequencyCounter counter = count(DocFrequencyCounter.create(DocFrequencyCounter.Pruning.SKETCH, 4 * this.counts.size()), 1);
+        int exact = 0;
+        for (Object2IntMap.Entry<String> entry : this.counts.object2IntEntrySet())
+            if (counter.getCount(entry.getKey()) == entry.getIntValue())
+                exact++;
+        assertTrue(exact + " of " + this.counts.size(), exact >= 0.95 * this.counts.size());
+    }
+
+    public void testSketchWidth() {
+        assertEquals(1 << 10, DocFrequencyCounter.Sketch.width(0));
+        assertEquals(1 << 10, DocFrequencyCounter.Sketch.width(1 << 10));
+        assertEquals(1 << 11, DocFrequencyCounter.Sketch.width((1 << 10) + 1));
+        assertEquals(DocFrequencyCounter.Sketch.MAX_WIDTH, DocFrequencyCounter.Sketch.width(Integer.MAX_VALUE));
+    }
+
+    public void testUnsupportedPruning() {
+        try {
+            DocFrequencyCounter.create(DocFrequencyCounter.Pruning.NONE, 10);
+            fail("NONE does not count the documents");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(DocFrequencyCounterTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests MappedEmbeddingHandler. Run from the command line with: <p/>
+ * java affective.core.MappedEmbeddingHandlerTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class MappedEmbeddingHandlerTest extends TestCase {
+
+    /** The csv.gz file with the vectors. */
+    protected File csvFile;
+
+    /** The compiled embeddings file. */
+    protected File embeddingsFile;
+
+    public MappedEmbeddingHandlerTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.csvFile = File.createTempFile("embeddings", ".csv.gz");
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(this.csvFile))));
+        writer.println("0.5\t-1.25\t2\thappy");
+        writer.println("0.1\t0.2\t0.3\tsad");
+        writer.println("1\t2\tshort");
+        writer.println("-3\t0\t0.125\tcafe");
+        writer.println("4\t5\t6\tZebra");
+        writer.println("7\t8\t9\tsad");
+        writer.close();
+
+        this.embeddingsFile = File.createTempFile("embeddings", ".emb");
+        CSVEmbeddingHandler source = new CSVEmbeddingHandler();
+        source.setEmbeddingsFile(this.csvFile);
+        MappedEmbeddingHandler.write(source, this.embeddingsFile);
+    }
+
+    protected void tearDown() throws Exception {
+        this.csvFile.delete();
+        this.embeddingsFile.delete();
+        super.tearDown();
+    }
+
+    /** Creates a handler of the compiled file. */
+    protected MappedEmbeddingHandler handler() throws Exception {
+        MappedEmbeddingHandler handler = new MappedEmbeddingHandler();
+        handler.setEmbeddingsFile(this.embeddingsFile);
+        handler.createDict();
+        return handler;
+    }
+
+    public void testVocabulary() throws Exception {
+        MappedEmbeddingHandler handler = handler();
+        assertEquals(3, handler.getDimensions());
+        // the line with a missing dimension is skipped and the repeated word is stored once
+        assertEquals(4, handler.getNumWords());
+        // the rows are sorted by the bytes of the words, upper case letters first
+        assertEquals(Arrays.asList("Zebra", "cafe", "happy", "sad"), handler.getWords());
+
+        for (int row = 0; row < handler.getNumWords(); row++)
+            assertEquals(row, handler.getWordIndex(handler.getWord(row)));
+        assertEquals(-1, handler.getWordIndex("short"));
+        assertEquals(-1, handler.getWordIndex("caf"));
+        assertEquals(-1, handler.getWordIndex("zebra"));
+        assertNull(handler.getVector("unknown"));
+    }
+
+    public void testVectors() throws Exception {
+        MappedEmbeddingHandler handler = handler();
+        AbstractDoubleList vector = handler.getVector("happy");
+        assertEquals(3, vector.size());
+        assertEquals(0.5, vector.getDouble(0), 0);
+        assertEquals(-1.25, vector.getDouble(1), 0);
+        assertEquals(2, vector.getDouble(2), 0);
+
+        // the values are stored as floats
+        assertEquals((float) 0.125, handler.getVector("cafe").getDouble(2), 0);
+        // a repeated word keeps its last vector
+        assertEquals(7, handler.getVector("sad").getDouble(0), 0);
+    }
+
+    public void testAddVector() throws Exception {
+        MappedEmbeddingHandler handler = handler();
+        double[] values = new double[] {1, 1, 1, 1};
+        assertTrue(handler.addVector("Zebra", values, 1, 2));
+        assertEquals(1, values[0], 0);
+        assertEquals(3, values[1], 0);
+        assertEquals(3.5, values[2], 0);
+        assertEquals(4, values[3], 0);
+
+        assertFalse(handler.addVector("unknown", values, 1, 2));
+        assertEquals(3, values[1], 0);
+    }
+
+    public void testSameVectorsAsCSV() throws Exception {
+        CSVEmbeddingHandler csv = new CSVEmbeddingHandler();
+        csv.setEmbeddingsFile(this.csvFile);
+        csv.createDict();
+        MappedEmbeddingHandler handler = handler();
+
+        assertEquals(csv.getWordMap().keySet(), new HashSet<String>(handler.getWords()));
+        for (String word : handler.getWords()) {
+            AbstractDoubleList expected = csv.getVector(word);
+            AbstractDoubleList actual = handler.getVector(word);
+            for (int j = 0; j < handler.getDimensions(); j++)
+                assertEquals((float) expected.getDouble(j), actual.getDouble(j), 0);
+        }
+    }
+
+    public void testInvalidFile() throws Exception {
+        MappedEmbeddingHandler handler = new MappedEmbeddingHandler();
+        handler.setEmbeddingsFile(this.csvFile);
+        try {
+            handler.createDict();
+            fail("A file that is not an embeddings file should be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(MappedEmbeddingHandlerTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
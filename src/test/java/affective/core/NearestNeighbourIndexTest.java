@@ -0,0 +1,225 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests NearestNeighbourIndex. Run from the command line with: <p/>
+ * java affective.core.NearestNeighbourIndexTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class NearestNeighbourIndexTest extends TestCase {
+
+    /** The number of words. */
+    protected static final int NUM_WORDS = 2000;
+
+    /** The number of dimensions of the vectors. */
+    protected static final int DIMENSIONS = 16;
+
+    /** The number of neighbours of the queries. */
+    protected static final int K = 10;
+
+    /** The handler with the vectors. */
+    protected EmbeddingHandler handler;
+
+    public NearestNeighbourIndexTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.handler = new EmbeddingHandler() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void createDict() {
+            }
+        };
+        this.handler.dimensions = DIMENSIONS;
+
+        // the vectors are grouped around random centres, as the vectors of related words
+        Random random = new Random(1);
+        double[][] centres = new double[50][DIMENSIONS];
+        for (double[] centre : centres)
+            for (int j = 0; j < DIMENSIONS; j++)
+                centre[j] = random.nextGaussian();
+        for (int w = 0; w < NUM_WORDS; w++) {
+            double[] centre = centres[random.nextInt(centres.length)];
+            double[] vector = new double[DIMENSIONS];
+            for (int j = 0; j < DIMENSIONS; j++)
+                vector[j] = centre[j] + 0.5 * random.nextGaussian();
+            this.handler.wordMap.put("word" + w, new DoubleArrayList(vector));
+        }
+    }
+
+    /** Finds the k words with the most similar vectors to the vector of a word by scanning all the vectors. */
+    protected List<String> exactNeighbours(String word, int k) {
+        AbstractDoubleList query = this.handler.getVector(word);
+        final List<String> words = new ArrayList<String>();
+        final List<Double> similarities = new ArrayList<Double>();
+        for (String other : this.handler.getWords()) {
+            if (other.equals(word))
+                continue;
+            double similarity = cosine(query, this.handler.getVector(other));
+            int pos = 0;
+            while (pos < similarities.size() && similarities.get(pos) >= similarity)
+                pos++;
+            if (pos < k) {
+                words.add(pos, other);
+                similarities.add(pos, similarity);
+                if (words.size() > k) {
+                    words.remove(k);
+                    similarities.remove(k);
+                }
+            }
+        }
+        return words;
+    }
+
+    /** Calculates the cosine similarity of two vectors. */
+    protected static double cosine(AbstractDoubleList a, AbstractDoubleList b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int j = 0; j < a.size(); j++) {
+            dot += a.getDouble(j) * b.getDouble(j);
+            normA += a.getDouble(j) * a.getDouble(j);
+            normB += b.getDouble(j) * b.getDouble(j);
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    /** Calculates the fraction of the exact neighbours found by the index over a sample of queries. */
+    protected double recall(NearestNeighbourIndex index) {
+        int found = 0, total = 0;
+        for (int w = 0; w < NUM_WORDS; w += 20) {
+            Set<String> exact = new HashSet<String>(exactNeighbours("word" + w, K));
+            for (String word : index.nearestWords("word" + w, K))
+                if (exact.contains(word))
+                    found++;
+            total += exact.size();
+        }
+        return (double) found / total;
+    }
+
+    public void testRecall() throws Exception {
+        NearestNeighbourIndex index = new NearestNeighbourIndex(this.handler, 2);
+        assertEquals(45, index.getNumLists());
+        assertEquals(8, index.getNumProbes());
+        assertEquals(NUM_WORDS, index.getNumWords());
+        assertTrue("recall " + recall(index), recall(index) >= 0.9);
+    }
+
+    public void testAllProbesIsExact() throws Exception {
+        NearestNeighbourIndex index = new NearestNeighbourIndex(this.handler, 2);
+        index.setNumProbes(index.getNumLists());
+        for (int w = 0; w < NUM_WORDS; w += 50)
+            assertEquals(exactNeighbours("word" + w, K), index.nearestWords("word" + w, K));
+    }
+
+    public void testQueries() throws Exception {
+        NearestNeighbourIndex index = new NearestNeighbourIndex(this.handler, 1);
+        List<NearestNeighbourIndex.Neighbour> neighbours = index.nearestNeighbours("word7", K);
+        assertEquals(K, neighbours.size());
+        for (int i = 0; i < neighbours.size(); i++) {
+            assertFalse(neighbours.get(i).getWord().equals("word7"));
+            if (i > 0)
+                assertTrue(neighbours.get(i - 1).getSimilarity() >= neighbours.get(i).getSimilarity());
+        }
+        assertEquals(cosine(this.handler.getVector("word7"), this.handler.getVector(neighbours.get(0).getWord())),
+                neighbours.get(0).getSimilarity(), 1e-5);
+
+        // a vector query finds the word itself first
+        assertEquals("word7", index.nearestNeighbours(this.handler.getVector("word7"), 1).get(0).getWord());
+        assertTrue(index.nearestWords("unknown", K).isEmpty());
+
+        // scanning all the lists returns every other word
+        index.setNumProbes(index.getNumLists());
+        assertEquals(NUM_WORDS - 1, index.nearestWords("word7", NUM_WORDS * 2).size());
+    }
+
+    public void testSameIndexWithThreads() throws Exception {
+        NearestNeighbourIndex sequential = new NearestNeighbourIndex(this.handler, 1);
+        NearestNeighbourIndex parallel = new NearestNeighbourIndex(this.handler, 4);
+        List<String> queries = new ArrayList<String>();
+        for (int w = 0; w < NUM_WORDS; w += 10)
+            queries.add("word" + w);
+        List<List<NearestNeighbourIndex.Neighbour>> batch = parallel.nearestNeighbours(queries, K, 3);
+        for (int i = 0; i < queries.size(); i++) {
+            List<String> words = new ArrayList<String>();
+            for (NearestNeighbourIndex.Neighbour neighbour : batch.get(i))
+                words.add(neighbour.getWord());
+            assertEquals(sequential.nearestWords(queries.get(i), K), words);
+        }
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        NearestNeighbourIndex index = new NearestNeighbourIndex(this.handler, 2);
+        File file = File.createTempFile("neighbours", ".idx");
+        try {
+            index.save(file);
+            NearestNeighbourIndex loaded = NearestNeighbourIndex.load(file);
+            assertEquals(index.getNumLists(), loaded.getNumLists());
+            assertEquals(index.getNumProbes(), loaded.getNumProbes());
+            for (int w = 0; w < NUM_WORDS; w += 100)
+                assertEquals(index.nearestWords("word" + w, K), loaded.nearestWords("word" + w, K));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testMoveRows() {
+        float[] data = new float[] {0, 0, 1, 1, 2, 2, 3, 3, 4, 4};
+        NearestNeighbourIndex.moveRows(data, new int[] {3, 0, 2, 4, 1}, 2);
+        assertTrue(Arrays.equals(new float[] {3, 3, 0, 0, 2, 2, 4, 4, 1, 1}, data));
+    }
+
+    public void testArraySize() {
+        assertEquals(3000, NearestNeighbourIndex.arraySize(100, 30));
+        try {
+            NearestNeighbourIndex.arraySize(10000000, 300);
+            fail("The values of the vectors do not fit in an array");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(NearestNeighbourIndexTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
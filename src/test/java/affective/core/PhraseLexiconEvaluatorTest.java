@@ -0,0 +1,164 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.TweetToLexiconFeatureVector;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests PhraseLexiconEvaluator and the bigram lexicons of TweetToLexiconFeatureVector. Run from
+ * the command line with: <p/>
+ * java affective.core.PhraseLexiconEvaluatorTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class PhraseLexiconEvaluatorTest extends TestCase {
+
+    /** A lexicon of phrases in the format of the Sentiment140 bigram lexicon. */
+    protected File lexiconFile;
+
+    public PhraseLexiconEvaluatorTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.lexiconFile = File.createTempFile("bigrams", ".txt.gz");
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(this.lexiconFile)), "UTF-8"));
+        writer.println("not good\t-2.5\t10\t40");
+        writer.println("good day\t1.5\t30\t5");
+        writer.println("very good day\t0.5\t3\t1");
+        writer.println("bad entry\tNaN-score");
+        writer.close();
+    }
+
+    protected void tearDown() throws Exception {
+        this.lexiconFile.delete();
+        super.tearDown();
+    }
+
+    /** Evaluates a space-separated tweet. */
+    protected Map<String, Double> evaluate(PhraseLexiconEvaluator lex, String tweet) {
+        return lex.evaluateTweet(Arrays.asList(tweet.split(" ")));
+    }
+
+    public void testOverlappingPhrases() throws Exception {
+        PhraseLexiconEvaluator lex = new PhraseLexiconEvaluator(this.lexiconFile.getPath(), "Bigrams");
+        lex.processDict();
+        assertEquals(3, lex.getTable().size());
+
+        // "not good" and "good day" share the token "good"
+        Map<String, Double> scores = evaluate(lex, "not good day");
+        assertEquals(1.5, scores.get("Bigrams-posScore"), 1e-6);
+        assertEquals(-2.5, scores.get("Bigrams-negScore"), 1e-6);
+
+        // "good day" is nested in "very good day"
+        scores = evaluate(lex, "a very good day");
+        assertEquals(2.0, scores.get("Bigrams-posScore"), 1e-6);
+        assertEquals(0.0, scores.get("Bigrams-negScore"), 1e-6);
+
+        scores = evaluate(lex, "good not day");
+        assertEquals(0.0, scores.get("Bigrams-posScore"), 1e-6);
+        assertEquals(0.0, scores.get("Bigrams-negScore"), 1e-6);
+    }
+
+    /** Filters a single tweet with the given options and only the bigram lexicons enabled. */
+    protected Instances filter(String tweet, String... options) throws Exception {
+        TweetToLexiconFeatureVector filter = new TweetToLexiconFeatureVector();
+        filter.setOptions(options);
+        filter.setUseMpqa(false);
+        filter.setUseBingLiu(false);
+        filter.setUseAfinn(false);
+        filter.setUseS140(false);
+        filter.setUseNrcHashSent(false);
+        filter.setUseNrc10(false);
+        filter.setUseNrc10Expanded(false);
+        filter.setUseNrcHashEmo(false);
+        filter.setUseSentiWordnet(false);
+        filter.setUseEmoticons(false);
+        filter.setUseNegation(false);
+        // the bundle does not exist, the lexicons are read from their sources
+        filter.setLexiconBundle(new File(this.lexiconFile.getPath() + ".missing"));
+
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        atts.add(new Attribute("content", (List<String>) null));
+        atts.add(new Attribute("class", Arrays.asList("neg", "pos")));
+        Instances data = new Instances("tweets", atts, 1);
+        data.setClassIndex(1);
+        double[] values = new double[] {data.attribute(0).addStringValue(tweet), 0};
+        data.add(new DenseInstance(1, values));
+
+        filter.setInputFormat(data);
+        return Filter.useFilter(data, filter);
+    }
+
+    public void testBigramOptions() throws Exception {
+        String s140Backup = TweetToLexiconFeatureVector.S140_BIGRAMS_FILE_NAME;
+        String hashBackup = TweetToLexiconFeatureVector.NRC_HASH_SENT_BIGRAMS_FILE_NAME;
+        try {
+            TweetToLexiconFeatureVector.S140_BIGRAMS_FILE_NAME = this.lexiconFile.getPath();
+            TweetToLexiconFeatureVector.NRC_HASH_SENT_BIGRAMS_FILE_NAME = this.lexiconFile.getPath();
+
+            Instances result = filter("not good day", "-s140-bigrams");
+            assertEquals(4, result.numAttributes());
+            assertEquals(1.5, result.instance(0).value(result.attribute("S140-Bigrams-posScore")), 1e-6);
+            assertEquals(-2.5, result.instance(0).value(result.attribute("S140-Bigrams-negScore")), 1e-6);
+
+            result = filter("a very good day", "-hash-sent-bigrams");
+            assertEquals(4, result.numAttributes());
+            assertEquals(2.0, result.instance(0).value(result.attribute("NRC-Hash-Sent-Bigrams-posScore")), 1e-6);
+            assertEquals(0.0, result.instance(0).value(result.attribute("NRC-Hash-Sent-Bigrams-negScore")), 1e-6);
+
+            result = filter("not good day", "-s140-bigrams", "-hash-sent-bigrams");
+            assertEquals(6, result.numAttributes());
+            assertEquals(1.5, result.instance(0).value(result.attribute("S140-Bigrams-posScore")), 1e-6);
+            assertEquals(-2.5, result.instance(0).value(result.attribute("NRC-Hash-Sent-Bigrams-negScore")), 1e-6);
+        } finally {
+            TweetToLexiconFeatureVector.S140_BIGRAMS_FILE_NAME = s140Backup;
+            TweetToLexiconFeatureVector.NRC_HASH_SENT_BIGRAMS_FILE_NAME = hashBackup;
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PhraseLexiconEvaluatorTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests PhraseMatcher. Run from the command line with: <p/>
+ * java affective.core.PhraseMatcherTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class PhraseMatcherTest extends TestCase {
+
+    public PhraseMatcherTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Creates a built matcher whose phrases are given as space-separated tokens. The value of each
+     * phrase is its position in the arguments.
+     */
+    protected PhraseMatcher matcher(String... phrases) {
+        PhraseMatcher matcher = new PhraseMatcher();
+        for (int i = 0; i < phrases.length; i++)
+            matcher.addPhrase(phrases[i].split(" "), i);
+        matcher.build();
+        return matcher;
+    }
+
+    /** Matches a space-separated tweet. */
+    protected IntList match(PhraseMatcher matcher, String tweet) {
+        return matcher.match(Arrays.asList(tweet.split(" ")));
+    }
+
+    public void testSinglePhrase() {
+        PhraseMatcher matcher = matcher("not good");
+        assertEquals(new IntArrayList(new int[] {0}), match(matcher, "this is not good at all"));
+        assertEquals(new IntArrayList(), match(matcher, "this is good not"));
+    }
+
+    public void testOverlappingPhrases() {
+        // the phrases share the token "b"
+        PhraseMatcher matcher = matcher("a b", "b c");
+        assertEquals(new IntArrayList(new int[] {0, 1}), match(matcher, "a b c"));
+    }
+
+    public void testRepeatedOccurrences() {
+        PhraseMatcher matcher = matcher("a a");
+        assertEquals(new IntArrayList(new int[] {0, 0}), match(matcher, "a a a"));
+    }
+
+    public void testNestedPhrases() {
+        // "b" and "b c" are nested in "a b c", they end at the same tokens as longer phrases
+        PhraseMatcher matcher = matcher("a b c", "b", "b c");
+        assertEquals(new IntArrayList(new int[] {1, 0, 2}), match(matcher, "a b c"));
+    }
+
+    public void testFailureLinkOutputs() {
+        // the classic example: "s h e" ends with "h e", which is only reached through failure links
+        PhraseMatcher matcher = matcher("h e", "s h e", "h i s", "h e r s");
+        assertEquals(new IntArrayList(new int[] {1, 0, 3}), match(matcher, "u s h e r s"));
+        assertEquals(new IntArrayList(new int[] {2}), match(matcher, "h i s"));
+    }
+
+    public void testFailureAfterPartialMatch() {
+        // the partial match of "a b c" fails at "d", the matcher must recover the match of "b d"
+        PhraseMatcher matcher = matcher("a b c", "b d");
+        assertEquals(new IntArrayList(new int[] {1}), match(matcher, "a b d"));
+    }
+
+    public void testUnknownTokenResetsState() {
+        PhraseMatcher matcher = matcher("a b");
+        assertEquals(new IntArrayList(), match(matcher, "a x b"));
+        assertEquals(new IntArrayList(new int[] {0}), match(matcher, "x a b x"));
+    }
+
+    public void testPhraseAddedTwiceKeepsLastValue() {
+        PhraseMatcher matcher = new PhraseMatcher();
+        matcher.addPhrase(new String[] {"a", "b"}, 3);
+        matcher.addPhrase(new String[] {"a", "b"}, 7);
+        matcher.build();
+        assertEquals(new IntArrayList(new int[] {7}), match(matcher, "a b"));
+        assertEquals(3, matcher.numStates());
+    }
+
+    public void testMatchBeforeBuild() {
+        PhraseMatcher matcher = new PhraseMatcher();
+        matcher.addPhrase(new String[] {"a", "b"}, 0);
+        try {
+            match(matcher, "a b");
+            fail("Matching before building the automaton should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PhraseMatcherTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
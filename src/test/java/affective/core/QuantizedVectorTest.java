@@ -0,0 +1,143 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests QuantizedVector. Run from the command line with: <p/>
+ * java affective.core.QuantizedVectorTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class QuantizedVectorTest extends TestCase {
+
+    public QuantizedVectorTest(String name) {
+        super(name);
+    }
+
+    public void testFloat16RoundTrip() {
+        // every half-precision float is converted back to the same bits
+        for (int bits = 0; bits < 1 << 16; bits++) {
+            short h = (short) bits;
+            float f = QuantizedVector.fromFloat16(h);
+            if (Float.isNaN(f))
+                assertTrue(Float.isNaN(QuantizedVector.fromFloat16(QuantizedVector.toFloat16(f))));
+            else
+                assertEquals(Integer.toHexString(bits), h, QuantizedVector.toFloat16(f));
+        }
+    }
+
+    public void testFloat16SpecialValues() {
+        assertEquals((short) 0x3C00, QuantizedVector.toFloat16(1.0f));
+        assertEquals((short) 0xC000, QuantizedVector.toFloat16(-2.0f));
+        assertEquals((short) 0x8000, QuantizedVector.toFloat16(-0.0f));
+        assertEquals((short) 0x7BFF, QuantizedVector.toFloat16(65504f));
+        assertEquals((short) 0x7C00, QuantizedVector.toFloat16(65520f));
+        assertEquals((short) 0xFC00, QuantizedVector.toFloat16(Float.NEGATIVE_INFINITY));
+        // the smallest subnormal number and the ties to even around it
+        float min = (float) Math.pow(2, -24);
+        assertEquals((short) 0x0001, QuantizedVector.toFloat16(min));
+        assertEquals((short) 0x0000, QuantizedVector.toFloat16(min / 2));
+        assertEquals((short) 0x0002, QuantizedVector.toFloat16(min * 1.5f));
+        assertEquals((short) 0x0000, QuantizedVector.toFloat16(1e-9f));
+    }
+
+    public void testFloat16RoundsToNearest() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            float f = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(9) - 6));
+            short h = QuantizedVector.toFloat16(f);
+            double error = Math.abs(f - QuantizedVector.fromFloat16(h));
+            // the neighbours of the result are not closer to the value
+            for (int step = -1; step <= 1; step += 2) {
+                float neighbour = QuantizedVector.fromFloat16((short) (h + step));
+                if (!Float.isInfinite(neighbour) && !Float.isNaN(neighbour) && (neighbour < 0) == (f < 0))
+                    assertTrue(f + " " + Integer.toHexString(h & 0xFFFF), error <= Math.abs(f - neighbour));
+            }
+        }
+    }
+
+    public void testFloat16Vector() {
+        DoubleArrayList vector = new DoubleArrayList(new double[] {0.1, -0.25, 3.14159, 0});
+        QuantizedVector quantized = QuantizedVector.quantize(vector, EmbeddingHandler.Quantization.FLOAT16);
+        assertEquals(4, quantized.size());
+        for (int i = 0; i < vector.size(); i++)
+            assertEquals(vector.getDouble(i), quantized.getDouble(i), Math.abs(vector.getDouble(i)) / 1024);
+        assertEquals(-0.25, quantized.getDouble(1), 0);
+
+        double[] result = new double[] {1, 1, 1, 1, 1};
+        quantized.addTo(result, 1, 2);
+        assertEquals(1, result[0], 0);
+        for (int i = 0; i < vector.size(); i++)
+            assertEquals(1 + quantized.getDouble(i) / 2, result[i + 1], 1e-12);
+    }
+
+    public void testInt8Vector() {
+        Random random = new Random(2);
+        double[] values = new double[50];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextGaussian();
+        values[7] = -4;
+        DoubleArrayList vector = new DoubleArrayList(values);
+        QuantizedVector quantized = QuantizedVector.quantize(vector, EmbeddingHandler.Quantization.INT8);
+
+        // the largest absolute value is mapped to 127 and the error is at most half a step
+        double scale = 4.0 / 127;
+        assertEquals(-4, quantized.getDouble(7), 1e-6);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(values[i], quantized.getDouble(i), scale / 2 + 1e-6);
+
+        double[] result = new double[values.length];
+        quantized.addTo(result, 0, 4);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(quantized.getDouble(i) / 4, result[i], 1e-12);
+    }
+
+    public void testInt8ZeroVector() {
+        QuantizedVector quantized = QuantizedVector.quantize(new DoubleArrayList(new double[3]), EmbeddingHandler.Quantization.INT8);
+        for (int i = 0; i < 3; i++)
+            assertEquals(0, quantized.getDouble(i), 0);
+    }
+
+    public void testUnsupportedQuantization() {
+        try {
+            QuantizedVector.quantize(new DoubleArrayList(new double[] {1}), EmbeddingHandler.Quantization.NONE);
+            fail("NONE is not a quantization of the vectors");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(QuantizedVectorTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2019 University of Waikato, Hamilton, New Zealand
+ */
+
+package affective.core;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests TweetMatrix. Run from the command line with: <p/>
+ * java affective.core.TweetMatrixTest
+ *
+ * @author Felipe Bravo-Marquez (fbravoma@waikato.ac.nz)
+ * @version $Revision: 1 $
+ */
+public class TweetMatrixTest extends TestCase {
+
+    public TweetMatrixTest(String name) {
+        super(name);
+    }
+
+    /** Creates a vector from pairs of feature names and values. */
+    protected static Object2IntMap<String> vector(Object... pairs) {
+        Object2IntMap<String> vector = new Object2IntOpenHashMap<String>();
+        for (int i = 0; i < pairs.length; i += 2)
+            vector.put((String) pairs[i], ((Integer) pairs[i + 1]).intValue());
+        return vector;
+    }
+
+    /** Gets a row of a matrix as a vector. */
+    protected static Object2IntMap<String> row(TweetMatrix matrix, int row) {
+        Object2IntMap<String> vector = new Object2IntOpenHashMap<String>();
+        for (int pos = matrix.rowStart(row); pos < matrix.rowEnd(row); pos++)
+            vector.put(matrix.getFeatureName(matrix.feature(pos)), (int) matrix.value(pos));
+        return vector;
+    }
+
+    /** Builds the matrix of the rows used by the tests. */
+    protected static TweetMatrix matrix() {
+        TweetMatrix.Builder builder = new TweetMatrix.Builder();
+        assertEquals(0, builder.addRow(vector("a", 1, "b", 2)));
+        assertEquals(1, builder.addRow(vector()));
+        assertEquals(2, builder.addRow(vector("b", 3, "c", 1, "d", 4)));
+        assertEquals(3, builder.numRows());
+        return builder.build();
+    }
+
+    public void testRowLayout() {
+        TweetMatrix matrix = matrix();
+        assertEquals(3, matrix.numRows());
+        assertEquals(4, matrix.numFeatures());
+
+        // the rows are stored one after the other
+        assertEquals(0, matrix.rowStart(0));
+        assertEquals(2, matrix.rowEnd(0));
+        assertEquals(2, matrix.rowStart(1));
+        assertEquals(2, matrix.rowEnd(1));
+        assertEquals(2, matrix.rowStart(2));
+        assertEquals(5, matrix.rowEnd(2));
+
+        assertEquals(vector("a", 1, "b", 2), row(matrix, 0));
+        assertEquals(vector(), row(matrix, 1));
+        assertEquals(vector("b", 3, "c", 1, "d", 4), row(matrix, 2));
+    }
+
+    public void testFeatureIds() {
+        TweetMatrix matrix = matrix();
+        // a feature keeps the id of its first row
+        int b = -1;
+        for (int pos = matrix.rowStart(0); pos < matrix.rowEnd(0); pos++)
+            if (matrix.getFeatureName(matrix.feature(pos)).equals("b"))
+                b = matrix.feature(pos);
+        assertTrue(b == 0 || b == 1);
+        for (int pos = matrix.rowStart(2); pos < matrix.rowEnd(2); pos++)
+            if (matrix.getFeatureName(matrix.feature(pos)).equals("b"))
+                assertEquals(b, matrix.feature(pos));
+    }
+
+    public void testRowsOutsideTheMatrix() {
+        TweetMatrix.Builder builder = new TweetMatrix.Builder();
+        TweetMatrix.Row skipped = builder.toRow(vector("x", 5));
+        TweetMatrix.Row kept = builder.toRow(vector("x", 1, "y", 2));
+        assertNotNull(skipped);
+        assertEquals(0, builder.numRows());
+        assertEquals(0, builder.addRow(kept));
+
+        TweetMatrix matrix = builder.build();
+        assertEquals(1, matrix.numRows());
+        assertEquals(vector("x", 1, "y", 2), row(matrix, 0));
+
+        // the matrix is not changed by the rows added after building it
+        builder.addRow(vector("z", 3));
+        assertEquals(1, matrix.numRows());
+        assertEquals(2, matrix.numFeatures());
+        assertEquals(2, builder.build().numRows());
+    }
+
+    public void testAddTo() {
+        TweetMatrix matrix = matrix();
+        Object2IntMap<String> dictionary = vector("b", 0, "c", 2, "d", 1);
+        int[] attIndexes = matrix.attributeIndexes(dictionary);
+        assertEquals(4, attIndexes.length);
+        for (int f = 0; f < matrix.numFeatures(); f++) {
+            String name = matrix.getFeatureName(f);
+            assertEquals(name, dictionary.containsKey(name) ? dictionary.getInt(name) : -1, attIndexes[f]);
+        }
+
+        // the feature "a" is not in the dictionary and is skipped
+        double[] result = new double[] {1, 1, 1};
+        matrix.addTo(0, attIndexes, result, 2);
+        matrix.addTo(1, attIndexes, result, 2);
+        matrix.addTo(2, attIndexes, result, 2);
+        assertEquals(1 + 1 + 1.5, result[0], 1e-12);
+        assertEquals(1 + 2, result[1], 1e-12);
+        assertEquals(1 + 0.5, result[2], 1e-12);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TweetMatrixTest.class);
+    }
+
+    public static void main(String[] args){
+        junit.textui.TestRunner.run(suite());
+    }
+}
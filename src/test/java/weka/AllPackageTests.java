@@ -33,6 +33,14 @@ import weka.filters.unsupervised.attribute.TweetToInputLexiconFeatureVectorTest;
 import weka.filters.unsupervised.attribute.TweetToEmbeddingsFeatureVectorTest;
 import weka.filters.unsupervised.attribute.TweetToWordListCountFeatureVectorTest;
 
+import affective.core.PhraseLexiconEvaluatorTest;
+import affective.core.PhraseMatcherTest;
+import affective.core.MappedEmbeddingHandlerTest;
+import affective.core.QuantizedVectorTest;
+import affective.core.NearestNeighbourIndexTest;
+import affective.core.DocFrequencyCounterTest;
+import affective.core.TweetMatrixTest;
+
 /**
  * Test class for all tests in this directory. Run from the command line with:
  * <p>
@@ -62,6 +70,14 @@ public class AllPackageTests extends TestSuite {
     suite.addTestSuite(TweetNLPPOSTaggerTest.class);
     suite.addTestSuite(TweetToWordListCountFeatureVectorTest.class);    
 
+    suite.addTestSuite(PhraseMatcherTest.class);
+    suite.addTestSuite(PhraseLexiconEvaluatorTest.class);
+    suite.addTestSuite(MappedEmbeddingHandlerTest.class);
+    suite.addTestSuite(QuantizedVectorTest.class);
+    suite.addTestSuite(NearestNeighbourIndexTest.class);
+    suite.addTestSuite(DocFrequencyCounterTest.class);
+    suite.addTestSuite(TweetMatrixTest.class);
+
 
     return suite;
   }
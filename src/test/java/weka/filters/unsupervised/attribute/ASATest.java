@@ -20,6 +20,7 @@
 package weka.filters.unsupervised.attribute;
 
 import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Instances;
 import weka.filters.AbstractFilterTest;
 import weka.filters.Filter;
 
@@ -27,6 +28,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import java.io.File;
+import java.util.Random;
 
 /**
  * Tests ASA. Run from the command line with: <p/>
@@ -102,6 +104,99 @@ public class ASATest extends AbstractFilterTest {
      */
     public void testBuffered(){}
 
+
+    /**
+     * Tests that reservoirs larger than the sets of positive and negative tweets retain all the tweets,
+     * so the generated instances are the same as without reservoirs.
+     */
+    public void testMaxPoolLargerThanPools() throws Exception {
+        Filter filter = getFilter();
+        filter.setInputFormat(m_Instances);
+        Instances expected = Filter.useFilter(new Instances(m_Instances), filter);
+
+        ASA pooled = (ASA) getFilter();
+        pooled.setMaxPoolSize(m_Instances.numInstances() + 1);
+        pooled.setInputFormat(m_Instances);
+        Instances result = Filter.useFilter(new Instances(m_Instances), pooled);
+
+        assertNull(expected.equalHeadersMsg(result));
+        assertEquals(expected.numInstances(), result.numInstances());
+        for (int i = 0; i < expected.numInstances(); i++)
+            assertEquals(expected.instance(i).toString(), result.instance(i).toString());
+    }
+
+
+    /**
+     * Filters the test data with reservoirs of the given size and random seed.
+     */
+    protected ASA filterWithPool(int maxPoolSize, int seed) throws Exception {
+        ASA filter = (ASA) getFilter();
+        filter.setMaxPoolSize(maxPoolSize);
+        filter.setRandomSeed(seed);
+        filter.setInputFormat(m_Instances);
+        Filter.useFilter(new Instances(m_Instances), filter);
+        return filter;
+    }
+
+
+    /**
+     * Tests that reservoirs smaller than the sets of positive and negative tweets retain maxPoolSize tweets of
+     * each polarity and that the output only depends on the random seed.
+     */
+    public void testMaxPoolSmallerThanPools() throws Exception {
+        ASA unbounded = filterWithPool(0, 1);
+        int maxPoolSize = 10;
+        assertTrue(unbounded.posTweets.size() > maxPoolSize && unbounded.negTweets.size() > maxPoolSize);
+
+        ASA pooled = filterWithPool(maxPoolSize, 1);
+        assertEquals(maxPoolSize, pooled.posTweets.size());
+        assertEquals(maxPoolSize, pooled.negTweets.size());
+
+        Filter filter = getFilter();
+        ((ASA) filter).setMaxPoolSize(maxPoolSize);
+        filter.setInputFormat(m_Instances);
+        Instances first = Filter.useFilter(new Instances(m_Instances), filter);
+        filter = getFilter();
+        ((ASA) filter).setMaxPoolSize(maxPoolSize);
+        filter.setInputFormat(m_Instances);
+        Instances second = Filter.useFilter(new Instances(m_Instances), filter);
+        assertEquals(first.toString(), second.toString());
+    }
+
+
+    /**
+     * Tests that each tweet offered to a reservoir is retained with probability maxPoolSize / number of tweets.
+     */
+    public void testReservoirIsUniform() {
+        ASA filter = new ASA();
+        int maxPoolSize = 10;
+        int numTweets = 100;
+        int numTrials = 2000;
+        filter.setMaxPoolSize(maxPoolSize);
+
+        int[] retained = new int[numTweets];
+        Random r = new Random(1);
+        for (int trial = 0; trial < numTrials; trial++) {
+            int[] pool = new int[maxPoolSize];
+            int size = 0;
+            for (int t = 0; t < numTweets; t++) {
+                int slot = filter.reservoirSlot(size, t + 1, r);
+                if (slot == size)
+                    pool[size++] = t;
+                else if (slot != -1)
+                    pool[slot] = t;
+            }
+            assertEquals(maxPoolSize, size);
+            for (int t : pool)
+                retained[t]++;
+        }
+
+        // the expected count is 200 with a standard deviation of about 13.4
+        double expected = (double) numTrials * maxPoolSize / numTweets;
+        for (int t = 0; t < numTweets; t++)
+            assertEquals("tweet " + t, expected, retained[t], 70);
+    }
+
     public static Test suite() {
         return new TestSuite(ASATest.class);
     }